@@ -0,0 +1,79 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.pubnub.api.models.consumer.pubsub.BasePubSubResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.pubnub.expedia.BenchmarkPayloads.CHUNK_SIZE;
+import static com.pubnub.expedia.PublishUtils.encode;
+import static com.pubnub.expedia.PublishUtils.partition;
+import static com.pubnub.expedia.PublishUtils.sha256;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AssembleBenchmark {
+    @Param({"10240", "1048576", "5242880"})
+    public int payloadSize;
+
+    private Message message;
+    private List<String> orderedEncodedParts;
+    private PNMessageResult pnMessageResult;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final byte[] messageBytes = BenchmarkPayloads.message(payloadSize);
+
+        final List<String> orderedListOfShaSums = new ArrayList<>();
+        orderedEncodedParts = new ArrayList<>();
+        final List<Part> parts = new ArrayList<>();
+        final String shaSumOfWholeMessage = encode(sha256(messageBytes));
+        for (final byte[] partBytes : partition(messageBytes, CHUNK_SIZE)) {
+            final String encodedShaSumOfPart = encode(sha256(partBytes));
+            final String encodedPart = encode(partBytes);
+            orderedListOfShaSums.add(encodedShaSumOfPart);
+            orderedEncodedParts.add(encodedPart);
+            parts.add(new Part(encodedShaSumOfPart, shaSumOfWholeMessage, encodedPart));
+        }
+
+        message = new Message("channel").finalize(1L, new Final(shaSumOfWholeMessage, orderedListOfShaSums, Compression.NONE));
+        parts.forEach(part -> message.addPart(2L, part));
+
+        pnMessageResult = new PNMessageResult(
+                new BasePubSubResult("channel", "channel", "channel", "channel", 2L, null, "publisher"),
+                new JsonObject());
+    }
+
+    @Benchmark
+    public PNMessageResult assemble() {
+        return message.assemble(pnMessageResult);
+    }
+
+    @Benchmark
+    public JsonObject reduceConcatenation() {
+        final byte[] wholeMessageBytes = orderedEncodedParts.stream()
+                .map(encodedData -> Base64.getDecoder().decode(encodedData))
+                .reduce(new byte[0], (accumulatedBytes, encodedBytes) -> {
+                    final byte[] joinedBytes = new byte[accumulatedBytes.length + encodedBytes.length];
+                    System.arraycopy(accumulatedBytes, 0, joinedBytes, 0, accumulatedBytes.length);
+                    System.arraycopy(encodedBytes, 0, joinedBytes, accumulatedBytes.length, encodedBytes.length);
+                    return joinedBytes;
+                });
+        return JsonParser.parseString(new String(wholeMessageBytes)).getAsJsonObject().getAsJsonObject("data");
+    }
+}
@@ -0,0 +1,78 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pubnub.api.models.consumer.pubsub.BasePubSubResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.pubnub.expedia.PublishUtils.encode;
+import static com.pubnub.expedia.PublishUtils.finalChunk;
+import static com.pubnub.expedia.PublishUtils.partChunk;
+import static com.pubnub.expedia.PublishUtils.partition;
+import static com.pubnub.expedia.PublishUtils.sha256;
+
+final class BenchmarkPayloads {
+    static final String CHANNEL = "channel";
+    static final int CHUNK_SIZE = new ChunkPlanner(CHANNEL, false, ChunkPlanner.SHA_SUM_LENGTH).chunkSize();
+
+    enum Arrival {
+        IN_ORDER, SHUFFLED
+    }
+
+    private BenchmarkPayloads() {}
+
+    static JsonObject data(final int approximateSize) {
+        final Random random = new Random(approximateSize);
+        final JsonObject data = new JsonObject();
+        final JsonArray items = new JsonArray();
+        data.add("items", items);
+        int size = 0;
+        for (int i = 0; size < approximateSize; i++) {
+            final JsonObject item = new JsonObject();
+            item.addProperty("id", i);
+            item.addProperty("conversationId", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+            item.addProperty("text", "suggestion number " + i + " for agent " + random.nextInt(1000));
+            item.addProperty("score", random.nextDouble());
+            items.add(item);
+            size += item.toString().length() + 1;
+        }
+        return data;
+    }
+
+    static byte[] message(final int approximateSize) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("timestamp", 0L);
+        message.add("data", data(approximateSize));
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Part chunks followed by the final chunk, as subscribers receive them, in the given arrival order.
+     */
+    static List<PNMessageResult> chunks(final byte[] messageBytes, final Arrival arrival) {
+        final String shaSumOfWholeMessage = encode(sha256(messageBytes));
+        final List<String> orderedListOfShaSums = new ArrayList<>();
+        final List<PNMessageResult> chunks = new ArrayList<>();
+        long timeToken = 1L;
+        for (final byte[] partBytes : partition(messageBytes, CHUNK_SIZE)) {
+            final String encodedShaSumOfPart = encode(sha256(partBytes));
+            orderedListOfShaSums.add(encodedShaSumOfPart);
+            chunks.add(pnMessageResult(partChunk(shaSumOfWholeMessage, encodedShaSumOfPart, encode(partBytes)), timeToken++));
+        }
+        chunks.add(pnMessageResult(finalChunk(shaSumOfWholeMessage, orderedListOfShaSums), timeToken));
+        if (arrival == Arrival.SHUFFLED) {
+            Collections.shuffle(chunks, new Random(messageBytes.length));
+        }
+        return chunks;
+    }
+
+    static PNMessageResult pnMessageResult(final JsonObject message, final long timeToken) {
+        return new PNMessageResult(new BasePubSubResult(CHANNEL, CHANNEL, CHANNEL, CHANNEL, timeToken, null, "publisher"), message);
+    }
+}
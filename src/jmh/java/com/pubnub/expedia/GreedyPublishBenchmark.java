@@ -0,0 +1,57 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNubException;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.pubnub.expedia.BenchmarkPayloads.CHANNEL;
+
+/**
+ * The whole {@link GreedyPublish#sync()} path with publishes acknowledged by a {@link LoopbackTransport} that has
+ * no listeners, instead of going over the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GreedyPublishBenchmark {
+    @Param({"10240", "1048576", "10485760", "52428800"})
+    public int payloadSize;
+
+    @Param({"NONE", "DEFLATE"})
+    public Compression compression;
+
+    private LoopbackTransport transport;
+    private JsonObject data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transport = new LoopbackTransport();
+        data = BenchmarkPayloads.data(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transport.close();
+    }
+
+    @Benchmark
+    public GreedyPublishResult sync() throws PubNubException {
+        return new GreedyPublish(transport)
+                .channel(CHANNEL)
+                .compression(compression)
+                .message(data)
+                .sync();
+    }
+}
@@ -0,0 +1,85 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.pubnub.expedia.BenchmarkPayloads.CHUNK_SIZE;
+import static com.pubnub.expedia.PublishUtils.encode;
+import static com.pubnub.expedia.PublishUtils.partChunk;
+import static com.pubnub.expedia.PublishUtils.sha256;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PublishUtilsBenchmark {
+    @Param({"10240", "1048576", "10485760", "52428800"})
+    public int payloadSize;
+
+    private byte[] messageBytes;
+    private List<byte[]> partsAsByteArrays;
+    private List<String> encodedParts;
+    private List<String> orderedListOfShaSums;
+    private String shaSumOfWholeMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messageBytes = BenchmarkPayloads.message(payloadSize);
+        shaSumOfWholeMessage = encode(sha256(messageBytes));
+        partsAsByteArrays = PublishUtils.partition(messageBytes, CHUNK_SIZE);
+        encodedParts = new ArrayList<>();
+        orderedListOfShaSums = new ArrayList<>();
+        for (final byte[] partBytes : partsAsByteArrays) {
+            encodedParts.add(encode(partBytes));
+            orderedListOfShaSums.add(encode(sha256(partBytes)));
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> partition() {
+        return PublishUtils.partition(messageBytes, CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public byte[] sha256WholeMessage() {
+        return sha256(messageBytes);
+    }
+
+    @Benchmark
+    public void sha256Parts(final Blackhole blackhole) {
+        for (final byte[] partBytes : partsAsByteArrays) {
+            blackhole.consume(sha256(partBytes));
+        }
+    }
+
+    @Benchmark
+    public void encodeParts(final Blackhole blackhole) {
+        for (final byte[] partBytes : partsAsByteArrays) {
+            blackhole.consume(encode(partBytes));
+        }
+    }
+
+    @Benchmark
+    public void partChunks(final Blackhole blackhole) {
+        for (int i = 0; i < encodedParts.size(); i++) {
+            blackhole.consume(partChunk(shaSumOfWholeMessage, orderedListOfShaSums.get(i), encodedParts.get(i)));
+        }
+    }
+
+    @Benchmark
+    public JsonObject finalChunk() {
+        return PublishUtils.finalChunk(shaSumOfWholeMessage, orderedListOfShaSums);
+    }
+}
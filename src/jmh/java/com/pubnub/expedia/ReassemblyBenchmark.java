@@ -0,0 +1,73 @@
+package com.pubnub.expedia;
+
+import com.pubnub.api.PubNub;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.pubnub.expedia.BenchmarkPayloads.Arrival;
+
+/**
+ * Feeds every chunk of a message through {@link ChunkJoiningSubscribeCallback} until it is delivered, and
+ * classifies chunks on their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReassemblyBenchmark {
+    @Param({"10240", "1048576", "10485760", "52428800"})
+    public int payloadSize;
+
+    @Param({"IN_ORDER", "SHUFFLED"})
+    public Arrival arrival;
+
+    private List<PNMessageResult> chunks;
+    private ChunkJoiningSubscribeCallback callback;
+    private PNMessageResult delivered;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        chunks = BenchmarkPayloads.chunks(BenchmarkPayloads.message(payloadSize), arrival);
+        // delivered messages stay in the expiry queue until their deadline passes; keep that queue short
+        final ReassemblyConfiguration configuration = new ReassemblyConfiguration().messageTimeout(Duration.ofSeconds(1));
+        callback = new ChunkJoiningSubscribeCallback(null, new ChunksAwareSubscribeCallbackAdapter() {
+            @Override
+            public void message(final PubNub pubnub, final PNMessageResult pnMessageResult) {
+                delivered = pnMessageResult;
+            }
+        }, configuration);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        callback.close();
+    }
+
+    @Benchmark
+    public PNMessageResult reassemble() {
+        delivered = null;
+        chunks.forEach(chunk -> callback.message(null, chunk));
+        if (delivered == null) throw new IllegalStateException("message was not delivered");
+        return delivered;
+    }
+
+    @Benchmark
+    public void classify(final Blackhole blackhole) {
+        for (final PNMessageResult chunk : chunks) {
+            blackhole.consume(PartUtils.classify(chunk));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNub;
+import com.pubnub.api.PubNubException;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives concurrent publishers and subscribers over a {@link LoopbackTransport} with injected latency, reordering,
+ * loss, duplication and publish failures, and reports throughput, delivery latency, reassembly memory and loss.
+ * <p>
+ * Run with {@code ./gradlew soak -PsoakArgs="--publishers=4 --subscribers=2 --loss=0.001"}; see {@link #main} for all
+ * options.
+ */
+public final class SoakHarness {
+    private final int publishers;
+    private final int subscribers;
+    private final int messagesPerPublisher;
+    private final int payloadSize;
+    private final boolean gapRecovery;
+    private final Duration drainTimeout;
+    private final LoopbackTransport transport;
+
+    private final RecordingChunkMetrics metrics = new RecordingChunkMetrics();
+    private final LogLinearHistogram deliveryLatency = new LogLinearHistogram();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failedPublishes = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder duplicateDeliveries = new LongAdder();
+    private final AtomicLong lastDeliveryNanos = new AtomicLong();
+    private final LongAccumulator bufferedBytesHighWaterMark = new LongAccumulator(Math::max, 0L);
+    private final LongAccumulator heapUsedHighWaterMark = new LongAccumulator(Math::max, 0L);
+
+    private SoakHarness(final Map<String, String> options) {
+        this.publishers = Integer.parseInt(options.getOrDefault("publishers", "4"));
+        this.subscribers = Integer.parseInt(options.getOrDefault("subscribers", "2"));
+        this.messagesPerPublisher = Integer.parseInt(options.getOrDefault("messages", "50"));
+        this.payloadSize = Integer.parseInt(options.getOrDefault("payload-size", "1048576"));
+        this.gapRecovery = Boolean.parseBoolean(options.getOrDefault("gap-recovery", "true"));
+        this.drainTimeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("drain-seconds", "60")));
+        final int partsPerMessage = payloadSize / BenchmarkPayloads.CHUNK_SIZE + 2;
+        this.transport = new LoopbackTransport()
+                .latency(Duration.ofMillis(Long.parseLong(options.getOrDefault("latency-ms", "5"))))
+                .reorderWindow(Duration.ofMillis(Long.parseLong(options.getOrDefault("reorder-ms", "20"))))
+                .lossRate(Double.parseDouble(options.getOrDefault("loss", "0")))
+                .duplicationRate(Double.parseDouble(options.getOrDefault("duplication", "0")))
+                .publishFailureRate(Double.parseDouble(options.getOrDefault("publish-failure", "0")))
+                .historySize(gapRecovery ? partsPerMessage * 4 : 0)
+                .seed(Long.parseLong(options.getOrDefault("seed", "42")));
+    }
+
+    /**
+     * Options, as {@code --name=value}: {@code publishers}, {@code subscribers}, {@code messages} per publisher,
+     * {@code payload-size} in bytes, {@code latency-ms}, {@code reorder-ms}, {@code loss}, {@code duplication} and
+     * {@code publish-failure} as probabilities, {@code gap-recovery}, {@code drain-seconds} and {@code seed}.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) throw new IllegalArgumentException("expected --name=value: " + arg);
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        new SoakHarness(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        final List<ChunkJoiningSubscribeCallback> callbacks = new ArrayList<>();
+        for (int i = 0; i < subscribers; i++) {
+            final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, subscriber(), configuration());
+            transport.addListener(callback);
+            callbacks.add(callback);
+        }
+
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> {
+            bufferedBytesHighWaterMark.accumulate(metrics.getBufferedBytes());
+            heapUsedHighWaterMark.accumulate(memory.getHeapMemoryUsage().getUsed());
+        }, 0, 50, TimeUnit.MILLISECONDS);
+
+        final long startedNanos = System.nanoTime();
+        final ExecutorService publishing = Executors.newFixedThreadPool(publishers);
+        for (int i = 0; i < publishers; i++) {
+            final int publisher = i;
+            publishing.execute(() -> publish(publisher));
+        }
+        publishing.shutdown();
+        publishing.awaitTermination(1, TimeUnit.DAYS);
+
+        final long expected = published.sum() * subscribers;
+        final long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+        while (delivered.sum() < expected && System.nanoTime() - drainDeadline < 0) {
+            Thread.sleep(50);
+        }
+
+        sampler.shutdownNow();
+        callbacks.forEach(ChunkJoiningSubscribeCallback::close);
+        transport.close();
+        report(Math.max(1L, lastDeliveryNanos.get() - startedNanos), expected);
+    }
+
+    private ReassemblyConfiguration configuration() {
+        final ReassemblyConfiguration configuration = new ReassemblyConfiguration()
+                .metrics(metrics)
+                .messageTimeout(Duration.ofSeconds(10))
+                .duplicateSuppressionWindow(Duration.ofSeconds(30));
+        return gapRecovery ? configuration.messageHistory(transport).gapRecoveryDelay(Duration.ofMillis(200)) : configuration;
+    }
+
+    private ChunksAwareSubscribeCallbackAdapter subscriber() {
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        return new ChunksAwareSubscribeCallbackAdapter() {
+            @Override
+            public void message(final PubNub pubnub, final PNMessageResult pnMessageResult) {
+                final long now = System.nanoTime();
+                final JsonObject data = pnMessageResult.getMessage().getAsJsonObject();
+                if (seen.add(data.get("publisher").getAsInt() + ":" + data.get("sequence").getAsInt())) {
+                    deliveryLatency.record(now - data.get("sentNanos").getAsLong());
+                    delivered.increment();
+                    lastDeliveryNanos.accumulateAndGet(now, Math::max);
+                }
+                else {
+                    duplicateDeliveries.increment();
+                }
+            }
+        };
+    }
+
+    private void publish(final int publisher) {
+        final JsonObject payload = BenchmarkPayloads.data(payloadSize);
+        for (int sequence = 0; sequence < messagesPerPublisher; sequence++) {
+            final JsonObject data = new JsonObject();
+            data.add("items", payload.get("items"));
+            data.addProperty("publisher", publisher);
+            data.addProperty("sequence", sequence);
+            data.addProperty("sentNanos", System.nanoTime());
+            try {
+                new GreedyPublish(transport)
+                        .channel("soak-" + publisher)
+                        .metrics(metrics)
+                        .message(data)
+                        .sync();
+                published.increment();
+            }
+            catch (PubNubException e) {
+                failedPublishes.increment();
+            }
+        }
+    }
+
+    private void report(final long elapsedNanos, final long expected) {
+        final double seconds = elapsedNanos / 1e9;
+        final long deliveredMessages = delivered.sum();
+        System.out.printf("publishers=%d subscribers=%d payload=%d bytes%n", publishers, subscribers, payloadSize);
+        System.out.printf("published %d messages, %d failed after retries, %d part publishes failed%n",
+                published.sum(), failedPublishes.sum(), metrics.getPartsFailed());
+        System.out.printf("delivered %d of %d expected, %d lost (%.4f%%), %d duplicate deliveries%n",
+                deliveredMessages, expected, expected - deliveredMessages,
+                expected == 0 ? 0.0 : 100.0 * (expected - deliveredMessages) / expected, duplicateDeliveries.sum());
+        System.out.printf("throughput %.1f messages/s, %.1f MB/s delivered over %.2f s%n",
+                deliveredMessages / seconds, deliveredMessages * (double) payloadSize / seconds / 1e6, seconds);
+        System.out.printf("delivery latency p50=%.2f ms p99=%.2f ms p999=%.2f ms max=%.2f ms%n",
+                deliveryLatency.getValueAtPercentile(50) / 1e6, deliveryLatency.getValueAtPercentile(99) / 1e6,
+                deliveryLatency.getValueAtPercentile(99.9) / 1e6, deliveryLatency.getMax() / 1e6);
+        System.out.printf("reassembly buffered high-water mark %.1f MB, heap used high-water mark %.1f MB%n",
+                bufferedBytesHighWaterMark.get() / 1e6, heapUsedHighWaterMark.get() / 1e6);
+        System.out.printf("reassembly dropped %d messages (%d timed out), recovered %d parts, ignored %d duplicate parts%n",
+                metrics.getMessagesDropped(), metrics.getMessagesTimedOut(), metrics.getRecoveredParts(), metrics.getDuplicateParts());
+    }
+}
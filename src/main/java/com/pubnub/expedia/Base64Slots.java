@@ -0,0 +1,77 @@
+package com.pubnub.expedia;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Base64 decoding straight from a part's {@code String} into a slot of a preallocated buffer,
+ * so reassembly needs neither a byte[] per part nor any intermediate copies.
+ */
+final class Base64Slots {
+    private static final int[] DECODING_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODING_TABLE, -1);
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODING_TABLE[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private Base64Slots() {}
+
+    static int decodedLength(final String encoded) {
+        final int length = encoded.length();
+        if (length == 0) {
+            return 0;
+        }
+        if (length % 4 != 0) throw new IllegalArgumentException("invalid base64 length: " + length);
+        int padding = 0;
+        if (encoded.charAt(length - 1) == '=') padding++;
+        if (encoded.charAt(length - 2) == '=') padding++;
+        return length / 4 * 3 - padding;
+    }
+
+    static int decodeInto(final String encoded, final byte[] destination, final int offset) {
+        final int decodedLength = decodedLength(encoded);
+        if (offset + decodedLength > destination.length) throw new IllegalArgumentException("slot too small for part");
+
+        int position = offset;
+        final int end = offset + decodedLength;
+        for (int i = 0; i < encoded.length(); i += 4) {
+            final int bits = sextet(encoded, i) << 18
+                    | sextet(encoded, i + 1) << 12
+                    | (encoded.charAt(i + 2) == '=' ? 0 : sextet(encoded, i + 2) << 6)
+                    | (encoded.charAt(i + 3) == '=' ? 0 : sextet(encoded, i + 3));
+            destination[position++] = (byte) (bits >> 16);
+            if (position < end) destination[position++] = (byte) (bits >> 8);
+            if (position < end) destination[position++] = (byte) bits;
+        }
+        return decodedLength;
+    }
+
+    static int decodeInto(final String encoded, final ByteBuffer destination, final int offset) {
+        final int decodedLength = decodedLength(encoded);
+        if (offset + decodedLength > destination.capacity()) throw new IllegalArgumentException("slot too small for part");
+
+        int position = offset;
+        final int end = offset + decodedLength;
+        for (int i = 0; i < encoded.length(); i += 4) {
+            final int bits = sextet(encoded, i) << 18
+                    | sextet(encoded, i + 1) << 12
+                    | (encoded.charAt(i + 2) == '=' ? 0 : sextet(encoded, i + 2) << 6)
+                    | (encoded.charAt(i + 3) == '=' ? 0 : sextet(encoded, i + 3));
+            destination.put(position++, (byte) (bits >> 16));
+            if (position < end) destination.put(position++, (byte) (bits >> 8));
+            if (position < end) destination.put(position++, (byte) bits);
+        }
+        return decodedLength;
+    }
+
+    private static int sextet(final String encoded, final int index) {
+        final char c = encoded.charAt(index);
+        final int value = c < 128 ? DECODING_TABLE[c] : -1;
+        if (value < 0) throw new IllegalArgumentException("invalid base64 character at " + index + ": " + c);
+        return value;
+    }
+}
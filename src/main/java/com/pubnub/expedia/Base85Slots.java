@@ -0,0 +1,101 @@
+package com.pubnub.expedia;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Base85 encoding of part data: every 4 bytes become 5 characters (25% overhead against Base64's 33%), a trailing group
+ * of n bytes becomes n + 1 characters. The alphabet leaves out every character JSON serializers escape
+ * ({@code " \ < > & = '}), so encoded parts go over the wire as they are. Decodes straight into a slot of a
+ * preallocated buffer, like {@link Base64Slots}.
+ */
+final class Base85Slots {
+    static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz!#$%()*+,-./:;?@[]^_{|}";
+
+    private static final int[] DECODING_TABLE = new int[128];
+    private static final long[] POWERS = {85L * 85 * 85 * 85, 85L * 85 * 85, 85L * 85, 85L, 1L};
+
+    static {
+        Arrays.fill(DECODING_TABLE, -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            DECODING_TABLE[ALPHABET.charAt(i)] = i;
+        }
+    }
+
+    private Base85Slots() {}
+
+    static String encode(final byte[] bytes) {
+        final char[] encoded = new char[encodedLength(bytes.length)];
+        int position = 0;
+        for (int i = 0; i < bytes.length; i += 4) {
+            final int groupLength = Math.min(4, bytes.length - i);
+            long value = 0;
+            for (int j = 0; j < 4; j++) {
+                value = value << 8 | (j < groupLength ? bytes[i + j] & 0xFF : 0);
+            }
+            for (int j = 0; j <= groupLength; j++) {
+                encoded[position++] = ALPHABET.charAt((int) (value / POWERS[j] % 85));
+            }
+        }
+        return new String(encoded);
+    }
+
+    static int encodedLength(final int decodedLength) {
+        final int remainder = decodedLength % 4;
+        return decodedLength / 4 * 5 + (remainder == 0 ? 0 : remainder + 1);
+    }
+
+    static int decodedLength(final String encoded) {
+        final int length = encoded.length();
+        final int remainder = length % 5;
+        if (remainder == 1) throw new IllegalArgumentException("invalid base85 length: " + length);
+        return length / 5 * 4 + (remainder == 0 ? 0 : remainder - 1);
+    }
+
+    static int decodeInto(final String encoded, final byte[] destination, final int offset) {
+        final int decodedLength = decodedLength(encoded);
+        if (offset + decodedLength > destination.length) throw new IllegalArgumentException("slot too small for part");
+
+        int position = offset;
+        for (int i = 0; i < encoded.length(); i += 5) {
+            final int groupLength = Math.min(5, encoded.length() - i);
+            final long value = group(encoded, i, groupLength);
+            for (int j = 0; j < groupLength - 1; j++) {
+                destination[position++] = (byte) (value >> (24 - 8 * j));
+            }
+        }
+        return decodedLength;
+    }
+
+    static int decodeInto(final String encoded, final ByteBuffer destination, final int offset) {
+        final int decodedLength = decodedLength(encoded);
+        if (offset + decodedLength > destination.capacity()) throw new IllegalArgumentException("slot too small for part");
+
+        int position = offset;
+        for (int i = 0; i < encoded.length(); i += 5) {
+            final int groupLength = Math.min(5, encoded.length() - i);
+            final long value = group(encoded, i, groupLength);
+            for (int j = 0; j < groupLength - 1; j++) {
+                destination.put(position++, (byte) (value >> (24 - 8 * j)));
+            }
+        }
+        return decodedLength;
+    }
+
+    private static long group(final String encoded, final int index, final int groupLength) {
+        long value = 0;
+        for (int j = 0; j < 5; j++) {
+            // a short trailing group is padded with the highest digit, which rounds it back up to the bytes it encodes
+            value = value * 85 + (j < groupLength ? digit(encoded, index + j) : 84);
+        }
+        if (value > 0xFFFFFFFFL) throw new IllegalArgumentException("invalid base85 group at " + index);
+        return value;
+    }
+
+    private static int digit(final String encoded, final int index) {
+        final char c = encoded.charAt(index);
+        final int value = c < 128 ? DECODING_TABLE[c] : -1;
+        if (value < 0) throw new IllegalArgumentException("invalid base85 character at " + index + ": " + c);
+        return value;
+    }
+}
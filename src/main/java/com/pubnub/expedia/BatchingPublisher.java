@@ -0,0 +1,176 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces small messages into one publish per channel: messages are buffered until a batch reaches
+ * {@code maxBatchBytes} or its first message has waited {@code linger}, then the batch goes out as a single
+ * message through a {@link GreedyPublish}. {@link ChunkJoiningSubscribeCallback} unpacks batches and hands every
+ * message to listeners on its own, in publish order, with its original timestamp as user metadata.
+ * <p>
+ * Batches for one channel are published one after another, so they arrive in order. Close the publisher to flush
+ * what is still buffered.
+ */
+public class BatchingPublisher implements AutoCloseable {
+    // stays within a single publish, so a full batch costs one publish instead of being chunked
+    private static final int DEFAULT_MAX_BATCH_BYTES = 28 * 1024;
+    private static final Duration DEFAULT_LINGER = Duration.ofMillis(20);
+
+    private static final class Batch {
+        private final JsonArray messages = new JsonArray();
+        private final CompletableFuture<GreedyPublishResult> result = new CompletableFuture<>();
+        private int bytes;
+        private ScheduledFuture<?> lingerTask;
+    }
+
+    private final Supplier<GreedyPublish> publishFactory;
+
+    private final Map<String, Batch> batches = new HashMap<>();
+    private final Map<String, CompletableFuture<GreedyPublishResult>> lastPublished = new HashMap<>();
+
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private Duration linger = DEFAULT_LINGER;
+    private ScheduledExecutorService scheduler;
+    private Executor executor;
+
+    /**
+     * @param publishFactory a new, configured {@link GreedyPublish} for every batch; channel and message are set by the batcher
+     */
+    public BatchingPublisher(final Supplier<GreedyPublish> publishFactory) {
+        this.publishFactory = publishFactory;
+    }
+
+    public BatchingPublisher maxBatchBytes(final int maxBatchBytes) {
+        if (maxBatchBytes < 1) throw new IllegalArgumentException("maxBatchBytes must be positive: " + maxBatchBytes);
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    public BatchingPublisher linger(final Duration linger) {
+        this.linger = linger;
+        return this;
+    }
+
+    public BatchingPublisher scheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Runs the publishing of batches, which serializes, hashes and encodes them, so the scheduler only has to tell when
+     * a batch has lingered long enough. The common fork-join pool by default.
+     */
+    public BatchingPublisher executor(final Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public Duration getLinger() {
+        return linger;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+    }
+
+    public Executor getExecutor() {
+        return executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * @return completes with the result of publishing the batch the message went out with
+     */
+    public CompletableFuture<GreedyPublishResult> publish(final String channel, final JsonObject message) {
+        final JsonObject entry = new JsonObject();
+        entry.addProperty("timestamp", System.currentTimeMillis());
+        entry.add("data", message);
+        final int entryBytes = entry.toString().length() + 1;
+
+        synchronized (batches) {
+            Batch batch = batches.get(channel);
+            if (batch != null && batch.bytes + entryBytes > maxBatchBytes) {
+                flush(channel, batch);
+                batch = null;
+            }
+            if (batch == null) {
+                final Batch newBatch = new Batch();
+                newBatch.lingerTask = getScheduler().schedule(() -> flush(channel, newBatch), linger.toNanos(), TimeUnit.NANOSECONDS);
+                batches.put(channel, newBatch);
+                batch = newBatch;
+            }
+            batch.messages.add(entry);
+            batch.bytes += entryBytes;
+            if (batch.bytes >= maxBatchBytes) {
+                flush(channel, batch);
+            }
+            return batch.result;
+        }
+    }
+
+    public void flush() {
+        synchronized (batches) {
+            new ArrayList<>(batches.entrySet()).forEach(entry -> flush(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private void flush(final String channel, final Batch batch) {
+        synchronized (batches) {
+            if (!batches.remove(channel, batch)) {
+                return;
+            }
+            batch.lingerTask.cancel(false);
+            final JsonObject batchJsonObject = new JsonObject();
+            batchJsonObject.addProperty("type", "batch");
+            batchJsonObject.add("messages", batch.messages);
+
+            final CompletableFuture<GreedyPublishResult> previous = lastPublished.get(channel);
+            final CompletableFuture<GreedyPublishResult> published = (previous != null ? previous : CompletableFuture.<GreedyPublishResult>completedFuture(null))
+                    .handle((result, throwable) -> null)
+                    .thenComposeAsync(ignored -> publishFactory.get().framed().channel(channel).message(batchJsonObject).async(), getExecutor());
+            lastPublished.put(channel, published);
+            published.whenComplete((result, throwable) -> {
+                synchronized (batches) {
+                    lastPublished.remove(channel, published);
+                }
+                if (throwable != null) {
+                    batch.result.completeExceptionally(throwable);
+                }
+                else {
+                    batch.result.complete(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Flushes every buffered batch and waits for all batches to be published.
+     */
+    @Override
+    public void close() {
+        final List<CompletableFuture<GreedyPublishResult>> pending;
+        synchronized (batches) {
+            flush();
+            pending = new ArrayList<>(lastPublished.values());
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).handle((result, throwable) -> null).join();
+    }
+}
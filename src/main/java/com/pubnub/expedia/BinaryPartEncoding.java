@@ -0,0 +1,33 @@
+package com.pubnub.expedia;
+
+import java.util.Base64;
+
+/**
+ * The {@link PartEncoding}s that carry raw bytes, so the ones parts of compressed or streamed messages can be encoded with.
+ */
+enum BinaryPartEncoding {
+    BASE64(PartEncoding.BASE64) {
+        @Override
+        String encode(final byte[] bytes) {
+            return Base64.getEncoder().encodeToString(bytes);
+        }
+    },
+    BASE85(PartEncoding.BASE85) {
+        @Override
+        String encode(final byte[] bytes) {
+            return Base85Slots.encode(bytes);
+        }
+    };
+
+    private final PartEncoding partEncoding;
+
+    BinaryPartEncoding(final PartEncoding partEncoding) {
+        this.partEncoding = partEncoding;
+    }
+
+    PartEncoding getPartEncoding() {
+        return partEncoding;
+    }
+
+    abstract String encode(byte[] bytes);
+}
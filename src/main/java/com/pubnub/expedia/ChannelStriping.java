@@ -0,0 +1,87 @@
+package com.pubnub.expedia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shard channels the parts of big messages on a channel are spread over, so a single message isn't held to what one
+ * channel can take. The final chunk stays on the channel itself and lists the shards; the {@code k}-th distinct part in
+ * the manifest goes to shard {@code k % shards}. Publisher and subscribers need the same striping: subscribers fold
+ * parts arriving on a shard back into the channel it belongs to.
+ */
+public class ChannelStriping {
+    private final Map<String, List<String>> shardsByChannel = new ConcurrentHashMap<>();
+    private final Map<String, String> channelsByShard = new ConcurrentHashMap<>();
+
+    /**
+     * Stripes {@code channel} over {@code shards}, which must not be shards of another channel.
+     */
+    public synchronized ChannelStriping stripe(final String channel, final List<String> shards) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("no shards for " + channel);
+        for (final String shard : shards) {
+            final String stripedChannel = channelsByShard.get(shard);
+            if (stripedChannel != null && !stripedChannel.equals(channel)) {
+                throw new IllegalArgumentException(shard + " is already a shard of " + stripedChannel);
+            }
+        }
+        unstripe(channel);
+        shardsByChannel.put(channel, Collections.unmodifiableList(new ArrayList<>(shards)));
+        shards.forEach(shard -> channelsByShard.put(shard, channel));
+        return this;
+    }
+
+    /**
+     * Stripes {@code channel} over {@code shardCount} shards named {@code <channel>-stripe-<n>}.
+     */
+    public ChannelStriping stripe(final String channel, final int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        final List<String> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(channel + "-stripe-" + i);
+        }
+        return stripe(channel, shards);
+    }
+
+    public synchronized void unstripe(final String channel) {
+        final List<String> shards = shardsByChannel.remove(channel);
+        if (shards != null) {
+            shards.forEach(channelsByShard::remove);
+        }
+    }
+
+    /**
+     * @return shards of {@code channel}, empty if it isn't striped
+     */
+    public List<String> getShards(final String channel) {
+        return shardsByChannel.getOrDefault(channel, Collections.emptyList());
+    }
+
+    /**
+     * @return the channel {@code shard} is a shard of, or {@code null}
+     */
+    String channelOf(final String shard) {
+        return channelsByShard.get(shard);
+    }
+
+    /**
+     * @return {@code channels} with the shards of every striped one among them added
+     */
+    List<String> withShards(final List<String> channels) {
+        final List<String> withShards = new ArrayList<>(channels);
+        for (final String channel : channels) {
+            for (final String shard : getShards(channel)) {
+                if (!withShards.contains(shard)) {
+                    withShards.add(shard);
+                }
+            }
+        }
+        return withShards;
+    }
+
+    static String shardOf(final List<String> shards, final int distinctPart) {
+        return shards.get(distinctPart % shards.size());
+    }
+}
@@ -1,6 +1,8 @@
 package com.pubnub.expedia;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.pubnub.api.PubNub;
 import com.pubnub.api.callbacks.SubscribeCallback;
@@ -16,189 +18,970 @@ import com.pubnub.api.models.consumer.pubsub.files.PNFileEventResult;
 import com.pubnub.api.models.consumer.pubsub.message_actions.PNMessageActionResult;
 import com.pubnub.expedia.GreedyPubNub.ChunksAwareSubscribeCallback;
 
-import java.util.Base64;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.pubnub.expedia.Message.*;
-import static com.pubnub.expedia.PartUtils.extractFinalChunk;
-import static com.pubnub.expedia.PartUtils.extractPartChunk;
-import static com.pubnub.expedia.PartUtils.isChunk;
-import static com.pubnub.expedia.PartUtils.isFinalChunk;
-import static com.pubnub.expedia.PartUtils.isPartChunk;
+import static com.pubnub.expedia.PartUtils.classify;
+import static com.pubnub.expedia.PublishUtils.encode;
+import static com.pubnub.expedia.PublishUtils.newSha256Digest;
 
-public class ChunkJoiningSubscribeCallback extends SubscribeCallback {
-    private final PubNub pubNub;
+public class ChunkJoiningSubscribeCallback extends SubscribeCallback implements AutoCloseable {
+    private static final int RECENTLY_DELIVERED_CAPACITY = 1024;
+
+    private static final class Baseline {
+        private final String shaSum;
+        private final JsonObject data;
+
+        private Baseline(final String shaSum, final JsonObject data) {
+            this.shaSum = shaSum;
+            this.data = data;
+        }
+    }
 
-    private final ChunksAwareSubscribeCallback listener;
+    private static final class Delivery {
+        private final long deliveredNanos;
+        private final long latestTimeToken;
 
+        private Delivery(final long deliveredNanos, final long latestTimeToken) {
+            this.deliveredNanos = deliveredNanos;
+            this.latestTimeToken = latestTimeToken;
+        }
+    }
 
+    private final PubNub pubNub;
+
+    private final List<ChunksAwareSubscribeCallback> listeners = new CopyOnWriteArrayList<>();
 
     private final ConcurrentHashMap<String, Message> messages = new ConcurrentHashMap<>();
 
+    // chunks duplicated in transit may still show up after their message was delivered
+    private final Map<String, Delivery> recentlyDelivered = Collections.synchronizedMap(new LinkedHashMap<String, Delivery>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Delivery> eldest) {
+            return size() > RECENTLY_DELIVERED_CAPACITY;
+        }
+    });
+
+    // null unless a part cache is configured
+    private final Map<String, Part> cachedParts;
+
+    // last snapshot per channel that delta messages are patches against
+    private final Map<String, Baseline> baselines = new ConcurrentHashMap<>();
+
+    private final MessageExpiry messageExpiry;
+
+    private final ReassemblyBudget budget;
+
+    private final MessageDispatcher dispatcher;
+
+    private final long spillThresholdBytes;
+
+    private final Path spillDirectory;
+
+    private final ChunkMetrics metrics;
+
+    private final ChunkMetrics.ReassemblyGauges reassemblyGauges;
+
+    private final ReassemblyConfiguration configuration;
+
     public ChunkJoiningSubscribeCallback(final PubNub pubNub, final ChunksAwareSubscribeCallback listener) {
+        this(pubNub, listener, new ReassemblyConfiguration());
+    }
+
+    public ChunkJoiningSubscribeCallback(final PubNub pubNub, final ChunksAwareSubscribeCallback listener,
+                                         final ReassemblyConfiguration configuration) {
+        this(pubNub, configuration);
+        addListener(listener);
+    }
+
+    public ChunkJoiningSubscribeCallback(final PubNub pubNub, final ReassemblyConfiguration configuration) {
         this.pubNub = pubNub;
-        this.listener = listener;
+        this.budget = new ReassemblyBudget(configuration);
+        this.dispatcher = configuration.getDispatcher();
+        this.spillThresholdBytes = configuration.getSpillThresholdBytes();
+        this.spillDirectory = configuration.getSpillDirectory();
+        this.metrics = configuration.getMetrics();
+        this.configuration = configuration;
+        this.cachedParts = configuration.getPartCacheSize() > 0 ? newPartCache(configuration.getPartCacheSize()) : null;
+        this.messageExpiry = new MessageExpiry(messages, configuration,
+                (wholeMessageShaSum, message) -> drop(wholeMessageShaSum, message, DroppedMessage.Reason.TIMED_OUT));
+        this.reassemblyGauges = new ChunkMetrics.ReassemblyGauges() {
+            @Override
+            public int inFlightMessages() {
+                return messages.size();
+            }
+
+            @Override
+            public long bufferedBytes() {
+                return budget.getBufferedBytes();
+            }
+        };
+        metrics.reassemblyGauges(reassemblyGauges);
+    }
+
+    private static Map<String, Part> newPartCache(final int partCacheSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, Part>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Part> eldest) {
+                return size() > partCacheSize;
+            }
+        });
+    }
+
+    public void addListener(final ChunksAwareSubscribeCallback listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final ChunksAwareSubscribeCallback listener) {
+        listeners.remove(listener);
     }
 
     @Override
-    public void message(final PubNub pubnub, final PNMessageResult pnMessageResult) {
-        if (isChunk(pnMessageResult)) {
-            if (isPartChunk(pnMessageResult)) {
-                extractPartChunk(pnMessageResult)
-                        .ifPresent(partChunk -> {
-                            addToMessages(partChunk.getPartOf(), partChunk, pnMessageResult.getTimetoken());
-                            tryToDeliver(pnMessageResult, partChunk.getPartOf());
-                        });
-            }
-            else if (isFinalChunk(pnMessageResult)) {
-                extractFinalChunk(pnMessageResult)
-                        .ifPresent(finalChunk -> {
-                            addToMessages(finalChunk, pnMessageResult.getTimetoken());
-                            tryToDeliver(pnMessageResult, finalChunk.getShaSum());
-                        });
+    public void message(final PubNub pubnub, final PNMessageResult receivedPNMessageResult) {
+        final Chunk chunk = classify(receivedPNMessageResult);
+        final PNMessageResult pnMessageResult = chunk instanceof Part ? unstriped(receivedPNMessageResult) : receivedPNMessageResult;
+        if (chunk instanceof Part) {
+            final Part partChunk = (Part) chunk;
+            if (cachedParts != null) {
+                cachedParts.put(partChunk.getShaSum(), partChunk);
             }
-            else {
-                listener.message(pubnub, pnMessageResult);
+            if (isLateDuplicate(partChunk.getPartOf(), pnMessageResult)) {
+                metrics.duplicatePart(pnMessageResult.getChannel());
+                return;
             }
+            addToMessages(partChunk.getPartOf(), partChunk, pnMessageResult);
+            if (partChunk.getIndex() != null) {
+                stream(partChunk.getPartOf(), pnMessageResult);
+            }
+            tryToDeliver(pnMessageResult, partChunk.getPartOf());
         }
-        else {
-            listener.message(pubnub, pnMessageResult);
+        else if (chunk instanceof Final) {
+            final Final finalChunk = (Final) chunk;
+            if (isLateDuplicate(finalChunk.getShaSum(), pnMessageResult)) {
+                return;
+            }
+            addToMessages(finalChunk, pnMessageResult);
+            // only content-addressed part ids are safe to match across messages
+            if (cachedParts != null && finalChunk.getIntegrity().isContentAddressed()) {
+                addCachedParts(finalChunk.getShaSum(), pnMessageResult);
+            }
+            tryToDeliver(pnMessageResult, finalChunk.getShaSum());
+            if (configuration.getMessageHistory() != null) {
+                configuration.getScheduler().schedule(() -> recoverGap(finalChunk.getShaSum(), pnMessageResult),
+                        configuration.getGapRecoveryDelay().toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        else if (chunk instanceof Delta) {
+            final Delta delta = (Delta) chunk;
+            final boolean accepted = dispatcher.dispatch(pnMessageResult.getChannel(), () -> applyDelta(delta, pnMessageResult));
+            if (!accepted) {
+                dropDelta(delta, pnMessageResult, DroppedMessage.Reason.DISPATCH_QUEUE_FULL);
+            }
+        }
+        else if (chunk instanceof Batch) {
+            final Batch batch = (Batch) chunk;
+            final boolean accepted = dispatcher.dispatch(pnMessageResult.getChannel(), () -> deliverBatch(batch, pnMessageResult));
+            if (!accepted) {
+                final DroppedMessage droppedMessage = new DroppedMessage(pnMessageResult.getChannel(), null,
+                        DroppedMessage.Reason.DISPATCH_QUEUE_FULL, 0L, 0, null);
+                metrics.messageDropped(droppedMessage);
+                listeners.forEach(listener -> listener.messageDropped(pubNub, droppedMessage));
+            }
+        }
+        else if (chunk == Chunk.PASSTHROUGH || chunk instanceof Whole) {
+            final PNMessageResult wholePNMessageResult = chunk instanceof Whole
+                    ? withMessage(pnMessageResult, pnMessageResult.getUserMetadata(), ((Whole) chunk).getData())
+                    : pnMessageResult;
+            final boolean accepted = dispatcher.dispatch(pnMessageResult.getChannel(),
+                    () -> listeners.forEach(listener -> listener.message(pubnub, wholePNMessageResult)));
+            if (!accepted) {
+                final DroppedMessage droppedMessage = new DroppedMessage(pnMessageResult.getChannel(), null,
+                        DroppedMessage.Reason.DISPATCH_QUEUE_FULL, 0L, 0, null);
+                metrics.messageDropped(droppedMessage);
+                listeners.forEach(listener -> listener.messageDropped(pubNub, droppedMessage));
+            }
+        }
+    }
+
+    /**
+     * @return a part that came in on a {@link ChannelStriping shard} as if it came in on the channel it's a shard of
+     */
+    private PNMessageResult unstriped(final PNMessageResult pnMessageResult) {
+        final String shard = pnMessageResult.getChannel();
+        final String channel = configuration.getChannelStriping().channelOf(shard);
+        if (channel == null) {
+            return pnMessageResult;
+        }
+        final String subscription = shard.equals(pnMessageResult.getSubscription()) ? channel : pnMessageResult.getSubscription();
+        final BasePubSubResult basePubSubResult = new BasePubSubResult(subscription,
+                pnMessageResult.getActualChannel(),
+                channel,
+                subscription,
+                pnMessageResult.getTimetoken(),
+                pnMessageResult.getUserMetadata(),
+                pnMessageResult.getPublisher());
+        return new PNMessageResult(basePubSubResult, pnMessageResult.getMessage());
+    }
+
+    /**
+     * @return what {@code channels} hold between the timetokens, as one list
+     */
+    private CompletableFuture<List<PNMessageResult>> fetchHistory(final Collection<String> channels, final long startTimeToken,
+                                                                 final long endTimeToken) {
+        final List<CompletableFuture<List<PNMessageResult>>> fetches = new ArrayList<>(channels.size());
+        for (final String channel : channels) {
+            fetches.add(configuration.getMessageHistory().fetch(channel, startTimeToken, endTimeToken));
         }
+        return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            final List<PNMessageResult> history = new ArrayList<>();
+            fetches.forEach(fetch -> history.addAll(fetch.join()));
+            return history;
+        });
+    }
+
+    /**
+     * @return whether the chunk is a copy of one of a message delivered within the duplicate suppression window. The
+     * same message published again is told apart by its chunks all being newer than the delivered one's.
+     */
+    private boolean isLateDuplicate(final String wholeMessageShaSum, final PNMessageResult pnMessageResult) {
+        final Delivery delivery = recentlyDelivered.get(wholeMessageShaSum);
+        return delivery != null
+                && pnMessageResult.getTimetoken() != null
+                && pnMessageResult.getTimetoken() <= delivery.latestTimeToken
+                && System.nanoTime() - delivery.deliveredNanos < configuration.getDuplicateSuppressionWindow().toNanos();
+    }
+
+    private void addCachedParts(final String wholeMessageShaSum, final PNMessageResult finalPNMessageResult) {
+        final Set<String> missingParts = new HashSet<>();
+        messages.computeIfPresent(wholeMessageShaSum, (key, message) -> {
+            if (message.status() == Status.FINALIZED) {
+                missingParts.addAll(message.getMissingParts());
+            }
+            return message;
+        });
+        int cached = 0;
+        for (final String partShaSum : missingParts) {
+            final Part cachedPart = cachedParts.get(partShaSum);
+            if (cachedPart != null) {
+                if (!addToExistingMessage(wholeMessageShaSum, cachedPart, finalPNMessageResult)) {
+                    break;
+                }
+                cached++;
+            }
+        }
+        if (cached > 0) {
+            metrics.cachedPartsUsed(finalPNMessageResult.getChannel(), cached);
+        }
+    }
+
+    private void recoverGap(final String wholeMessageShaSum, final PNMessageResult finalPNMessageResult) {
+        final Set<String> missingParts = new HashSet<>();
+        final Set<String> missingPartChannels = new LinkedHashSet<>();
+        final long[] timeTokenWindow = new long[2];
+        final boolean[] contentAddressed = {true};
+        messages.computeIfPresent(wholeMessageShaSum, (key, message) -> {
+            if (message.status() == Status.FINALIZED) {
+                missingParts.addAll(message.getMissingParts());
+                missingPartChannels.addAll(message.getMissingPartChannels());
+                contentAddressed[0] = message.getIntegrity().isContentAddressed();
+                timeTokenWindow[0] = message.getEarliestTimeToken() - configuration.getGapRecoveryLookback().toNanos() / 100;
+                if (message.getReusedSince() != null) {
+                    timeTokenWindow[0] = Math.min(timeTokenWindow[0], message.getReusedSince());
+                }
+                timeTokenWindow[1] = message.getLatestTimeToken();
+            }
+            return message;
+        });
+        if (missingParts.isEmpty()) {
+            return;
+        }
+        final String channel = finalPNMessageResult.getChannel();
+        fetchHistory(missingPartChannels, timeTokenWindow[0], timeTokenWindow[1]).thenAccept(history -> {
+            int recovered = 0;
+            for (final PNMessageResult historyPNMessageResult : history) {
+                final PNMessageResult pnMessageResult = unstriped(historyPNMessageResult);
+                final Chunk chunk = classify(pnMessageResult);
+                if (!(chunk instanceof Part)) {
+                    continue;
+                }
+                final Part partChunk = (Part) chunk;
+                if (!contentAddressed[0] && !wholeMessageShaSum.equals(partChunk.getPartOf())) {
+                    continue;
+                }
+                // parts are addressed by content, so one published with an earlier message fills the gap just as well
+                if (missingParts.remove(partChunk.getShaSum())) {
+                    if (cachedParts != null && contentAddressed[0]) {
+                        cachedParts.put(partChunk.getShaSum(), partChunk);
+                    }
+                    if (!addToExistingMessage(wholeMessageShaSum, partChunk, pnMessageResult)) {
+                        break;
+                    }
+                    recovered++;
+                }
+            }
+            if (recovered > 0) {
+                metrics.partsRecovered(channel, recovered);
+                stream(wholeMessageShaSum, finalPNMessageResult);
+                tryToDeliver(finalPNMessageResult, wholeMessageShaSum);
+            }
+        });
     }
 
     private void tryToDeliver(final PNMessageResult pnMessageResult, final String wholeMessageShaSum) {
+        final Message[] completed = {null};
         messages.computeIfPresent(wholeMessageShaSum, (s, message) -> {
             if (message.status() == Status.COMPLETED) {
-                listener.message(pubNub, message.assemble(pnMessageResult));
-                message.makeDelivered(System.currentTimeMillis());
-                return message;
+                completed[0] = message;
+                if (!configuration.getDuplicateSuppressionWindow().isZero()) {
+                    recentlyDelivered.put(s, new Delivery(System.nanoTime(), message.getLatestTimeToken()));
+                }
+                return null;
             }
             else {
                 return message;
             }
         });
-        //TODO there might some global messages lock to perform clean up and it shall deserve its own thread
-        cleanDeliveredMessages();
-        cleanTimedOutMessages();
+        if (completed[0] != null) {
+            deliver(pnMessageResult, wholeMessageShaSum, completed[0]);
+        }
+    }
+
+    private void deliver(final PNMessageResult pnMessageResult, final String wholeMessageShaSum, final Message message) {
+        final boolean accepted = dispatcher.dispatch(message.getChannel(), () -> {
+            try {
+                final long assembleStartedNanos = System.nanoTime();
+                if (!message.verify()) {
+                    dropCorrupted(wholeMessageShaSum, message);
+                    return;
+                }
+                if (message.isPlain()) {
+                    deliverPlain(pnMessageResult, message);
+                }
+                else {
+                    final PNMessageResult assembled = message.assemble(pnMessageResult);
+                    if (message.isBaseline()) {
+                        baselines.put(message.getChannel(), new Baseline(wholeMessageShaSum, snapshotData(assembled).deepCopy()));
+                    }
+                    final Chunk assembledChunk = message.isFramed() ? classify(assembled) : Chunk.PASSTHROUGH;
+                    if (assembledChunk instanceof Delta) {
+                        applyDelta((Delta) assembledChunk, assembled);
+                    }
+                    else if (assembledChunk instanceof Batch) {
+                        deliverBatch((Batch) assembledChunk, assembled);
+                    }
+                    else {
+                        listeners.forEach(listener -> listener.message(pubNub, assembled));
+                    }
+                }
+                final long assembledNanos = System.nanoTime();
+                metrics.messageDelivered(message.getChannel(), message.getReceivedParts(),
+                        assembledNanos - message.getCreatedNanos(), assembledNanos - assembleStartedNanos);
+            }
+            catch (CorruptedMessageException e) {
+                dropCorrupted(wholeMessageShaSum, message);
+            }
+            finally {
+                message.release();
+                budget.added(message.getChannel(), message.takeBufferedBytesDelta());
+            }
+        });
+        if (!accepted) {
+            drop(wholeMessageShaSum, message, DroppedMessage.Reason.DISPATCH_QUEUE_FULL);
+        }
     }
 
-    private void cleanTimedOutMessages() {
-        final long now = System.currentTimeMillis();
-        messages.entrySet().stream()
-                .filter(entry -> entry.getValue().status() == Status.FINALIZED || entry.getValue().status() == Status.PENDING)
-                .filter(entry -> entry.getValue().isStaleWithRespectTo(now))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList())
-                .forEach(wholeMessageShaSumToDelete -> messages.remove(wholeMessageShaSumToDelete));
+    /**
+     * @throws CorruptedMessageException if the snapshot's data isn't a JSON object, which no publisher sends
+     */
+    private static JsonObject snapshotData(final PNMessageResult assembled) {
+        if (!assembled.getMessage().isJsonObject()) throw new CorruptedMessageException("snapshot data isn't a JSON object");
+        return assembled.getMessage().getAsJsonObject();
     }
 
-    private void cleanDeliveredMessages() {
-        messages.entrySet().stream()
-                .filter(entry -> entry.getValue().status() == Status.DELIVERED)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList())
-                .forEach(wholeMessageShaSumToDelete -> messages.remove(wholeMessageShaSumToDelete));
+    private void dropCorrupted(final String wholeMessageShaSum, final Message message) {
+        final DroppedMessage droppedMessage = message.toDroppedMessage(wholeMessageShaSum, DroppedMessage.Reason.CORRUPTED);
+        metrics.messageDropped(droppedMessage);
+        listeners.forEach(listener -> listener.messageDropped(pubNub, droppedMessage));
     }
 
-    private PNMessageResult assemble(final PNMessageResult pnMessageResult, final Message message) {
-        return null;
+    /**
+     * Hands a message that is neither a snapshot, a delta nor a batch to every listener in the form it asked for,
+     * so it is only parsed if some listener wants it whole.
+     */
+    private void deliverPlain(final PNMessageResult pnMessageResult, final Message message) {
+        final boolean streamed = message.isStreamed();
+        final List<ChunksAwareSubscribeCallback> rawListeners = new ArrayList<>();
+        final List<ChunksAwareSubscribeCallback> wholeListeners = new ArrayList<>();
+        for (final ChunksAwareSubscribeCallback listener : listeners) {
+            if (streamed && listener.streamsMessages()) {
+                continue;
+            }
+            (listener.receivesRawMessages() ? rawListeners : wholeListeners).add(listener);
+        }
+        if (!rawListeners.isEmpty()) {
+            final RawMessage rawMessage = message.assembleRaw(pnMessageResult);
+            rawListeners.forEach(listener -> listener.rawMessage(pubNub, rawMessage));
+        }
+        if (!wholeListeners.isEmpty()) {
+            final PNMessageResult assembled = message.assemble(pnMessageResult);
+            wholeListeners.forEach(listener -> listener.message(pubNub, assembled));
+        }
     }
 
-    private void addToMessages(final Final finalChunk, final Long timetoken) {
+    private void addToMessages(final Final finalChunk, final PNMessageResult pnMessageResult) {
         messages.compute(finalChunk.getShaSum(), (key, message) -> {
-            if (message == null) {
-                return new Message(timetoken, finalChunk);
+            final Message target = message != null ? message : track(key, newMessage(pnMessageResult.getChannel()));
+            return target.finalize(pnMessageResult.getTimetoken(), finalChunk);
+        });
+    }
+
+    private void addToMessages(final String wholeMessageShaSum, final Part partChunk, final PNMessageResult pnMessageResult) {
+        addToMessages(wholeMessageShaSum, partChunk, pnMessageResult, true);
+    }
+
+    /**
+     * Unlike {@link #addToMessages(String, Part, PNMessageResult)}, doesn't start a new message for a part whose message
+     * was delivered or dropped meanwhile.
+     *
+     * @return whether the message was still there
+     */
+    private boolean addToExistingMessage(final String wholeMessageShaSum, final Part partChunk, final PNMessageResult pnMessageResult) {
+        return addToMessages(wholeMessageShaSum, partChunk, pnMessageResult, false);
+    }
+
+    private boolean addToMessages(final String wholeMessageShaSum, final Part partChunk, final PNMessageResult pnMessageResult,
+                                  final boolean startMessage) {
+        final Message[] added = {null};
+        final boolean[] duplicate = {false};
+        final boolean[] spill = {false};
+        final boolean[] corrupted = {false};
+        messages.compute(wholeMessageShaSum, (key, message) -> {
+            if (message == null && !startMessage) {
+                return null;
             }
-            else {
-                return message.finalize(timetoken, finalChunk);
+            final Message target = message != null ? message : track(key, newMessage(pnMessageResult.getChannel()));
+            added[0] = target;
+            try {
+                duplicate[0] = !target.addPart(pnMessageResult.getTimetoken(), partChunk, key.equals(partChunk.getPartOf()));
+            }
+            catch (IllegalArgumentException e) {
+                // spilled parts are sized as they arrive, and one that doesn't decode could never be assembled either
+                corrupted[0] = true;
+                return null;
             }
+            spill[0] = target.claimSpill();
+            return target;
         });
+        if (added[0] == null) {
+            return false;
+        }
+        if (corrupted[0]) {
+            drop(wholeMessageShaSum, added[0], DroppedMessage.Reason.CORRUPTED);
+            return true;
+        }
+        if (duplicate[0]) {
+            metrics.duplicatePart(pnMessageResult.getChannel());
+        }
+        if (spill[0]) {
+            spill(wholeMessageShaSum, added[0]);
+        }
+        if (!writeSpilledParts(wholeMessageShaSum, added[0])) {
+            return true;
+        }
+        budget.added(pnMessageResult.getChannel(), added[0].takeBufferedBytesDelta());
+        enforceBudget(pnMessageResult.getChannel());
+        return true;
     }
 
-    private void addToMessages(final String wholeMessageShaSum, final Part partChunk, final Long timetoken) {
-        messages.compute(wholeMessageShaSum, (key, message) -> {
-            if (message == null) {
-                return new Message(timetoken, partChunk);
+    /**
+     * Writes the parts of a message to a spill file outside of the map's lock, then swaps the file in under it, unless
+     * the message was completed or dropped in the meantime.
+     */
+    private void spill(final String wholeMessageShaSum, final Message message) {
+        try {
+            final SpillFilePartStore spillFilePartStore = message.writeSpillFile();
+            final boolean[] spilled = {false};
+            try {
+                messages.computeIfPresent(wholeMessageShaSum, (key, current) -> {
+                    spilled[0] = current == message && message.spillTo(spillFilePartStore);
+                    return current;
+                });
             }
-            else {
-                return message.addPart(timetoken, partChunk);
+            finally {
+                if (!spilled[0]) {
+                    spillFilePartStore.release();
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            if (messages.remove(wholeMessageShaSum, message)) {
+                drop(wholeMessageShaSum, message, DroppedMessage.Reason.CORRUPTED);
+            }
+        }
+        catch (IllegalStateException e) {
+            // the message stays on the heap, where the buffer budget still bounds it
+        }
+    }
+
+    /**
+     * Decodes parts of a spilled message into its file outside of the map's lock, under which they only got room set aside.
+     *
+     * @return {@code false} if a part didn't decode, so the message was dropped
+     */
+    private boolean writeSpilledParts(final String wholeMessageShaSum, final Message message) {
+        try {
+            message.writeSpilledParts();
+            return true;
+        }
+        catch (IllegalArgumentException e) {
+            if (messages.remove(wholeMessageShaSum, message)) {
+                drop(wholeMessageShaSum, message, DroppedMessage.Reason.CORRUPTED);
+            }
+            return false;
+        }
+    }
+
+    private Message newMessage(final String channel) {
+        return new Message(channel, spillThresholdBytes, spillDirectory);
+    }
+
+    private Message track(final String wholeMessageShaSum, final Message message) {
+        messageExpiry.track(wholeMessageShaSum, message);
+        return message;
+    }
+
+    private void enforceBudget(final String channel) {
+        while (budget.isOverChannelQuota(channel)) {
+            final Map.Entry<String, Message> victim = budget.selectVictim(messages, channel);
+            if (victim == null) {
+                break;
+            }
+            evict(victim, DroppedMessage.Reason.CHANNEL_QUOTA_EXCEEDED);
+        }
+        while (budget.isOverBudget()) {
+            final Map.Entry<String, Message> victim = budget.selectVictim(messages);
+            if (victim == null) {
+                break;
+            }
+            evict(victim, DroppedMessage.Reason.BUFFER_BUDGET_EXCEEDED);
+        }
+    }
+
+    private void evict(final Map.Entry<String, Message> victim, final DroppedMessage.Reason reason) {
+        if (messages.remove(victim.getKey(), victim.getValue())) {
+            drop(victim.getKey(), victim.getValue(), reason);
+        }
+    }
+
+    /**
+     * Hands a message to the streaming listeners once a part of its own has told where it goes in the message.
+     */
+    private void stream(final String wholeMessageShaSum, final PNMessageResult pnMessageResult) {
+        final List<ChunksAwareSubscribeCallback> streamingListeners = listeners.stream()
+                .filter(ChunksAwareSubscribeCallback::streamsMessages)
+                .collect(Collectors.toList());
+        if (streamingListeners.isEmpty()) {
+            return;
+        }
+        final Message[] started = {null};
+        messages.computeIfPresent(wholeMessageShaSum, (key, message) -> {
+            if (message.startStreaming(streamingListeners.size())) {
+                started[0] = message;
             }
+            return message;
         });
+        if (started[0] == null) {
+            return;
+        }
+        for (final ChunksAwareSubscribeCallback listener : streamingListeners) {
+            final MessageStream messageStream = new MessageStream(started[0], pnMessageResult);
+            try {
+                configuration.getStreamingExecutor().execute(() -> {
+                    try {
+                        listener.messageStreamed(pubNub, messageStream);
+                    }
+                    finally {
+                        messageStream.release();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                messageStream.release();
+            }
+        }
+    }
+
+    private void applyDelta(final Delta delta, final PNMessageResult pnMessageResult) {
+        final String channel = pnMessageResult.getChannel();
+        final Baseline baseline = baselines.get(channel);
+        if (baseline != null && baseline.shaSum.equals(delta.getBase())) {
+            deliverPatched(baseline, delta, pnMessageResult);
+        }
+        else if (configuration.getMessageHistory() != null && delta.getBaseTimeToken() != null) {
+            // deltas arriving while their snapshot is recovered may reach listeners out of order
+            final Thread applyingThread = Thread.currentThread();
+            final boolean[] applying = {true};
+            recoverBaseline(channel, delta).whenComplete((recovered, throwable) -> {
+                if (recovered == null) {
+                    dropDelta(delta, pnMessageResult, DroppedMessage.Reason.MISSING_DELTA_BASE);
+                }
+                else if (Thread.currentThread() == applyingThread && applying[0]) {
+                    // recovered right away, so still within this channel's delivery, which dispatching again
+                    // could be left waiting on
+                    deliverPatched(recovered, delta, pnMessageResult);
+                }
+                else if (!dispatcher.dispatch(channel, () -> deliverPatched(recovered, delta, pnMessageResult))) {
+                    dropDelta(delta, pnMessageResult, DroppedMessage.Reason.DISPATCH_QUEUE_FULL);
+                }
+            });
+            applying[0] = false;
+        }
+        else {
+            dropDelta(delta, pnMessageResult, DroppedMessage.Reason.MISSING_DELTA_BASE);
+        }
+    }
+
+    private void deliverPatched(final Baseline baseline, final Delta delta, final PNMessageResult pnMessageResult) {
+        final JsonElement patched;
+        try {
+            patched = JsonPatch.apply(baseline.data.deepCopy(), delta.getPatch());
+        }
+        catch (IllegalArgumentException e) {
+            dropDelta(delta, pnMessageResult, DroppedMessage.Reason.BAD_DELTA);
+            return;
+        }
+        final PNMessageResult patchedPNMessageResult = withMessage(pnMessageResult, pnMessageResult.getUserMetadata(), patched);
+        listeners.forEach(listener -> listener.message(pubNub, patchedPNMessageResult));
+    }
+
+    private void deliverBatch(final Batch batch, final PNMessageResult pnMessageResult) {
+        for (final JsonObject batchedMessage : batch.getMessages()) {
+            // the batch shares one timetoken, each message keeps the time it was handed to the batcher
+            final JsonObject userMetadata = new JsonObject();
+            userMetadata.add("timestamp", batchedMessage.get("timestamp"));
+            final PNMessageResult batchedPNMessageResult = withMessage(pnMessageResult, userMetadata, batchedMessage.get("data"));
+            listeners.forEach(listener -> listener.message(pubNub, batchedPNMessageResult));
+        }
+    }
+
+    private static PNMessageResult withMessage(final PNMessageResult pnMessageResult, final JsonElement userMetadata,
+                                               final JsonElement message) {
+        final BasePubSubResult basePubSubResult = new BasePubSubResult(pnMessageResult.getSubscription(),
+                pnMessageResult.getActualChannel(),
+                pnMessageResult.getChannel(),
+                pnMessageResult.getSubscription(),
+                pnMessageResult.getTimetoken(),
+                userMetadata,
+                pnMessageResult.getPublisher());
+        return new PNMessageResult(basePubSubResult, message);
+    }
+
+    private CompletableFuture<Baseline> recoverBaseline(final String channel, final Delta delta) {
+        final long endTimeToken = delta.getBaseTimeToken();
+        final long startTimeToken = endTimeToken - configuration.getGapRecoveryLookback().toNanos() / 100;
+        return configuration.getMessageHistory().fetch(channel, startTimeToken, endTimeToken).thenCompose(history -> {
+            for (final PNMessageResult pnMessageResult : history) {
+                final Chunk chunk = classify(pnMessageResult);
+                if (chunk instanceof Final && delta.getBase().equals(((Final) chunk).getShaSum())) {
+                    final Final finalChunk = (Final) chunk;
+                    if (finalChunk.getShards().isEmpty()) {
+                        return CompletableFuture.completedFuture(rebuildBaseline(channel, delta, pnMessageResult, history));
+                    }
+                    // the snapshot's parts went to the shards
+                    return fetchHistory(finalChunk.getShards(), startTimeToken, endTimeToken)
+                            .thenApply(shardHistory -> rebuildBaseline(channel, delta, pnMessageResult, shardHistory));
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    private Baseline rebuildBaseline(final String channel, final Delta delta, final PNMessageResult finalPNMessageResult,
+                                     final List<PNMessageResult> history) {
+        final Map<String, Part> historyParts = new HashMap<>();
+        for (final PNMessageResult pnMessageResult : history) {
+            final Chunk chunk = classify(pnMessageResult);
+            if (chunk instanceof Part) {
+                final Part part = (Part) chunk;
+                // a part of the snapshot itself wins over one of another message with the same id
+                if (delta.getBase().equals(part.getPartOf()) || !historyParts.containsKey(part.getShaSum())) {
+                    historyParts.put(part.getShaSum(), part);
+                }
+            }
+        }
+        final Final finalChunk = (Final) classify(finalPNMessageResult);
+        final boolean contentAddressed = finalChunk.getIntegrity().isContentAddressed();
+        final Message message = newMessage(channel);
+        try {
+            message.finalize(finalPNMessageResult.getTimetoken(), finalChunk);
+            for (final String partShaSum : finalChunk.getParts()) {
+                final Part part = historyParts.containsKey(partShaSum) || cachedParts == null || !contentAddressed
+                        ? historyParts.get(partShaSum)
+                        : cachedParts.get(partShaSum);
+                if (part == null || (!contentAddressed && !delta.getBase().equals(part.getPartOf()))) {
+                    return null;
+                }
+                message.addPart(finalPNMessageResult.getTimetoken(), part);
+            }
+            if (!message.verify()) {
+                return null;
+            }
+            final Baseline baseline = new Baseline(delta.getBase(), snapshotData(message.assemble(finalPNMessageResult)));
+            baselines.put(channel, baseline);
+            return baseline;
+        }
+        catch (CorruptedMessageException e) {
+            return null;
+        }
+        finally {
+            message.release();
+        }
+    }
+
+    private void dropDelta(final Delta delta, final PNMessageResult pnMessageResult, final DroppedMessage.Reason reason) {
+        final DroppedMessage droppedMessage = new DroppedMessage(pnMessageResult.getChannel(), delta.getBase(), reason, 0L, 0, null);
+        metrics.messageDropped(droppedMessage);
+        listeners.forEach(listener -> listener.messageDropped(pubNub, droppedMessage));
+    }
+
+    private void drop(final String wholeMessageShaSum, final Message message, final DroppedMessage.Reason reason) {
+        final DroppedMessage droppedMessage = message.toDroppedMessage(wholeMessageShaSum, reason);
+        message.fail(reason);
+        message.release();
+        budget.added(message.getChannel(), message.takeBufferedBytesDelta());
+        metrics.messageDropped(droppedMessage);
+        listeners.forEach(listener -> listener.messageDropped(pubNub, droppedMessage));
+    }
+
+    @Override
+    public void close() {
+        messageExpiry.close();
+        dispatcher.close();
+        messages.values().forEach(Message::release);
+        messages.clear();
+        baselines.clear();
+        metrics.reassemblyGaugesRemoved(reassemblyGauges);
     }
 
     @Override
     public void status(final PubNub pubnub, final PNStatus pnStatus) {
-        listener.status(pubnub, pnStatus);
+        listeners.forEach(listener -> listener.status(pubnub, pnStatus));
     }
 
     @Override
     public void presence(final PubNub pubnub, final PNPresenceEventResult pnPresenceEventResult) {
-        listener.presence(pubnub, pnPresenceEventResult);
+        listeners.forEach(listener -> listener.presence(pubnub, pnPresenceEventResult));
     }
 
     @Override
     public void signal(final PubNub pubnub, final PNSignalResult pnSignalResult) {
-        listener.signal(pubnub ,pnSignalResult);
+        listeners.forEach(listener -> listener.signal(pubnub, pnSignalResult));
     }
 
     @Override
     public void uuid(final PubNub pubnub, final PNUUIDMetadataResult pnUUIDMetadataResult) {
-        listener.uuid(pubnub, pnUUIDMetadataResult);
+        listeners.forEach(listener -> listener.uuid(pubnub, pnUUIDMetadataResult));
     }
 
     @Override
     public void channel(final PubNub pubnub, final PNChannelMetadataResult pnChannelMetadataResult) {
-        listener.channel(pubnub, pnChannelMetadataResult);
+        listeners.forEach(listener -> listener.channel(pubnub, pnChannelMetadataResult));
     }
 
     @Override
     public void membership(final PubNub pubnub, final PNMembershipResult pnMembershipResult) {
-        listener.membership(pubnub, pnMembershipResult);
+        listeners.forEach(listener -> listener.membership(pubnub, pnMembershipResult));
     }
 
     @Override
     public void messageAction(final PubNub pubnub, final PNMessageActionResult pnMessageActionResult) {
-        listener.messageAction(pubnub, pnMessageActionResult);
+        listeners.forEach(listener -> listener.messageAction(pubnub, pnMessageActionResult));
     }
 
     @Override
     public void file(final PubNub pubnub, final PNFileEventResult pnFileEventResult) {
-        listener.file(pubnub, pnFileEventResult);
+        listeners.forEach(listener -> listener.file(pubnub, pnFileEventResult));
     }
 }
 
 class Message {
     enum Status {
-        PENDING, FINALIZED, COMPLETED, DELIVERED;
+        PENDING, FINALIZED, COMPLETED;
+    }
+
+    /**
+     * Thrown when the assembled message doesn't match the digest in its final chunk, or its parts can't be decoded.
+     */
+    static final class CorruptedMessageException extends RuntimeException {
+        CorruptedMessageException(final String message) {
+            super(message);
+        }
+
+        CorruptedMessageException(final String message, final Throwable cause) {
+            super(message, cause);
+        }
     }
 
-    private final Map<String, Part> parts = new HashMap<>();
+    private final String channel;
+    private final long spillThresholdBytes;
+    private final Path spillDirectory;
+    private PartStore parts = new HeapPartStore();
+    private final long createdNanos = System.nanoTime();
     private Final finalPart;
     private long earliestTimeToken = Long.MAX_VALUE;
     private long latestTimeToken = 0L;
-    private Long deliveredTimeToken;
+    private long lastActivityNanos = createdNanos;
+    private volatile long bufferedBytes;
+    // heap bytes the budget was told about
+    private long accountedBytes;
+    private boolean spilling;
+    // parts set room aside for in the spill file, yet to be decoded into it outside of the map's lock
+    private final List<SpillFilePartStore.Reservation> unwrittenParts = new ArrayList<>();
+    private int writingParts;
+
+    // positions parts of this very message were published at, so it can be streamed before the final chunk arrives
+    private Map<Integer, String> indexedShaSums;
+    private Compression streamCompression;
+    private boolean streamed;
+    private int openStreams;
+    private boolean released;
+    private DroppedMessage.Reason failure;
 
-    Message(final Long timetoken, final Part partChunk) {
-        this.addPart(timetoken, partChunk);
+    Message(final String channel) {
+        this(channel, Long.MAX_VALUE, null);
     }
 
-    Message(final Long timetoken, final Final finalChunk) {
-        this.finalize(timetoken, finalChunk);
+    Message(final String channel, final long spillThresholdBytes, final Path spillDirectory) {
+        this.channel = channel;
+        this.spillThresholdBytes = spillThresholdBytes;
+        this.spillDirectory = spillDirectory;
     }
 
-    void makeDelivered(final long timeMillis) {
-        this.deliveredTimeToken = timeMillis;
+    String getChannel() {
+        return channel;
     }
 
-    Status status() {
-        if (deliveredTimeToken != null) {
-            return Status.DELIVERED;
+    long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    int getReceivedParts() {
+        return parts.size();
+    }
+
+    long getEarliestTimeToken() {
+        return earliestTimeToken;
+    }
+
+    long getLatestTimeToken() {
+        return latestTimeToken;
+    }
+
+    boolean isBaseline() {
+        return finalPart != null && finalPart.isBaseline();
+    }
+
+    boolean isFramed() {
+        return finalPart != null && finalPart.isFramed();
+    }
+
+    Integrity getIntegrity() {
+        return finalPart != null ? finalPart.getIntegrity() : Integrity.SHA256;
+    }
+
+    /**
+     * Checks every part against its id in the manifest, unless parts are addressed by SHA-256: rehashing them one by one
+     * would only repeat what the check of the whole message on {@link #assemble assembly} catches anyway.
+     *
+     * @return whether every part decodes and matches its id
+     */
+    synchronized boolean verify() {
+        final Integrity integrity = finalPart.getIntegrity();
+        if (integrity.isContentAddressed()) {
+            return true;
+        }
+        try {
+            for (final String partId : new HashSet<>(finalPart.getParts())) {
+                if (!integrity.matches(partId, parts.read(partId))) {
+                    return false;
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        return true;
+    }
+
+    Long getReusedSince() {
+        return finalPart != null ? finalPart.getReusedSince() : null;
+    }
+
+    /**
+     * @return channels the missing parts were published on: the message's own, or the shards holding them if it was striped
+     */
+    Set<String> getMissingPartChannels() {
+        final List<String> shards = finalPart.getShards();
+        if (shards.isEmpty()) {
+            return Collections.singleton(channel);
+        }
+        if (finalPart.getReusedSince() != null) {
+            // parts published with earlier messages may be on any shard
+            return new LinkedHashSet<>(shards);
+        }
+        final Set<String> channels = new LinkedHashSet<>();
+        final Set<String> distinctParts = new HashSet<>();
+        for (final String partShaSum : finalPart.getParts()) {
+            if (distinctParts.add(partShaSum) && !parts.contains(partShaSum)) {
+                channels.add(ChannelStriping.shardOf(shards, distinctParts.size() - 1));
+            }
+        }
+        return channels;
+    }
+
+    List<String> getMissingParts() {
+        final List<String> missingParts = new ArrayList<>();
+        if (finalPart != null) {
+            for (final String partShaSum : finalPart.getParts()) {
+                if (!parts.contains(partShaSum)) {
+                    missingParts.add(partShaSum);
+                }
+            }
         }
-        else if (finalPart != null && hasAllParts(finalPart)) {
+        return missingParts;
+    }
+
+    Status status() {
+        if (finalPart != null && hasAllParts(finalPart)) {
             return Status.COMPLETED;
         }
         else if (finalPart != null) {
@@ -209,22 +992,265 @@ class Message {
         }
     }
 
-    Message finalize(final Long timeToken, final Final finalPart) {
-        if (this.finalPart != null) throw new IllegalStateException("already finalized: " + this.finalPart);
-        this.finalPart = finalPart;
+    synchronized Message finalize(final Long timeToken, final Final finalPart) {
+        if (this.finalPart == null) {
+            this.finalPart = finalPart;
+        }
         updateTimeTokens(timeToken);
+        notifyAll();
         return this;
     }
 
     private void updateTimeTokens(final Long timeToken) {
         updateEarliestTimeToken(timeToken);
         updateLatestTimeToken(timeToken);
+        lastActivityNanos = System.nanoTime();
+    }
+
+    /**
+     * @return {@code false} if the part was a duplicate
+     */
+    boolean addPart(final long timeToken, final Part part) {
+        return addPart(timeToken, part, false);
     }
 
-    Message addPart(final long timeToken, final Part part) {
-        parts.put(part.getShaSum(), part);
+    /**
+     * @param ownPart whether the part was published with this message, so its index, if any, is a position in it
+     */
+    synchronized boolean addPart(final long timeToken, final Part part, final boolean ownPart) {
+        final boolean added;
+        if (parts instanceof SpillFilePartStore) {
+            added = reserve((SpillFilePartStore) parts, part);
+        }
+        else {
+            added = parts.add(part);
+        }
+        if (ownPart && part.getIndex() != null) {
+            if (indexedShaSums == null) {
+                indexedShaSums = new HashMap<>();
+                streamCompression = part.getCompression();
+            }
+            indexedShaSums.put(part.getIndex(), part.getShaSum());
+        }
+        bufferedBytes = parts.heapBytes();
         updateTimeTokens(timeToken);
-        return this;
+        notifyAll();
+        return added;
+    }
+
+    /**
+     * @return {@code true} the first time the message can be streamed, after which it waits for {@code streams} to be closed
+     * before letting go of its parts
+     */
+    synchronized boolean startStreaming(final int streams) {
+        if (streamed || indexedShaSums == null || released) {
+            return false;
+        }
+        streamed = true;
+        openStreams = streams;
+        return true;
+    }
+
+    synchronized boolean isStreamed() {
+        return streamed;
+    }
+
+    /**
+     * @return whether the final manifest marked the message as neither a snapshot nor framed as a delta or a batch
+     */
+    synchronized boolean isPlain() {
+        return finalPart != null && !finalPart.isBaseline() && !finalPart.isFramed();
+    }
+
+    synchronized Compression getStreamCompression() {
+        return streamCompression;
+    }
+
+    /**
+     * @return decoded bytes of the part at {@code position}, waiting for it to arrive, or {@code null} past the last part
+     */
+    synchronized byte[] awaitPart(final int position) throws IOException {
+        while (true) {
+            final String shaSum;
+            if (finalPart != null) {
+                if (position >= finalPart.getParts().size()) {
+                    return null;
+                }
+                shaSum = finalPart.getParts().get(position);
+            }
+            else {
+                shaSum = indexedShaSums.get(position);
+            }
+            if (shaSum != null && parts.contains(shaSum)) {
+                return parts.read(shaSum);
+            }
+            if (failure != null) {
+                throw new IOException("message was dropped: " + failure);
+            }
+            if (released) {
+                throw new IOException("message was released before part " + position + " arrived");
+            }
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for part " + position);
+            }
+        }
+    }
+
+    /**
+     * @return digest of the whole message, waiting for the final chunk that carries it; a compressed stream can
+     * end before it arrives
+     */
+    synchronized String awaitWholeMessageDigest() throws IOException {
+        while (finalPart == null) {
+            if (failure != null) {
+                throw new IOException("message was dropped: " + failure);
+            }
+            if (released) {
+                throw new IOException("message was released before its final chunk arrived");
+            }
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the final chunk");
+            }
+        }
+        return finalPart.wholeMessageDigest();
+    }
+
+    synchronized void streamClosed() {
+        openStreams--;
+        releasePartsIfUnused();
+    }
+
+    private void releasePartsIfUnused() {
+        if (released && openStreams == 0 && writingParts == 0) {
+            parts.release();
+        }
+    }
+
+    synchronized void fail(final DroppedMessage.Reason reason) {
+        failure = reason;
+        notifyAll();
+    }
+
+    /**
+     * Decided under the map's lock, so that only one thread goes on to {@link #writeSpillFile()} once it is let go.
+     *
+     * @return {@code true} the first time the parts on the heap outgrow the spill threshold
+     */
+    synchronized boolean claimSpill() {
+        if (spilling || released || !(parts instanceof HeapPartStore) || parts.heapBytes() <= spillThresholdBytes) {
+            return false;
+        }
+        spilling = true;
+        return true;
+    }
+
+    /**
+     * Decodes the parts buffered so far into a new spill file without holding the message, so parts keep arriving meanwhile.
+     *
+     * @throws IllegalArgumentException if a part doesn't decode
+     * @throws IllegalStateException if the file can't be written
+     */
+    SpillFilePartStore writeSpillFile() {
+        final List<Part> heapParts;
+        synchronized (this) {
+            heapParts = new ArrayList<>(((HeapPartStore) parts).parts());
+        }
+        final SpillFilePartStore spillFilePartStore = new SpillFilePartStore(spillDirectory);
+        try {
+            heapParts.forEach(spillFilePartStore::add);
+        }
+        catch (RuntimeException e) {
+            spillFilePartStore.release();
+            throw e;
+        }
+        return spillFilePartStore;
+    }
+
+    /**
+     * Sets room aside for the parts that arrived while the file was written, for {@link #writeSpilledParts()} to decode, and
+     * lets go of the ones on the heap.
+     *
+     * @return {@code false} if the message was released meanwhile
+     */
+    synchronized boolean spillTo(final SpillFilePartStore spillFilePartStore) {
+        if (released) {
+            return false;
+        }
+        for (final Part part : ((HeapPartStore) parts).parts()) {
+            reserve(spillFilePartStore, part);
+        }
+        parts.release();
+        parts = spillFilePartStore;
+        bufferedBytes = parts.heapBytes();
+        return true;
+    }
+
+    private boolean reserve(final SpillFilePartStore spillFilePartStore, final Part part) {
+        final SpillFilePartStore.Reservation reservation = spillFilePartStore.reserve(part);
+        if (reservation == null) {
+            return false;
+        }
+        unwrittenParts.add(reservation);
+        return true;
+    }
+
+    /**
+     * Decodes the parts added since the message spilled into its file without holding the message, and only then lets
+     * them count as received.
+     *
+     * @throws IllegalArgumentException if a part doesn't decode
+     */
+    void writeSpilledParts() {
+        final List<SpillFilePartStore.Reservation> reservations;
+        final SpillFilePartStore spillFilePartStore;
+        synchronized (this) {
+            if (unwrittenParts.isEmpty() || released) {
+                return;
+            }
+            reservations = new ArrayList<>(unwrittenParts);
+            unwrittenParts.clear();
+            spillFilePartStore = (SpillFilePartStore) parts;
+            writingParts++;
+        }
+        boolean written = false;
+        try {
+            reservations.forEach(spillFilePartStore::write);
+            written = true;
+        }
+        finally {
+            synchronized (this) {
+                writingParts--;
+                if (written) {
+                    reservations.forEach(spillFilePartStore::commit);
+                }
+                releasePartsIfUnused();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return heap bytes buffered since last asked, negative once they are spilled or released, for the budget to keep up with
+     */
+    synchronized long takeBufferedBytesDelta() {
+        final long heapBytes = released ? 0L : bufferedBytes;
+        final long delta = heapBytes - accountedBytes;
+        accountedBytes = heapBytes;
+        return delta;
+    }
+
+    synchronized void release() {
+        released = true;
+        releasePartsIfUnused();
+        notifyAll();
     }
 
     private void updateEarliestTimeToken(final long timeToken) {
@@ -240,28 +1266,101 @@ class Message {
     }
 
     private boolean hasAllParts(final Final finalPart) {
-        return parts.keySet().containsAll(finalPart.getParts());
+        return parts.containsAll(finalPart.getParts());
+    }
+
+    DroppedMessage toDroppedMessage(final String wholeMessageShaSum, final DroppedMessage.Reason reason) {
+        return new DroppedMessage(channel, wholeMessageShaSum, reason, bufferedBytes, getReceivedParts(),
+                finalPart != null ? finalPart.getParts().size() : null);
+    }
+
+    long deadlineNanos(final ReassemblyConfiguration configuration) {
+        final int expectedParts = finalPart != null ? finalPart.getParts().size() : parts.size();
+        return lastActivityNanos + configuration.timeoutNanos(expectedParts);
+    }
+
+    /**
+     * @param digest updated with the uncompressed message as it is read
+     */
+    private Reader openReader(final MessageDigest digest) throws IOException {
+        if (finalPart.getEncoding() == PartEncoding.TEXT && finalPart.getCompression() == Compression.NONE) {
+            // the text parts as they are, digested as the UTF-8 bytes they were published as
+            for (final String partShaSum : finalPart.getParts()) {
+                digest.update(parts.read(partShaSum));
+            }
+            return parts.openText(finalPart.getParts());
+        }
+        final InputStream inputStream = finalPart.getCompression().decompressing(parts.open(finalPart.getParts()));
+        return new InputStreamReader(new DigestInputStream(inputStream, digest), StandardCharsets.UTF_8);
     }
 
-    boolean isStaleWithRespectTo(final long now) {
-        return now - latestTimeToken > TimeUnit.SECONDS.toMillis(30);
+    private void checkDigest(final MessageDigest digest) {
+        final String expected = finalPart.wholeMessageDigest();
+        if (!encode(digest.digest()).equals(expected)) {
+            throw new CorruptedMessageException("assembled message doesn't match its shasum " + expected);
+        }
     }
 
+    /**
+     * @throws CorruptedMessageException if the message doesn't match its digest
+     */
+    RawMessage assembleRaw(final PNMessageResult pnMessageResult) {
+        if (status() != Status.COMPLETED) throw new IllegalStateException("is not completed yet: " + this);
+
+        final MessageDigest digest = newSha256Digest();
+        try {
+            if (finalPart.getCompression() == Compression.NONE) {
+                final byte[] messageBytes = parts.readAll(finalPart.getParts());
+                digest.update(messageBytes);
+                checkDigest(digest);
+                return new RawMessage(channel, earliestTimeToken, pnMessageResult.getPublisher(), messageBytes, messageBytes.length);
+            }
+            final ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream();
+            try (final InputStream inputStream = finalPart.getCompression().decompressing(parts.open(finalPart.getParts()))) {
+                final byte[] chunk = new byte[8 * 1024];
+                int read;
+                while ((read = inputStream.read(chunk, 0, chunk.length)) != -1) {
+                    buffer.write(chunk, 0, read);
+                }
+            }
+            digest.update(buffer.buffer(), 0, buffer.size());
+            checkDigest(digest);
+            return new RawMessage(channel, earliestTimeToken, pnMessageResult.getPublisher(), buffer.buffer(), buffer.size());
+        }
+        catch (IOException | IllegalArgumentException e) {
+            throw new CorruptedMessageException("assembled message can't be read", e);
+        }
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * @throws CorruptedMessageException if the message doesn't match its digest
+     */
     PNMessageResult assemble(final PNMessageResult pnMessageResult) {
         if (status() != Status.COMPLETED) throw new IllegalStateException("is not completed yet: " + this);
 
-        final byte[] wholeMessageBytes = finalPart.getParts().stream()
-                .map(partShaSum -> parts.get(partShaSum))
-                .map(part -> part.getData())
-                .map(encodedData -> Base64.getDecoder().decode(encodedData))
-                .reduce(new byte[0], (accumulatedBytes, encodedBytes) -> {
-                    final byte[] joinedBytes =  new byte[accumulatedBytes.length + encodedBytes.length];
-                    System.arraycopy(accumulatedBytes, 0, joinedBytes, 0, accumulatedBytes.length);
-                    System.arraycopy(encodedBytes, 0, joinedBytes, accumulatedBytes.length, encodedBytes.length);
-                    return joinedBytes;
-                });
-        final String messageAsString = new String(wholeMessageBytes);
-        final JsonObject jsonObject = JsonParser.parseString(messageAsString).getAsJsonObject();
+        final MessageDigest digest = newSha256Digest();
+        final JsonElement data;
+        try (final Reader reader = openReader(digest)) {
+            final JsonElement jsonElement = JsonParser.parseReader(reader);
+            // whatever follows the value still counts towards the digest
+            final char[] rest = new char[1024];
+            while (reader.read(rest, 0, rest.length) != -1) {
+                // drained
+            }
+            checkDigest(digest);
+            // streamed messages may carry any JSON value as their data
+            data = jsonElement.getAsJsonObject().get("data");
+        }
+        catch (IOException | JsonParseException | IllegalArgumentException | IllegalStateException e) {
+            throw new CorruptedMessageException("assembled message can't be read", e);
+        }
+        if (data == null) throw new CorruptedMessageException("assembled message has no data");
 
         final BasePubSubResult basePubSubResult = new BasePubSubResult(pnMessageResult.getSubscription(),
                 pnMessageResult.getActualChannel(),
@@ -270,6 +1369,6 @@ class Message {
                 this.earliestTimeToken,
                 pnMessageResult.getUserMetadata(),
                 pnMessageResult.getPublisher());
-        return new PNMessageResult(basePubSubResult, jsonObject.getAsJsonObject("data"));
+        return new PNMessageResult(basePubSubResult, data);
     }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.pubnub.expedia;
+
+/**
+ * Hooks into chunk publishing and reassembly. Implement it to bridge into your own telemetry, or use
+ * {@link RecordingChunkMetrics}. Methods are called on publish and subscribe callback threads and must not block.
+ * Latencies and durations are in nanoseconds.
+ */
+public interface ChunkMetrics {
+    ChunkMetrics NOOP = new ChunkMetrics() {};
+
+    interface ReassemblyGauges {
+        int inFlightMessages();
+
+        long bufferedBytes();
+    }
+
+    /**
+     * @param bytes UTF-8 length of the part's encoded data, as it goes over the wire
+     */
+    default void partPublished(final String channel, final int bytes, final long latencyNanos) {}
+
+    default void partFailed(final String channel, final long latencyNanos) {}
+
+    /**
+     * @param parts 0 for a message small enough to be published whole
+     * @param bytes UTF-8 length of the encoded data of all parts, or of the whole message if it was published whole
+     */
+    default void messagePublished(final String channel, final int parts, final long bytes) {}
+
+    default void messageFailed(final String channel) {}
+
+    /**
+     * @param parts parts left out of a message because they were published recently, see {@link SentPartCache}
+     */
+    default void partsReused(final String channel, final int parts) {}
+
+    /**
+     * Called once per {@link ChunkJoiningSubscribeCallback} with live views of its reassembly state.
+     */
+    default void reassemblyGauges(final ReassemblyGauges gauges) {}
+
+    /**
+     * Called once the {@link ChunkJoiningSubscribeCallback} that handed out {@code gauges} is closed, to stop reading them.
+     */
+    default void reassemblyGaugesRemoved(final ReassemblyGauges gauges) {}
+
+    default void duplicatePart(final String channel) {}
+
+    default void partsRecovered(final String channel, final int parts) {}
+
+    default void cachedPartsUsed(final String channel, final int parts) {}
+
+    default void messageDelivered(final String channel, final int parts, final long firstPartToDeliveryNanos,
+                                  final long assembleNanos) {}
+
+    default void messageDropped(final DroppedMessage droppedMessage) {}
+}
@@ -0,0 +1,193 @@
+package com.pubnub.expedia;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.pubnub.expedia.PublishUtils.partChunk;
+
+/**
+ * Works out how many raw bytes fit into a single part chunk for the given channel and transport,
+ * taking the part encoding's inflation, the part envelope and, for GET, URL-encoding into account.
+ */
+final class ChunkPlanner {
+    static final int MAX_PUBLISH_SIZE = 32 * 1024;
+    static final int SHA_SUM_LENGTH = 44;
+
+    private static final int HEADROOM = 256;
+    // base64 of our payloads escapes far fewer than 1 in 16 characters ('+', '/', '='); parts that still overflow get split
+    private static final int EXPECTED_ESCAPED_CHARS_DIVISOR = 16;
+    private static final int BASE85_UNRESERVED_CHARS = countUnreserved(Base85Slots.ALPHABET);
+
+    private final boolean usePOST;
+    private final PartEncoding partEncoding;
+    private final int dataBudget;
+    private final int wholeMessageBudget;
+    private final int chunkSize;
+
+    ChunkPlanner(final String channel, final boolean usePOST, final int messageIdLength) {
+        this(channel, usePOST, messageIdLength, PartEncoding.BASE64);
+    }
+
+    ChunkPlanner(final String channel, final boolean usePOST, final int messageIdLength, final PartEncoding partEncoding) {
+        this.usePOST = usePOST;
+        this.partEncoding = partEncoding;
+        final int idsLength = messageIdLength + SHA_SUM_LENGTH;
+        final int envelopeLength = longestPartEnvelope(partEncoding) + (usePOST ? idsLength : 3 * idsLength);
+        this.wholeMessageBudget = MAX_PUBLISH_SIZE - HEADROOM - escapedLength(channel);
+        this.dataBudget = wholeMessageBudget - envelopeLength;
+        if (dataBudget < 5) throw new IllegalArgumentException("channel name leaves no room for data: " + channel);
+
+        switch (partEncoding) {
+            case BASE85:
+                final int base85Chars = usePOST
+                        ? dataBudget
+                        : (int) ((long) dataBudget * 85 / (3 * 85 - 2 * BASE85_UNRESERVED_CHARS));
+                this.chunkSize = Math.max(1, base85Chars / 5 * 4);
+                break;
+            case TEXT:
+                // text is cut by its exact escaped length in partitionText, this is just the upper bound
+                this.chunkSize = dataBudget;
+                break;
+            default:
+                final int base64Chars = usePOST
+                        ? dataBudget
+                        : dataBudget * EXPECTED_ESCAPED_CHARS_DIVISOR / (EXPECTED_ESCAPED_CHARS_DIVISOR + 2);
+                this.chunkSize = Math.max(1, base64Chars / 4 * 3);
+        }
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    boolean usePOST() {
+        return usePOST;
+    }
+
+    PartEncoding partEncoding() {
+        return partEncoding;
+    }
+
+    boolean fits(final String encodedPartData) {
+        return escapedLength(encodedPartData) <= dataBudget;
+    }
+
+    boolean fitsWhole(final String serializedMessage) {
+        return escapedLength(serializedMessage) <= wholeMessageBudget;
+    }
+
+    List<String> partitionText(final String text) {
+        return partitionText(text, false);
+    }
+
+    /**
+     * Cuts text into parts on code point boundaries, each as long as fits once JSON- and, for GET, URL-escaped,
+     * or, if {@code contentDefined}, wherever {@link ContentDefinedCuts} finds a boundary before that.
+     */
+    List<String> partitionText(final String text, final boolean contentDefined) {
+        final ContentDefinedCuts cuts = contentDefined ? new ContentDefinedCuts(dataBudget) : null;
+        final List<String> parts = new ArrayList<>();
+        int start = 0;
+        int length = 0;
+        long hash = 0L;
+        int i = 0;
+        while (i < text.length()) {
+            final int codePoint = text.codePointAt(i);
+            final int codePointLength = escapedTextLength(codePoint);
+            if (length + codePointLength > dataBudget && i > start) {
+                parts.add(text.substring(start, i));
+                start = i;
+                length = 0;
+                hash = 0L;
+            }
+            length += codePointLength;
+            i += Character.charCount(codePoint);
+            if (cuts != null) {
+                hash = ContentDefinedCuts.roll(hash, codePoint);
+                if (cuts.isCut(hash, length) && i < text.length()) {
+                    parts.add(text.substring(start, i));
+                    start = i;
+                    length = 0;
+                    hash = 0L;
+                }
+            }
+        }
+        if (start < text.length()) {
+            parts.add(text.substring(start));
+        }
+        return parts;
+    }
+
+    int escapedLength(final String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final int utf8Bytes = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4 : 3;
+            if (utf8Bytes == 4) {
+                i++;
+            }
+            length += usePOST || isUnreserved(c) ? utf8Bytes : 3 * utf8Bytes;
+        }
+        return length;
+    }
+
+    private int escapedTextLength(final int codePoint) {
+        final int jsonEscapeLength = jsonEscapeLength(codePoint);
+        if (jsonEscapeLength > 0) {
+            if (usePOST) {
+                return jsonEscapeLength;
+            }
+            // the backslash needs URL-encoding, and so does the second character of \" and \\
+            return jsonEscapeLength + (codePoint == '"' || codePoint == '\\' ? 4 : 2);
+        }
+        final int utf8Bytes = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+        return usePOST || (codePoint < 0x80 && isUnreserved((char) codePoint)) ? utf8Bytes : 3 * utf8Bytes;
+    }
+
+    private static int jsonEscapeLength(final int codePoint) {
+        switch (codePoint) {
+            case '"':
+            case '\\':
+            case '\n':
+            case '\r':
+            case '\t':
+            case '\b':
+            case '\f':
+                return 2;
+            case '<':
+            case '>':
+            case '&':
+            case '=':
+            case '\'':
+            case 0x2028:
+            case 0x2029:
+                // html-safe serializers, Gson's default among them, write these as unicode escapes
+                return 6;
+            default:
+                return codePoint < 0x20 ? 6 : 0;
+        }
+    }
+
+    private int longestPartEnvelope(final PartEncoding partEncoding) {
+        int longest = 0;
+        for (final Compression compression : Compression.values()) {
+            longest = Math.max(longest, escapedLength(partChunk("", "", "", partEncoding, Integer.MAX_VALUE, compression).toString()));
+        }
+        return longest;
+    }
+
+    private static int countUnreserved(final String alphabet) {
+        int unreserved = 0;
+        for (int i = 0; i < alphabet.length(); i++) {
+            if (isUnreserved(alphabet.charAt(i))) {
+                unreserved++;
+            }
+        }
+        return unreserved;
+    }
+
+    private static boolean isUnreserved(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '_' || c == '.' || c == '*';
+    }
+}
@@ -0,0 +1,22 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.callbacks.SubscribeCallback;
+import com.pubnub.api.models.consumer.PNPublishResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where chunks are published to and received from. {@link PubNubTransport} goes through a {@code PubNub} instance,
+ * {@link LoopbackTransport} stays in-process.
+ */
+public interface ChunkTransport {
+    /**
+     * @return completed with the publish result, or exceptionally with a {@code PubNubException} if the publish failed
+     */
+    CompletableFuture<PNPublishResult> publish(String channel, JsonObject message, boolean usePOST);
+
+    void addListener(SubscribeCallback listener);
+
+    void removeListener(SubscribeCallback listener);
+}
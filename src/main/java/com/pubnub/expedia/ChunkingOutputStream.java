@@ -0,0 +1,115 @@
+package com.pubnub.expedia;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.pubnub.expedia.PublishUtils.partChunk;
+
+/**
+ * Cuts everything written to it into parts of {@code chunkSize} bytes and hands each part to the pipeline
+ * as soon as its window fills, so only the current window and the parts in flight are held in memory.
+ */
+class ChunkingOutputStream extends OutputStream {
+    private final PartPublishPipeline pipeline;
+    private final String messageId;
+    private final ChunkPlanner planner;
+    private final BinaryPartEncoding partEncoding;
+    private final Compression compression;
+    private final Integrity integrity;
+    private final List<String> partChannels;
+    private final byte[] window;
+
+    private final List<String> orderedListOfShaSums = new ArrayList<>();
+    private final Set<String> submittedShaSums = new HashSet<>();
+
+    private int position;
+    private boolean closed;
+
+    ChunkingOutputStream(final PartPublishPipeline pipeline, final String messageId, final ChunkPlanner planner,
+                         final BinaryPartEncoding partEncoding, final Compression compression, final Integrity integrity,
+                         final List<String> partChannels) {
+        this.pipeline = pipeline;
+        this.messageId = messageId;
+        this.planner = planner;
+        this.partEncoding = partEncoding;
+        this.compression = compression;
+        this.integrity = integrity;
+        this.partChannels = partChannels;
+        this.window = new byte[planner.chunkSize()];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (position == window.length) {
+            emit();
+        }
+        window[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        int written = 0;
+        while (written < length) {
+            if (position == window.length) {
+                emit();
+            }
+            final int toCopy = Math.min(length - written, window.length - position);
+            System.arraycopy(bytes, offset + written, window, position, toCopy);
+            position += toCopy;
+            written += toCopy;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            if (position > 0) {
+                emit();
+            }
+            closed = true;
+        }
+    }
+
+    String getMessageId() {
+        return messageId;
+    }
+
+    List<String> getOrderedListOfShaSums() {
+        if (!closed) throw new IllegalStateException("not closed yet");
+        return orderedListOfShaSums;
+    }
+
+    private void emit() throws IOException {
+        emit(position == window.length ? window : Arrays.copyOf(window, position));
+        position = 0;
+    }
+
+    private void emit(final byte[] partBytes) throws IOException {
+        final String encodedPart = partEncoding.encode(partBytes);
+        if (!planner.fits(encodedPart) && partBytes.length > 1) {
+            final int half = partBytes.length / 2;
+            emit(Arrays.copyOfRange(partBytes, 0, half));
+            emit(Arrays.copyOfRange(partBytes, half, partBytes.length));
+            return;
+        }
+        final int index = orderedListOfShaSums.size();
+        final String encodedShaSumOfPart = integrity.partId(integrity.checksum(partBytes), index);
+        orderedListOfShaSums.add(encodedShaSumOfPart);
+        final String partChannel = ChannelStriping.shardOf(partChannels, submittedShaSums.size());
+        if (submittedShaSums.add(encodedShaSumOfPart)) {
+            try {
+                pipeline.submitBlocking(partChannel, partChunk(messageId, encodedShaSumOfPart, encodedPart, partEncoding.getPartEncoding(), index, compression));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for parts in flight");
+            }
+        }
+    }
+}
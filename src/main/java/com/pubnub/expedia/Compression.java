@@ -0,0 +1,91 @@
+package com.pubnub.expedia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public enum Compression {
+    NONE(null) {
+        @Override
+        OutputStream compressing(final OutputStream outputStream, final int level) {
+            return outputStream;
+        }
+
+        @Override
+        InputStream decompressing(final InputStream inputStream) {
+            return inputStream;
+        }
+    },
+    DEFLATE("deflate") {
+        @Override
+        OutputStream compressing(final OutputStream outputStream, final int level) {
+            return new DeflaterOutputStream(outputStream, new Deflater(level), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    def.end();
+                }
+            };
+        }
+
+        @Override
+        InputStream decompressing(final InputStream inputStream) {
+            return new InflaterInputStream(inputStream, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        }
+    },
+    GZIP("gzip") {
+        @Override
+        OutputStream compressing(final OutputStream outputStream, final int level) throws IOException {
+            return new GZIPOutputStream(outputStream, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        InputStream decompressing(final InputStream inputStream) throws IOException {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final String wireName;
+
+    Compression(final String wireName) {
+        this.wireName = wireName;
+    }
+
+    String getWireName() {
+        return wireName;
+    }
+
+    abstract OutputStream compressing(OutputStream outputStream, int level) throws IOException;
+
+    abstract InputStream decompressing(InputStream inputStream) throws IOException;
+
+    static Compression fromWireNameOrNull(final String wireName) {
+        if (wireName == null) {
+            return NONE;
+        }
+        for (final Compression compression : values()) {
+            if (wireName.equals(compression.wireName)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package com.pubnub.expedia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks part boundaries from the content itself with a gear rolling hash, so an edit only changes the parts around it
+ * instead of shifting every later part. Parts come out between a quarter of {@code maxLength} and {@code maxLength},
+ * about half of it on average.
+ */
+final class ContentDefinedCuts {
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // fixed seed: every publisher has to cut the same content at the same places
+        final Random random = new Random(0x67656172L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minLength;
+    private final int maxLength;
+    private final long mask;
+
+    ContentDefinedCuts(final int maxLength) {
+        this.maxLength = maxLength;
+        this.minLength = maxLength / 4;
+        final int bits = Math.max(1, 31 - Integer.numberOfLeadingZeros(Math.max(1, minLength)));
+        // every byte is shifted one bit further up, so bit k covers the last k + 1 bytes: the high bits see the whole
+        // 64-byte window, while the low ones would cut wherever the same few bytes recur
+        this.mask = -1L << (64 - bits);
+    }
+
+    static long roll(final long hash, final int value) {
+        return (hash << 1) + GEAR[(value ^ value >>> 8 ^ value >>> 16) & 0xFF];
+    }
+
+    boolean isCut(final long hash, final int length) {
+        return length >= minLength && (hash & mask) == 0;
+    }
+
+    List<byte[]> partition(final byte[] bytes) {
+        final List<byte[]> parts = new ArrayList<>();
+        int start = 0;
+        long hash = 0L;
+        for (int i = 0; i < bytes.length; i++) {
+            hash = roll(hash, bytes[i] & 0xFF);
+            final int length = i + 1 - start;
+            if (length == maxLength || isCut(hash, length)) {
+                parts.add(Arrays.copyOfRange(bytes, start, i + 1));
+                start = i + 1;
+                hash = 0L;
+            }
+        }
+        if (start < bytes.length) {
+            parts.add(Arrays.copyOfRange(bytes, start, bytes.length));
+        }
+        return parts;
+    }
+}
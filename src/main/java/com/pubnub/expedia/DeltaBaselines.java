@@ -0,0 +1,112 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The last full snapshot published on each channel, which a {@link GreedyPublish} in
+ * {@link GreedyPublish#delta(boolean) delta mode} diffs the next message against. A new snapshot is published instead
+ * of a delta every {@code snapshotEvery} deltas, once the snapshot is older than {@code snapshotInterval},
+ * or whenever the delta isn't at most {@code maxDeltaRatio} of the full message.
+ */
+public class DeltaBaselines {
+    private static final int DEFAULT_SNAPSHOT_EVERY = 50;
+    private static final Duration DEFAULT_SNAPSHOT_INTERVAL = Duration.ofMinutes(5);
+    private static final double DEFAULT_MAX_DELTA_RATIO = 0.25;
+
+    static final class Baseline {
+        private final String shaSum;
+        private final Long timeToken;
+        private final JsonObject data;
+        private final long publishedNanos = System.nanoTime();
+        private final AtomicInteger deltas = new AtomicInteger();
+
+        private Baseline(final String shaSum, final Long timeToken, final JsonObject data) {
+            this.shaSum = shaSum;
+            this.timeToken = timeToken;
+            this.data = data;
+        }
+
+        String getShaSum() {
+            return shaSum;
+        }
+
+        Long getTimeToken() {
+            return timeToken;
+        }
+
+        JsonObject getData() {
+            return data;
+        }
+    }
+
+    private final Map<String, Baseline> baselines = new ConcurrentHashMap<>();
+
+    private int snapshotEvery = DEFAULT_SNAPSHOT_EVERY;
+    private Duration snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+    private double maxDeltaRatio = DEFAULT_MAX_DELTA_RATIO;
+
+    public DeltaBaselines snapshotEvery(final int snapshotEvery) {
+        if (snapshotEvery < 1) throw new IllegalArgumentException("snapshotEvery must be positive: " + snapshotEvery);
+        this.snapshotEvery = snapshotEvery;
+        return this;
+    }
+
+    public DeltaBaselines snapshotInterval(final Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+        return this;
+    }
+
+    public DeltaBaselines maxDeltaRatio(final double maxDeltaRatio) {
+        if (maxDeltaRatio <= 0.0 || maxDeltaRatio > 1.0) throw new IllegalArgumentException("maxDeltaRatio must be in (0, 1]: " + maxDeltaRatio);
+        this.maxDeltaRatio = maxDeltaRatio;
+        return this;
+    }
+
+    public int getSnapshotEvery() {
+        return snapshotEvery;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public double getMaxDeltaRatio() {
+        return maxDeltaRatio;
+    }
+
+    /**
+     * Makes the next message on the channel a full snapshot.
+     */
+    public void clear(final String channel) {
+        baselines.remove(channel);
+    }
+
+    /**
+     * @return the baseline to diff against, or {@code null} if the next message should be a snapshot
+     */
+    Baseline current(final String channel) {
+        final Baseline baseline = baselines.get(channel);
+        if (baseline == null || baseline.deltas.get() >= snapshotEvery
+                || System.nanoTime() - baseline.publishedNanos >= snapshotInterval.toNanos()) {
+            return null;
+        }
+        return baseline;
+    }
+
+    boolean worthIt(final int deltaLength, final int fullLength) {
+        return deltaLength <= fullLength * maxDeltaRatio;
+    }
+
+    void deltaPublished(final Baseline baseline) {
+        baseline.deltas.incrementAndGet();
+    }
+
+    void snapshotPublished(final String channel, final String shaSum, final Long timeToken, final JsonObject data) {
+        baselines.put(channel, new Baseline(shaSum, timeToken, data));
+    }
+}
@@ -0,0 +1,75 @@
+package com.pubnub.expedia;
+
+public class DroppedMessage {
+    public enum Reason {
+        TIMED_OUT, BUFFER_BUDGET_EXCEEDED, CHANNEL_QUOTA_EXCEEDED, DISPATCH_QUEUE_FULL,
+        /**
+         * A delta arrived whose snapshot was neither kept nor recoverable from history.
+         */
+        MISSING_DELTA_BASE,
+        /**
+         * A delta's patch didn't apply to its snapshot.
+         */
+        BAD_DELTA,
+        /**
+         * A part didn't match its id under the {@link Integrity} the manifest declared.
+         */
+        CORRUPTED
+    }
+
+    private final String channel;
+    private final String wholeMessageShaSum;
+    private final Reason reason;
+    private final long bufferedBytes;
+    private final int receivedParts;
+    private final Integer expectedParts;
+
+    DroppedMessage(final String channel, final String wholeMessageShaSum, final Reason reason,
+                   final long bufferedBytes, final int receivedParts, final Integer expectedParts) {
+        this.channel = channel;
+        this.wholeMessageShaSum = wholeMessageShaSum;
+        this.reason = reason;
+        this.bufferedBytes = bufferedBytes;
+        this.receivedParts = receivedParts;
+        this.expectedParts = expectedParts;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getWholeMessageShaSum() {
+        return wholeMessageShaSum;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public int getReceivedParts() {
+        return receivedParts;
+    }
+
+    /**
+     * @return number of parts listed in the final chunk, or {@code null} if the final chunk never arrived
+     */
+    public Integer getExpectedParts() {
+        return expectedParts;
+    }
+
+    @Override
+    public String toString() {
+        return "DroppedMessage{" +
+                "channel='" + channel + '\'' +
+                ", wholeMessageShaSum='" + wholeMessageShaSum + '\'' +
+                ", reason=" + reason +
+                ", bufferedBytes=" + bufferedBytes +
+                ", receivedParts=" + receivedParts +
+                ", expectedParts=" + expectedParts +
+                '}';
+    }
+}
@@ -0,0 +1,7 @@
+package com.pubnub.expedia;
+
+public enum EvictionPolicy {
+    OLDEST_FIRST,
+    LARGEST_FIRST,
+    PER_CHANNEL_QUOTA
+}
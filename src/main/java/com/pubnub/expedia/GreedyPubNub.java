@@ -2,11 +2,14 @@ package com.pubnub.expedia;
 
 import com.pubnub.api.PubNub;
 import com.pubnub.api.builder.PubSubBuilder;
+import com.pubnub.api.builder.SubscribeBuilder;
 import com.pubnub.api.callbacks.SubscribeCallback;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 
 public class GreedyPubNub {
     public abstract static class ChunksAwareSubscribeCallback extends SubscribeCallback {
@@ -19,40 +22,171 @@ public class GreedyPubNub {
         public void setSubscribeCallback(final SubscribeCallback subscribeCallback) {
             this.subscribeCallback = subscribeCallback;
         }
+
+        public void messageDropped(final PubNub pubnub, final DroppedMessage droppedMessage) {}
+
+        /**
+         * Opts in to {@link #messageStreamed}: chunked messages are then handed over as soon as their first part
+         * arrives instead of to {@link #message} once complete. Small messages, snapshots, deltas and batches still
+         * go to {@link #message}.
+         */
+        public boolean streamsMessages() {
+            return false;
+        }
+
+        /**
+         * Called on the {@link ReassemblyConfiguration#streamingExecutor(java.util.concurrent.Executor) streaming executor};
+         * the stream is released when this returns.
+         */
+        public void messageStreamed(final PubNub pubnub, final MessageStream messageStream) {}
+
+        /**
+         * Opts in to {@link #rawMessage}: chunked messages are then handed over as the bytes they were published as,
+         * not parsed unless asked to, instead of to {@link #message}. {@link #streamsMessages()} takes precedence.
+         * Small messages, snapshots, deltas and batches still go to {@link #message}.
+         */
+        public boolean receivesRawMessages() {
+            return false;
+        }
+
+        public void rawMessage(final PubNub pubnub, final RawMessage rawMessage) {}
+    }
+
+    /**
+     * Subscribes like {@link SubscribeBuilder}, and to the shards of every {@link ChannelStriping striped} channel too.
+     */
+    public static class StripedSubscribeBuilder {
+        private final SubscribeBuilder subscribeBuilder;
+        private final ChannelStriping channelStriping;
+        private final List<String> channels = new ArrayList<>();
+
+        private StripedSubscribeBuilder(final SubscribeBuilder subscribeBuilder, final ChannelStriping channelStriping) {
+            this.subscribeBuilder = subscribeBuilder;
+            this.channelStriping = channelStriping;
+        }
+
+        public StripedSubscribeBuilder channels(final List<String> channels) {
+            this.channels.addAll(channels);
+            return this;
+        }
+
+        public StripedSubscribeBuilder channelGroups(final List<String> channelGroups) {
+            subscribeBuilder.channelGroups(channelGroups);
+            return this;
+        }
+
+        public StripedSubscribeBuilder withPresence() {
+            subscribeBuilder.withPresence();
+            return this;
+        }
+
+        public StripedSubscribeBuilder withTimetoken(final Long timetoken) {
+            subscribeBuilder.withTimetoken(timetoken);
+            return this;
+        }
+
+        public void execute() {
+            subscribeBuilder.channels(channelStriping.withShards(channels)).execute();
+        }
     }
 
     final private Collection<ChunksAwareSubscribeCallback> chunksAwareSubscribeCallbacks = Collections.synchronizedCollection(new LinkedList<>());
 
     final private PubNub pubNub;
 
+    final private ChunkTransport transport;
+
+    final private ReassemblyConfiguration reassemblyConfiguration;
+
+    final private DeltaBaselines deltaBaselines = new DeltaBaselines();
+
+    final private PublishGovernor publishGovernor = new PublishGovernor();
+
+    private ChunkJoiningSubscribeCallback chunkJoiningSubscribeCallback;
+
     public GreedyPubNub(final PubNub pubNub) {
+        this(pubNub, new ReassemblyConfiguration());
+    }
+
+    public GreedyPubNub(final PubNub pubNub, final ReassemblyConfiguration reassemblyConfiguration) {
         this.pubNub = pubNub;
+        this.transport = new PubNubTransport(pubNub);
+        this.reassemblyConfiguration = reassemblyConfiguration;
     }
 
     public PubSubBuilder subscribe() {
         return pubNub.subscribe();
     }
 
+    /**
+     * Like {@link #subscribe()}, but also subscribes to the shards of the channels striped by the
+     * {@link ReassemblyConfiguration#channelStriping(ChannelStriping) reassembly configuration}.
+     */
+    public StripedSubscribeBuilder subscribeStriped() {
+        return new StripedSubscribeBuilder(pubNub.subscribe(), reassemblyConfiguration.getChannelStriping());
+    }
+
     public void addListener(final ChunksAwareSubscribeCallback listener) {
         synchronized (chunksAwareSubscribeCallbacks) {
-            final ChunkJoiningSubscribeCallback chunkJoiningSubscribeCallback = new ChunkJoiningSubscribeCallback(pubNub, listener);
+            if (chunkJoiningSubscribeCallback == null) {
+                chunkJoiningSubscribeCallback = new ChunkJoiningSubscribeCallback(pubNub, reassemblyConfiguration);
+                transport.addListener(chunkJoiningSubscribeCallback);
+            }
             listener.setSubscribeCallback(chunkJoiningSubscribeCallback);
             chunksAwareSubscribeCallbacks.add(listener);
-            pubNub.addListener(chunkJoiningSubscribeCallback);
+            chunkJoiningSubscribeCallback.addListener(listener);
         }
     }
 
     void removeListener(ChunksAwareSubscribeCallback listener) {
         synchronized (chunksAwareSubscribeCallbacks) {
-            if (listener.getSubscribeCallback() != null) {
-                pubNub.removeListener(listener.getSubscribeCallback());
+            if (chunkJoiningSubscribeCallback != null) {
+                chunkJoiningSubscribeCallback.removeListener(listener);
             }
+            listener.setSubscribeCallback(null);
             chunksAwareSubscribeCallbacks.remove(listener);
         }
     }
 
+    public void destroy() {
+        synchronized (chunksAwareSubscribeCallbacks) {
+            if (chunkJoiningSubscribeCallback != null) {
+                transport.removeListener(chunkJoiningSubscribeCallback);
+                chunkJoiningSubscribeCallback.close();
+                chunkJoiningSubscribeCallback = null;
+            }
+            chunksAwareSubscribeCallbacks.forEach(listener -> listener.setSubscribeCallback(null));
+            chunksAwareSubscribeCallbacks.clear();
+        }
+    }
+
     public GreedyPublish publishBigChunk() {
-        return new GreedyPublish(this.pubNub, pubNub.getMapper());
+        return new GreedyPublish(this.pubNub, pubNub.getMapper())
+                .metrics(reassemblyConfiguration.getMetrics())
+                .channelStriping(reassemblyConfiguration.getChannelStriping())
+                .publishGovernor(publishGovernor)
+                .deltaBaselines(deltaBaselines);
+    }
+
+    /**
+     * @return a new batcher publishing through {@link #publishBigChunk()}; close it to flush what it still buffers
+     */
+    public BatchingPublisher batchingPublisher() {
+        return new BatchingPublisher(this::publishBigChunk);
+    }
+
+    /**
+     * Snapshots that {@link GreedyPublish#delta(boolean) delta} publishes from {@link #publishBigChunk()} diff against.
+     */
+    public DeltaBaselines getDeltaBaselines() {
+        return deltaBaselines;
+    }
+
+    /**
+     * Paces every publish from {@link #publishBigChunk()}, unlimited until given the keyset's publish rate.
+     */
+    public PublishGovernor getPublishGovernor() {
+        return publishGovernor;
     }
 }
 
@@ -1,5 +1,6 @@
 package com.pubnub.expedia;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
@@ -10,22 +11,59 @@ import com.pubnub.api.managers.MapperManager;
 import com.pubnub.api.models.consumer.PNPublishResult;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.zip.Deflater;
 
+import static com.pubnub.expedia.PartUtils.looksLikeChunk;
+import static com.pubnub.expedia.PublishUtils.deltaChunk;
 import static com.pubnub.expedia.PublishUtils.encode;
 import static com.pubnub.expedia.PublishUtils.finalChunk;
+import static com.pubnub.expedia.PublishUtils.newSha256Digest;
 import static com.pubnub.expedia.PublishUtils.partChunk;
 import static com.pubnub.expedia.PublishUtils.partition;
 import static com.pubnub.expedia.PublishUtils.sha256;
+import static com.pubnub.expedia.PublishUtils.wholeChunk;
 
 public class GreedyPublish {
     private static final int BUFFER_SIZE = 32 * 1024;
-    private static final int CHUNK_SIZE = 24000;
+    private static final int DEFAULT_PARTS_IN_FLIGHT = 8;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 24000;
+    // below this, handing parts to other threads costs more than hashing them here
+    private static final int PARALLEL_PREPARATION_THRESHOLD = 256 * 1024;
+
+    private static final class PreparedPart {
+        private final byte[] checksum;
+        private final String encodedPart;
+
+        private PreparedPart(final byte[] checksum, final String encodedPart) {
+            this.checksum = checksum;
+            this.encodedPart = encodedPart;
+        }
+    }
 
     public static class GreedyPublishResult {
         private final List<PublishPartResult> partsPNPublishResults;
@@ -36,6 +74,28 @@ public class GreedyPublish {
             this.finalPNPublishResult = finalPNPublishResult;
         }
 
+        /**
+         * @return one result per published part in publish order, empty if the message was small enough to be published whole;
+         * parts reused through a {@link SentPartCache} aren't published and have no result
+         */
+        public List<PublishPartResult> getPartsPNPublishResults() {
+            return partsPNPublishResults;
+        }
+
+        public PNPublishResult getFinalPNPublishResult() {
+            return finalPNPublishResult;
+        }
+
+        public int getRetriedParts() {
+            int retriedParts = 0;
+            for (final PublishPartResult partResult : partsPNPublishResults) {
+                if (partResult.getAttempts() > 1) {
+                    retriedParts++;
+                }
+            }
+            return retriedParts;
+        }
+
         @Override
         public String toString() {
             return "GreedyPublishResult{" +
@@ -45,14 +105,54 @@ public class GreedyPublish {
         }
     }
 
+    private final ChunkTransport transport;
     private final PubNub pubNub;
     private final MapperManager mapper;
 
+    private interface StreamSource {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
     private JsonObject message;
 
+    private StreamSource streamSource;
+    private long streamSize;
+
     private String channel;
 
+    private boolean usePOST;
+
+    private int partsInFlight = DEFAULT_PARTS_IN_FLIGHT;
+
+    private Compression compression = Compression.NONE;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+    private PartEncoding partEncoding = PartEncoding.BASE64;
+
+    private Integrity integrity = Integrity.SHA256;
+
+    private Executor preparationExecutor;
+
+    private SentPartCache sentPartCache;
+
+    private boolean delta;
+    private DeltaBaselines deltaBaselines;
+
+    private ChannelStriping channelStriping;
+
+    private PublishGovernor publishGovernor;
+    private boolean priority;
+
+    // the message frames others, so it can't be streamed to subscribers as it is
+    private boolean framed;
+
+    private RetryPolicy retryPolicy = new RetryPolicy();
+
+    private ChunkMetrics metrics = ChunkMetrics.NOOP;
+
     public GreedyPublish usePOST(final boolean usePOST) {
+        this.usePOST = usePOST;
         return this;
     }
 
@@ -61,21 +161,142 @@ public class GreedyPublish {
         return this;
     }
 
+    public GreedyPublish partsInFlight(final int partsInFlight) {
+        if (partsInFlight < 1) throw new IllegalArgumentException("partsInFlight must be positive: " + partsInFlight);
+        this.partsInFlight = partsInFlight;
+        return this;
+    }
+
+    public GreedyPublish compression(final Compression compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public GreedyPublish compressionLevel(final int compressionLevel) {
+        if ((compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public GreedyPublish compressionThreshold(final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * {@link PartEncoding#TEXT} and {@link PartEncoding#BASE85} carry more payload per part than the default Base64
+     * over POST; over GET URL-encoding eats most of that gain.
+     */
+    public GreedyPublish partEncoding(final PartEncoding partEncoding) {
+        this.partEncoding = partEncoding;
+        return this;
+    }
+
+    /**
+     * Opts into content-addressed publishing: parts are cut at content-defined boundaries, and parts the cache knows
+     * were published recently on the channel are left out and only listed in the manifest. Pass the same cache to
+     * every publish. Compressed payloads share little beyond their leading parts, so this pays off most uncompressed.
+     * Streamed messages are cut as they are written and can't be published this way.
+     */
+    public GreedyPublish sentPartCache(final SentPartCache sentPartCache) {
+        this.sentPartCache = sentPartCache;
+        return this;
+    }
+
+    /**
+     * Opts into delta publishing: a message too big to be published whole is diffed against the last snapshot on the
+     * channel in {@link #deltaBaselines(DeltaBaselines)}, and only the JSON Patch is published if it's small enough.
+     * Otherwise the message is published as the new snapshot. Subscribers apply the patch to the snapshot they kept.
+     * Streamed messages are always published in full.
+     */
+    public GreedyPublish delta(final boolean delta) {
+        this.delta = delta;
+        return this;
+    }
+
+    public GreedyPublish deltaBaselines(final DeltaBaselines deltaBaselines) {
+        this.deltaBaselines = deltaBaselines;
+        return this;
+    }
+
+    /**
+     * Spreads the parts of messages on a {@link ChannelStriping#stripe striped} channel over its shards, so one
+     * message isn't held to what a single channel can take. The final chunk is still published on the channel.
+     */
+    public GreedyPublish channelStriping(final ChannelStriping channelStriping) {
+        this.channelStriping = channelStriping;
+        return this;
+    }
+
+    /**
+     * Paces the publishes of this message together with those of every other publish sharing the governor.
+     */
+    public GreedyPublish publishGovernor(final PublishGovernor publishGovernor) {
+        this.publishGovernor = publishGovernor;
+        return this;
+    }
+
+    /**
+     * Puts the message in the {@link PublishGovernor}'s priority lane, ahead of every message that isn't.
+     */
+    public GreedyPublish priority(final boolean priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * What parts are identified and checked by; see {@link Integrity}. The whole message is always hashed with SHA-256.
+     */
+    public GreedyPublish integrity(final Integrity integrity) {
+        this.integrity = integrity;
+        return this;
+    }
+
+    /**
+     * Where the parts of messages bigger than 256 KiB are hashed and encoded, in parallel. Defaults to
+     * {@link ForkJoinPool#commonPool()}. Streamed messages are read from their source, prepared and published from one
+     * of its threads, which blocks while the source does and while too many parts are in flight.
+     */
+    public GreedyPublish preparationExecutor(final Executor preparationExecutor) {
+        this.preparationExecutor = preparationExecutor;
+        return this;
+    }
+
+    Executor getPreparationExecutor() {
+        return preparationExecutor != null ? preparationExecutor : ForkJoinPool.commonPool();
+    }
+
+    GreedyPublish framed() {
+        this.framed = true;
+        return this;
+    }
+
+    public GreedyPublish retryPolicy(final RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public GreedyPublish metrics(final ChunkMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
     public GreedyPublish message(final String jsonObjectAsString) {
         final JsonObject dataJsonObject = JsonParser.parseString(jsonObjectAsString).getAsJsonObject();
         message(dataJsonObject);
         return this;
     }
 
+    /**
+     * Parses a UTF-8 JSON object from the stream as it is read. The message is still held in memory as a whole, so it
+     * can be compressed, diffed or cut at content-defined boundaries; use {@link #stream(InputStream)} to publish it
+     * without that.
+     */
     public GreedyPublish message(final InputStream inputStream) {
-        try (final ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-            int bytesRead;
-            byte[] data = new byte[BUFFER_SIZE];
-            while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, bytesRead);
-            }
-            buffer.flush();
-            return message(buffer.toString());
+        try {
+            return message(JsonParser.parseReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)).getAsJsonObject());
         }
         catch (Exception e) {
             throw new IllegalStateException("something went wrong while reading json from stream", e);
@@ -87,94 +308,464 @@ public class GreedyPublish {
         jsonObject.add("timestamp", new JsonPrimitive(System.currentTimeMillis()));
         jsonObject.add("data", dataJsonObject);
         message = jsonObject;
+        streamSource = null;
+        return this;
+    }
+
+    public GreedyPublish stream(final InputStream inputStream) {
+        return stream(outputStream -> {
+            final byte[] data = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
+                outputStream.write(data, 0, bytesRead);
+            }
+        }, -1);
+    }
+
+    public GreedyPublish stream(final Path path) {
+        return stream(outputStream -> {
+            try (final FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                write(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()), outputStream);
+            }
+        }, path.toFile().length());
+    }
+
+    public GreedyPublish stream(final ByteBuffer byteBuffer) {
+        return stream(outputStream -> write(byteBuffer.duplicate(), outputStream), byteBuffer.remaining());
+    }
+
+    private GreedyPublish stream(final StreamSource dataSource, final long dataSize) {
+        final byte[] prefix = ("{\"timestamp\":" + System.currentTimeMillis() + ",\"data\":").getBytes(StandardCharsets.UTF_8);
+        streamSource = outputStream -> {
+            outputStream.write(prefix);
+            dataSource.writeTo(outputStream);
+            outputStream.write('}');
+        };
+        streamSize = dataSize;
+        message = null;
         return this;
     }
 
+    private static void write(final ByteBuffer byteBuffer, final OutputStream outputStream) throws IOException {
+        if (byteBuffer.hasArray()) {
+            outputStream.write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+        }
+        else {
+            final byte[] data = new byte[BUFFER_SIZE];
+            while (byteBuffer.hasRemaining()) {
+                final int toCopy = Math.min(byteBuffer.remaining(), data.length);
+                byteBuffer.get(data, 0, toCopy);
+                outputStream.write(data, 0, toCopy);
+            }
+        }
+    }
+
     public GreedyPublish(final PubNub pubNub, final MapperManager mapper) {
+        this(new PubNubTransport(pubNub), pubNub, mapper);
+    }
+
+    public GreedyPublish(final ChunkTransport transport) {
+        this(transport, null, null);
+    }
+
+    private GreedyPublish(final ChunkTransport transport, final PubNub pubNub, final MapperManager mapper) {
+        this.transport = transport;
         this.pubNub = pubNub;
         this.mapper = mapper;
     }
 
     public GreedyPublishResult sync() throws PubNubException {
-        validate();
-        final byte[] messageBytes = mapper.toJson(message).getBytes();
+        try {
+            return async().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw PubNubException.builder().errormsg("interrupted while publishing parts").build();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof PubNubException) {
+                throw (PubNubException) e.getCause();
+            }
+            throw new IllegalStateException("something went wrong while publishing parts", e.getCause());
+        }
+    }
+
+    public CompletableFuture<GreedyPublishResult> async() {
+        try {
+            validate();
+            if (streamSource != null) {
+                return streamingAsync();
+            }
+            else {
+                return materializedAsync();
+            }
+        }
+        catch (PubNubException e) {
+            final CompletableFuture<GreedyPublishResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private CompletableFuture<GreedyPublishResult> materializedAsync() throws PubNubException {
+        final PartPublishPipeline pipeline = newPipeline();
+        final ChunkPlanner planner = new ChunkPlanner(channel, usePOST, ChunkPlanner.SHA_SUM_LENGTH);
+
+        final JsonObject dataJsonObject = message.getAsJsonObject("data");
+        final String serializedData = toJson(dataJsonObject);
+        // data that would pass for a chunk goes out wrapped; a batch chunk goes out as it is
+        final JsonObject wholeJsonObject = !framed && looksLikeChunk(dataJsonObject) ? wholeChunk(dataJsonObject) : dataJsonObject;
+        if (planner.fitsWhole(wholeJsonObject == dataJsonObject ? serializedData : toJson(wholeJsonObject))) {
+            return pipeline.seal(wholeJsonObject);
+        }
+        if (!delta) {
+            return publishParts(pipeline, message, false, !framed);
+        }
+
+        final DeltaBaselines.Baseline baseline = deltaBaselines.current(channel);
+        if (baseline != null) {
+            final JsonObject deltaChunkJsonObject = deltaChunk(baseline.getShaSum(), baseline.getTimeToken(),
+                    JsonPatch.diff(baseline.getData(), dataJsonObject));
+            final String serializedDelta = toJson(deltaChunkJsonObject);
+            if (deltaBaselines.worthIt(serializedDelta.length(), serializedData.length())) {
+                final CompletableFuture<GreedyPublishResult> published;
+                if (planner.fitsWhole(serializedDelta)) {
+                    published = pipeline.seal(deltaChunkJsonObject);
+                }
+                else {
+                    final JsonObject deltaMessage = new JsonObject();
+                    deltaMessage.add("timestamp", message.get("timestamp"));
+                    deltaMessage.add("data", deltaChunkJsonObject);
+                    published = publishParts(pipeline, deltaMessage, false, false);
+                }
+                // a delta that never went out doesn't bring the next snapshot any closer
+                return published.thenApply(greedyPublishResult -> {
+                    deltaBaselines.deltaPublished(baseline);
+                    return greedyPublishResult;
+                });
+            }
+        }
+        return publishParts(pipeline, message, true, false);
+    }
 
-        final String shaSumOfWholeMessage = encode(sha256(messageBytes));
+    /**
+     * @param streamable whether subscribers may stream the message as its parts arrive, so parts carry their position
+     */
+    private CompletableFuture<GreedyPublishResult> publishParts(final PartPublishPipeline pipeline, final JsonObject message,
+                                                                final boolean baseline, final boolean streamable) throws PubNubException {
+        final String serializedMessage = toJson(message);
+        final byte[] messageBytes = serializedMessage.getBytes(StandardCharsets.UTF_8);
 
-        final List<byte[]> partsAsByteArrays = partition(messageBytes, CHUNK_SIZE);
+        final boolean parallel = messageBytes.length >= PARALLEL_PREPARATION_THRESHOLD;
+        final CompletableFuture<String> wholeMessageShaSum = parallel
+                ? CompletableFuture.supplyAsync(() -> encode(sha256(messageBytes)), getPreparationExecutor())
+                : CompletableFuture.completedFuture(encode(sha256(messageBytes)));
+
+        final Compression effectiveCompression = messageBytes.length >= compressionThreshold ? compression : Compression.NONE;
+        final byte[] payloadBytes = compress(messageBytes, effectiveCompression);
+
+        final PartEncoding effectivePartEncoding = effectiveCompression == Compression.NONE
+                ? partEncoding
+                : partEncoding.forBinary().getPartEncoding();
+        final List<String> shards = shards();
+        final List<String> partChannels = partChannels(shards);
+        final ChunkPlanner partPlanner = new ChunkPlanner(longest(partChannels), usePOST, ChunkPlanner.SHA_SUM_LENGTH, effectivePartEncoding);
 
         final List<String> orderedListOfShaSums = new ArrayList<>();
-        final Map<String, String> shaSumsToParts = new HashMap<>();
+        final Map<String, String> shaSumsToParts = new LinkedHashMap<>();
+
+        final List<PreparedPart> preparedParts;
+        if (effectivePartEncoding == PartEncoding.TEXT) {
+            preparedParts = prepare(partPlanner.partitionText(serializedMessage, sentPartCache != null), parallel,
+                    textPart -> Collections.singletonList(new PreparedPart(integrity.checksum(textPart.getBytes(StandardCharsets.UTF_8)), textPart)));
+        }
+        else {
+            final List<byte[]> partsAsByteArrays = sentPartCache != null
+                    ? new ContentDefinedCuts(partPlanner.chunkSize()).partition(payloadBytes)
+                    : partition(payloadBytes, partPlanner.chunkSize());
+            final BinaryPartEncoding binaryPartEncoding = effectivePartEncoding.forBinary();
+            preparedParts = prepare(partsAsByteArrays, parallel, partBytes -> preparePart(partBytes, partPlanner, binaryPartEncoding));
+        }
+        for (int i = 0; i < preparedParts.size(); i++) {
+            final PreparedPart preparedPart = preparedParts.get(i);
+            addPart(integrity.partId(preparedPart.checksum, i), preparedPart.encodedPart, orderedListOfShaSums, shaSumsToParts);
+        }
+        final String shaSumOfWholeMessage = wholeMessageShaSum.join();
 
-        partsAsByteArrays.forEach(partsBytes -> {
-            final String encodedShaSumOfPart = encode(sha256(partsBytes));
-            final String encodedPart = encode(partsBytes);
-            orderedListOfShaSums.add(encodedShaSumOfPart);
-            shaSumsToParts.put(encodedShaSumOfPart, encodedPart);
+        final Map<String, Integer> firstIndexes = new HashMap<>();
+        if (streamable) {
+            for (int i = orderedListOfShaSums.size() - 1; i >= 0; i--) {
+                firstIndexes.put(orderedListOfShaSums.get(i), i);
+            }
+        }
+        int reusedParts = 0;
+        long reusedSince = Long.MAX_VALUE;
+        int distinctPart = 0;
+        for (final Map.Entry<String, String> shaSumToPart : shaSumsToParts.entrySet()) {
+            final String partChannel = ChannelStriping.shardOf(partChannels, distinctPart++);
+            final Long publishedAt = sentPartCache != null ? sentPartCache.publishedAt(channel, shaSumToPart.getKey()) : null;
+            if (publishedAt != null) {
+                reusedParts++;
+                reusedSince = Math.min(reusedSince, publishedAt);
+            }
+            else {
+                pipeline.submit(partChannel, partChunk(shaSumOfWholeMessage, shaSumToPart.getKey(), shaSumToPart.getValue(), effectivePartEncoding,
+                        firstIndexes.get(shaSumToPart.getKey()), effectiveCompression));
+            }
+        }
+        final JsonObject finalChunkJsonObject = finalChunk(shaSumOfWholeMessage, orderedListOfShaSums);
+        addManifestProperties(finalChunkJsonObject, effectiveCompression, effectivePartEncoding, integrity, shards);
+        if (reusedParts > 0) {
+            // tells subscribers missing a reused part how far back in history to look for it
+            finalChunkJsonObject.addProperty("reusedsince", reusedSince);
+            metrics.partsReused(channel, reusedParts);
+        }
+        if (baseline) {
+            // subscribers keep baselines around to apply the deltas that follow
+            finalChunkJsonObject.addProperty("baseline", true);
+        }
+        else if (!streamable) {
+            // a delta or a batch, which subscribers unpack once assembled
+            finalChunkJsonObject.addProperty("framed", true);
+        }
+        if (sentPartCache == null && !baseline) {
+            return pipeline.seal(finalChunkJsonObject);
+        }
+        final JsonObject snapshot = baseline ? message.getAsJsonObject("data").deepCopy() : null;
+        return pipeline.seal(finalChunkJsonObject).thenApply(greedyPublishResult -> {
+            if (sentPartCache != null) {
+                sentPartCache.published(channel, greedyPublishResult);
+            }
+            if (baseline) {
+                deltaBaselines.snapshotPublished(channel, shaSumOfWholeMessage,
+                        greedyPublishResult.getFinalPNPublishResult().getTimetoken(), snapshot);
+            }
+            return greedyPublishResult;
         });
+    }
 
-        final List<PublishPartResult> partsPNPublishResults = sendPartsSync(shaSumOfWholeMessage, shaSumsToParts);
-        final PNPublishResult finalPNPublishResult = sendFinalSync(shaSumOfWholeMessage, orderedListOfShaSums);
+    private PartPublishPipeline newPipeline() {
+        return new PartPublishPipeline(transport, channel, usePOST, partsInFlight, retryPolicy, metrics,
+                publishGovernor != null ? publishGovernor.newFlow(priority) : null);
+    }
 
-        return new GreedyPublishResult(partsPNPublishResults, finalPNPublishResult);
+    private String toJson(final JsonObject jsonObject) throws PubNubException {
+        return mapper != null ? mapper.toJson(jsonObject) : jsonObject.toString();
     }
 
-    private PNPublishResult sendFinalSync(final String shaSumOfWholeMessage, final List<String> orderedListOfShaSums) throws PubNubException {
-        final JsonObject finalChunkJsonObject = finalChunk(shaSumOfWholeMessage, orderedListOfShaSums);
+    private static void addManifestProperties(final JsonObject finalChunkJsonObject, final Compression effectiveCompression,
+                                              final PartEncoding effectivePartEncoding, final Integrity integrity,
+                                              final List<String> shards) {
+        if (effectiveCompression != Compression.NONE) {
+            finalChunkJsonObject.addProperty("compression", effectiveCompression.getWireName());
+        }
+        if (effectivePartEncoding.getWireName() != null) {
+            finalChunkJsonObject.addProperty("encoding", effectivePartEncoding.getWireName());
+        }
+        if (integrity.getWireName() != null) {
+            finalChunkJsonObject.addProperty("integrity", integrity.getWireName());
+        }
+        if (!shards.isEmpty()) {
+            final JsonArray shardsJsonArray = new JsonArray();
+            shards.forEach(shardsJsonArray::add);
+            finalChunkJsonObject.add("shards", shardsJsonArray);
+        }
+    }
+
+    /**
+     * @return shards the channel is striped over, empty if it isn't
+     */
+    private List<String> shards() {
+        return channelStriping != null ? channelStriping.getShards(channel) : Collections.emptyList();
+    }
+
+    private List<String> partChannels(final List<String> shards) {
+        return shards.isEmpty() ? Collections.singletonList(channel) : shards;
+    }
+
+    /**
+     * @return the channel name leaving the least room for data in a GET URL
+     */
+    private static String longest(final List<String> channels) {
+        String longest = channels.get(0);
+        for (final String channel : channels) {
+            if (channel.length() > longest.length()) {
+                longest = channel;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Runs {@code preparation} for every input, on the {@link #preparationExecutor(Executor) preparation executor}
+     * if {@code parallel}, and returns what it prepared in input order.
+     */
+    private <T> List<PreparedPart> prepare(final List<T> inputs, final boolean parallel, final Function<T, List<PreparedPart>> preparation) {
+        final List<PreparedPart> preparedParts = new ArrayList<>(inputs.size());
+        if (!parallel) {
+            inputs.forEach(input -> preparedParts.addAll(preparation.apply(input)));
+            return preparedParts;
+        }
+        final List<CompletableFuture<List<PreparedPart>>> preparing = new ArrayList<>(inputs.size());
+        for (final T input : inputs) {
+            preparing.add(CompletableFuture.supplyAsync(() -> preparation.apply(input), getPreparationExecutor()));
+        }
+        preparing.forEach(prepared -> preparedParts.addAll(prepared.join()));
+        return preparedParts;
+    }
+
+    private List<PreparedPart> preparePart(final byte[] partBytes, final ChunkPlanner planner, final BinaryPartEncoding partEncoding) {
+        final String encodedPart = partEncoding.encode(partBytes);
+        if (!planner.fits(encodedPart) && partBytes.length > 1) {
+            final int half = partBytes.length / 2;
+            final List<PreparedPart> halves = new ArrayList<>(preparePart(Arrays.copyOfRange(partBytes, 0, half), planner, partEncoding));
+            halves.addAll(preparePart(Arrays.copyOfRange(partBytes, half, partBytes.length), planner, partEncoding));
+            return halves;
+        }
+        return Collections.singletonList(new PreparedPart(integrity.checksum(partBytes), encodedPart));
+    }
+
+    private static void addPart(final String encodedShaSumOfPart, final String encodedPart,
+                                final List<String> orderedListOfShaSums, final Map<String, String> shaSumsToParts) {
+        orderedListOfShaSums.add(encodedShaSumOfPart);
+        shaSumsToParts.put(encodedShaSumOfPart, encodedPart);
+    }
+
+    private byte[] compress(final byte[] messageBytes, final Compression effectiveCompression) {
+        if (effectiveCompression == Compression.NONE) {
+            return messageBytes;
+        }
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(messageBytes.length / 4);
+        try (final OutputStream compressingStream = effectiveCompression.compressing(buffer, compressionLevel)) {
+            compressingStream.write(messageBytes);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("that shall never happen", e);
+        }
+        return buffer.toByteArray();
+    }
 
-        return pubNub.publish()
-                .channel(channel)
-                .message(finalChunkJsonObject)
-                .sync();
+    private CompletableFuture<GreedyPublishResult> streamingAsync() {
+        final PartPublishPipeline pipeline = newPipeline();
+        final String messageId = UUID.randomUUID().toString();
+        final Compression effectiveCompression = streamSize < 0 || streamSize >= compressionThreshold ? compression : Compression.NONE;
+        final List<String> shards = shards();
+        final List<String> partChannels = partChannels(shards);
+        final BinaryPartEncoding binaryPartEncoding = partEncoding.forBinary();
+        final ChunkingOutputStream chunkingOutputStream = new ChunkingOutputStream(pipeline, messageId,
+                new ChunkPlanner(longest(partChannels), usePOST, messageId.length(), binaryPartEncoding.getPartEncoding()),
+                binaryPartEncoding, effectiveCompression, integrity, partChannels);
+        final StreamSource source = streamSource;
+        final int level = compressionLevel;
+        final Integrity partIntegrity = integrity;
+        // reading the source blocks on it and on parts in flight, so it doesn't hold up the caller
+        return CompletableFuture.supplyAsync(() -> {
+            final MessageDigest wholeMessageDigest = newSha256Digest();
+            try (final OutputStream outputStream = new DigestOutputStream(effectiveCompression.compressing(chunkingOutputStream, level), wholeMessageDigest)) {
+                source.writeTo(outputStream);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("something went wrong while streaming message", e);
+            }
+            final JsonObject finalChunkJsonObject = finalChunk(chunkingOutputStream.getMessageId(),
+                    chunkingOutputStream.getOrderedListOfShaSums(),
+                    encode(wholeMessageDigest.digest()));
+            addManifestProperties(finalChunkJsonObject, effectiveCompression, binaryPartEncoding.getPartEncoding(), partIntegrity, shards);
+            return finalChunkJsonObject;
+        }, getPreparationExecutor()).thenCompose(pipeline::seal);
     }
 
-    static abstract class PublishPartResult {
+    public static abstract class PublishPartResult {
         private final JsonObject jsonObject;
-        protected PublishPartResult(final JsonObject jsonObject) {
+        private final Duration latency;
+        private final int attempts;
+
+        protected PublishPartResult(final JsonObject jsonObject, final Duration latency, final int attempts) {
             this.jsonObject = jsonObject;
+            this.latency = latency;
+            this.attempts = attempts;
+        }
+
+        public JsonObject getJsonObject() {
+            return jsonObject;
+        }
+
+        /**
+         * @return latency of the last attempt
+         */
+        public Duration getLatency() {
+            return latency;
+        }
+
+        public int getAttempts() {
+            return attempts;
         }
 
-        static class Successful extends PublishPartResult {
+        public static class Successful extends PublishPartResult {
             private final PNPublishResult pnPublishResult;
 
-            protected Successful(final PNPublishResult pnPublishResult, final JsonObject jsonObject) {
-                super(jsonObject);
+            protected Successful(final PNPublishResult pnPublishResult, final JsonObject jsonObject, final Duration latency,
+                                 final int attempts) {
+                super(jsonObject, latency, attempts);
                 this.pnPublishResult = pnPublishResult;
             }
+
+            public PNPublishResult getPnPublishResult() {
+                return pnPublishResult;
+            }
+
+            @Override
+            public String toString() {
+                return "Successful{" +
+                        "pnPublishResult=" + pnPublishResult +
+                        ", latency=" + getLatency() +
+                        ", attempts=" + getAttempts() +
+                        '}';
+            }
         }
-        static class Failed extends PublishPartResult {
+
+        public static class Failed extends PublishPartResult {
             private final PubNubException pubNubException;
 
-            protected Failed(final PubNubException e, final JsonObject jsonObject) {
-                super(jsonObject);
+            protected Failed(final PubNubException e, final JsonObject jsonObject, final Duration latency, final int attempts) {
+                super(jsonObject, latency, attempts);
                 this.pubNubException = e;
             }
-        }
-    }
 
-    private List<PublishPartResult> sendPartsSync(final String shaSumOfWholeMessage, final Map<String, String> shaSumsToParts) {
-        return shaSumsToParts.keySet().stream()
-                .map(shaSum -> partChunk(shaSumOfWholeMessage, shaSum, shaSumsToParts.get(shaSum)))
-                .map(partJsonObject -> {
-                    try {
-                        final PNPublishResult pnPublishResult = pubNub.publish()
-                                .channel(channel)
-                                .message(partJsonObject)
-                                .sync();
-                        return new PublishPartResult.Successful(pnPublishResult, partJsonObject);
-                    } catch (PubNubException e) {
-                        return new PublishPartResult.Failed(e, partJsonObject);
-                    }
-                }).collect(Collectors.toList());
+            public PubNubException getPubNubException() {
+                return pubNubException;
+            }
+
+            @Override
+            public String toString() {
+                return "Failed{" +
+                        "pubNubException=" + pubNubException +
+                        ", latency=" + getLatency() +
+                        ", attempts=" + getAttempts() +
+                        '}';
+            }
+        }
     }
 
     private void validate() throws PubNubException {
-        if (message == null) {
+        if (message == null && streamSource == null) {
             throw PubNubException.builder().pubnubError(PubNubErrorBuilder.PNERROBJ_MESSAGE_MISSING).build();
         }
         if (channel == null || channel.isEmpty()) {
             throw PubNubException.builder().pubnubError(PubNubErrorBuilder.PNERROBJ_CHANNEL_MISSING).build();
         }
+        if (delta && deltaBaselines == null) {
+            throw new IllegalStateException("delta publishing needs deltaBaselines");
+        }
+        if (sentPartCache != null && streamSource != null) {
+            throw new IllegalStateException("content-addressed publishing can't stream a message");
+        }
+        if (sentPartCache != null && !integrity.isContentAddressed()) {
+            throw new IllegalStateException("content-addressed publishing needs " + Integrity.SHA256 + " part ids");
+        }
+        if (pubNub == null) {
+            return;
+        }
         if (pubNub.getConfiguration().getSubscribeKey() == null || pubNub.getConfiguration().getSubscribeKey().isEmpty()) {
             throw PubNubException.builder().pubnubError(PubNubErrorBuilder.PNERROBJ_SUBSCRIBE_KEY_MISSING).build();
         }
@@ -0,0 +1,130 @@
+package com.pubnub.expedia;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class HeapPartStore implements PartStore {
+    private static class TextPartsReader extends Reader {
+        private final List<String> texts;
+        private int textIndex;
+        private int position;
+
+        private TextPartsReader(final List<String> texts) {
+            this.texts = texts;
+        }
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            while (textIndex < texts.size() && position == texts.get(textIndex).length()) {
+                textIndex++;
+                position = 0;
+            }
+            if (textIndex == texts.size()) {
+                return -1;
+            }
+            final String text = texts.get(textIndex);
+            final int toCopy = Math.min(length, text.length() - position);
+            text.getChars(position, position + toCopy, buffer, offset);
+            position += toCopy;
+            return toCopy;
+        }
+
+        @Override
+        public void close() {
+            textIndex = texts.size();
+        }
+    }
+
+    private final Map<String, Part> parts = new HashMap<>();
+    private long heapBytes;
+
+    @Override
+    public boolean add(final Part part) {
+        if (parts.put(part.getShaSum(), part) == null) {
+            heapBytes += part.retainedBytes();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(final String shaSum) {
+        return parts.containsKey(shaSum);
+    }
+
+    @Override
+    public boolean containsAll(final Collection<String> shaSums) {
+        return parts.keySet().containsAll(shaSums);
+    }
+
+    @Override
+    public int size() {
+        return parts.size();
+    }
+
+    @Override
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    Collection<Part> parts() {
+        return parts.values();
+    }
+
+    @Override
+    public InputStream open(final List<String> orderedShaSums) {
+        return new ByteArrayInputStream(readAll(orderedShaSums));
+    }
+
+    @Override
+    public byte[] readAll(final List<String> orderedShaSums) {
+        final List<Part> orderedParts = new ArrayList<>(orderedShaSums.size());
+        int wholeMessageLength = 0;
+        for (final String partShaSum : orderedShaSums) {
+            final Part part = parts.get(partShaSum);
+            orderedParts.add(part);
+            wholeMessageLength += part.decodedLength();
+        }
+
+        final byte[] wholeMessageBytes = new byte[wholeMessageLength];
+        int offset = 0;
+        for (final Part part : orderedParts) {
+            offset += part.decodeInto(wholeMessageBytes, offset);
+        }
+        return wholeMessageBytes;
+    }
+
+    @Override
+    public byte[] read(final String shaSum) {
+        final Part part = parts.get(shaSum);
+        final byte[] partBytes = new byte[part.decodedLength()];
+        part.decodeInto(partBytes, 0);
+        return partBytes;
+    }
+
+    @Override
+    public Reader openText(final List<String> orderedShaSums) {
+        final List<String> orderedTexts = new ArrayList<>(orderedShaSums.size());
+        for (final String partShaSum : orderedShaSums) {
+            final Part part = parts.get(partShaSum);
+            if (part.getEncoding() != PartEncoding.TEXT) throw new IllegalStateException("is not a text part: " + partShaSum);
+            orderedTexts.add(part.getData());
+        }
+        return new TextPartsReader(orderedTexts);
+    }
+
+    @Override
+    public void release() {
+        parts.clear();
+        heapBytes = 0L;
+    }
+}
@@ -0,0 +1,93 @@
+package com.pubnub.expedia;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import static com.pubnub.expedia.PublishUtils.crc32c;
+import static com.pubnub.expedia.PublishUtils.encode;
+import static com.pubnub.expedia.PublishUtils.sha256;
+
+/**
+ * What parts are identified and checked by. Declared in the final manifest; subscribers check every part against its
+ * id before assembling. The whole message is identified by its SHA-256 either way.
+ */
+public enum Integrity {
+    /**
+     * Parts are addressed by content, so identical parts are published once and can be reused across messages.
+     */
+    SHA256(null) {
+        @Override
+        byte[] checksum(final byte[] bytes) {
+            return sha256(bytes);
+        }
+
+        @Override
+        String partId(final byte[] checksum, final int position) {
+            return encode(checksum);
+        }
+
+        @Override
+        boolean matches(final String partId, final byte[] bytes) {
+            return partId.equals(encode(sha256(bytes)));
+        }
+    },
+    /**
+     * Far cheaper to compute, but 32 bits can't tell parts apart across messages: part ids include the position
+     * of the part, and parts are neither deduplicated nor reused.
+     */
+    CRC32C("crc32c") {
+        @Override
+        byte[] checksum(final byte[] bytes) {
+            return ByteBuffer.allocate(4).putInt(crc32c(bytes)).array();
+        }
+
+        @Override
+        String partId(final byte[] checksum, final int position) {
+            return encode(ByteBuffer.allocate(8).put(checksum).putInt(position).array());
+        }
+
+        @Override
+        boolean matches(final String partId, final byte[] bytes) {
+            final byte[] decoded;
+            try {
+                decoded = Base64.getDecoder().decode(partId);
+            }
+            catch (IllegalArgumentException e) {
+                return false;
+            }
+            return decoded.length == 8 && ByteBuffer.wrap(decoded).getInt() == crc32c(bytes);
+        }
+    };
+
+    private final String wireName;
+
+    Integrity(final String wireName) {
+        this.wireName = wireName;
+    }
+
+    String getWireName() {
+        return wireName;
+    }
+
+    abstract byte[] checksum(byte[] bytes);
+
+    abstract String partId(byte[] checksum, int position);
+
+    abstract boolean matches(String partId, byte[] bytes);
+
+    boolean isContentAddressed() {
+        return this == SHA256;
+    }
+
+    static Integrity fromWireNameOrNull(final String wireName) {
+        if (wireName == null) {
+            return SHA256;
+        }
+        for (final Integrity integrity : values()) {
+            if (wireName.equals(integrity.wireName)) {
+                return integrity;
+            }
+        }
+        return null;
+    }
+}
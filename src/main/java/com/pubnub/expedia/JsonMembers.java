@@ -0,0 +1,110 @@
+package com.pubnub.expedia;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Finds where a top-level member's value sits in serialized JSON without parsing it into a tree: strings are skipped
+ * over, objects and arrays by counting brackets. Assumes well-formed input, as produced by the publisher.
+ */
+final class JsonMembers {
+    private JsonMembers() {}
+
+    /**
+     * @return {@code {start, end}} of the value of member {@code name} of the object in {@code json}, or {@code null}
+     * if there is no such member or {@code json} is not an object
+     */
+    static int[] locate(final byte[] json, final int length, final String name) {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int i = skipWhitespace(json, 0, length);
+        if (i == length || json[i] != '{') {
+            return null;
+        }
+        i = skipWhitespace(json, i + 1, length);
+        while (i < length && json[i] == '"') {
+            final int nameEnd = skipString(json, i, length);
+            final boolean matches = nameEnd - i - 2 == nameBytes.length
+                    && Arrays.equals(Arrays.copyOfRange(json, i + 1, nameEnd - 1), nameBytes);
+            i = skipWhitespace(json, nameEnd, length);
+            if (i == length || json[i] != ':') {
+                return null;
+            }
+            final int valueStart = skipWhitespace(json, i + 1, length);
+            final int valueEnd = skipValue(json, valueStart, length);
+            if (matches) {
+                return new int[]{valueStart, valueEnd};
+            }
+            i = skipWhitespace(json, valueEnd, length);
+            if (i == length || json[i] != ',') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1, length);
+        }
+        return null;
+    }
+
+    private static int skipValue(final byte[] json, final int start, final int length) {
+        if (start == length) {
+            return start;
+        }
+        final byte first = json[start];
+        if (first == '"') {
+            return skipString(json, start, length);
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            int i = start;
+            while (i < length) {
+                final byte b = json[i];
+                if (b == '"') {
+                    i = skipString(json, i, length);
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                }
+                else if ((b == '}' || b == ']') && --depth == 0) {
+                    return i + 1;
+                }
+                i++;
+            }
+            return length;
+        }
+        int i = start;
+        while (i < length && json[i] != ',' && json[i] != '}' && json[i] != ']' && !isWhitespace(json[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index just past the closing quote of the string opening at {@code start}
+     */
+    private static int skipString(final byte[] json, final int start, final int length) {
+        int i = start + 1;
+        while (i < length) {
+            final byte b = json[i];
+            if (b == '\\') {
+                i += 2;
+                continue;
+            }
+            if (b == '"') {
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    private static int skipWhitespace(final byte[] json, final int start, final int length) {
+        int i = start;
+        while (i < length && isWhitespace(json[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
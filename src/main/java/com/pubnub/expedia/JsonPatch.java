@@ -0,0 +1,217 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * The subset of RFC 6902 JSON Patch delta publishing needs: {@link #diff} produces {@code add}, {@code remove} and
+ * {@code replace} operations, {@link #apply} applies them in place. Arrays are diffed by trimming their common prefix
+ * and suffix, which covers appends, inserts and removals of a run of elements.
+ */
+final class JsonPatch {
+    private JsonPatch() {}
+
+    static JsonArray diff(final JsonElement source, final JsonElement target) {
+        final JsonArray patch = new JsonArray();
+        diff("", source, target, patch);
+        return patch;
+    }
+
+    private static void diff(final String path, final JsonElement source, final JsonElement target, final JsonArray patch) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source.isJsonObject() && target.isJsonObject()) {
+            final JsonObject sourceObject = source.getAsJsonObject();
+            final JsonObject targetObject = target.getAsJsonObject();
+            for (final Map.Entry<String, JsonElement> entry : sourceObject.entrySet()) {
+                final String memberPath = path + "/" + escape(entry.getKey());
+                final JsonElement targetValue = targetObject.get(entry.getKey());
+                if (targetValue == null) {
+                    patch.add(operation("remove", memberPath, null));
+                }
+                else {
+                    diff(memberPath, entry.getValue(), targetValue, patch);
+                }
+            }
+            for (final Map.Entry<String, JsonElement> entry : targetObject.entrySet()) {
+                if (!sourceObject.has(entry.getKey())) {
+                    patch.add(operation("add", path + "/" + escape(entry.getKey()), entry.getValue()));
+                }
+            }
+        }
+        else if (source.isJsonArray() && target.isJsonArray()) {
+            diff(path, source.getAsJsonArray(), target.getAsJsonArray(), patch);
+        }
+        else {
+            patch.add(operation("replace", path, target));
+        }
+    }
+
+    private static void diff(final String path, final JsonArray source, final JsonArray target, final JsonArray patch) {
+        int prefix = 0;
+        while (prefix < source.size() && prefix < target.size() && source.get(prefix).equals(target.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < source.size() - prefix && suffix < target.size() - prefix
+                && source.get(source.size() - 1 - suffix).equals(target.get(target.size() - 1 - suffix))) {
+            suffix++;
+        }
+        final int sourceEnd = source.size() - suffix;
+        final int targetEnd = target.size() - suffix;
+        final int common = Math.min(sourceEnd, targetEnd) - prefix;
+        for (int i = 0; i < common; i++) {
+            diff(path + "/" + (prefix + i), source.get(prefix + i), target.get(prefix + i), patch);
+        }
+        // removing from the back keeps the indices of the elements still to be removed valid
+        for (int i = sourceEnd - 1; i >= prefix + common; i--) {
+            patch.add(operation("remove", path + "/" + i, null));
+        }
+        for (int i = prefix + common; i < targetEnd; i++) {
+            patch.add(operation("add", path + "/" + i, target.get(i)));
+        }
+    }
+
+    private static JsonObject operation(final String op, final String path, final JsonElement value) {
+        final JsonObject operation = new JsonObject();
+        operation.addProperty("op", op);
+        operation.addProperty("path", path);
+        if (value != null) {
+            operation.add("value", value);
+        }
+        return operation;
+    }
+
+    /**
+     * @return the patched document, which is {@code document} itself unless the patch replaces the root
+     * @throws IllegalArgumentException if the patch is malformed or doesn't fit the document, which may be left half patched
+     */
+    static JsonElement apply(final JsonElement document, final JsonArray patch) {
+        JsonElement root = document;
+        for (final JsonElement operationElement : patch) {
+            if (!operationElement.isJsonObject()) throw new IllegalArgumentException("not an operation: " + operationElement);
+            final JsonObject operation = operationElement.getAsJsonObject();
+            final String op = string(operation, "op");
+            final String path = string(operation, "path");
+            final JsonElement value = operation.get("value");
+            if (path.isEmpty()) {
+                if (!"replace".equals(op) && !"add".equals(op)) throw new IllegalArgumentException("cannot " + op + " the root");
+                root = requireValue(value, path);
+                continue;
+            }
+            if (!path.startsWith("/")) throw new IllegalArgumentException("invalid pointer: " + path);
+            final int lastSlash = path.lastIndexOf('/');
+            final JsonElement parent = resolve(root, path.substring(0, lastSlash));
+            final String token = unescape(path.substring(lastSlash + 1));
+            if (parent.isJsonObject()) {
+                final JsonObject parentObject = parent.getAsJsonObject();
+                if ("remove".equals(op)) {
+                    requirePresent(parentObject.remove(token), path);
+                }
+                else if ("add".equals(op) || "replace".equals(op)) {
+                    if ("replace".equals(op)) {
+                        requirePresent(parentObject.get(token), path);
+                    }
+                    parentObject.add(token, requireValue(value, path));
+                }
+                else {
+                    throw new IllegalArgumentException("unsupported operation: " + op);
+                }
+            }
+            else if (parent.isJsonArray()) {
+                final JsonArray parentArray = parent.getAsJsonArray();
+                final int index = "-".equals(token) ? parentArray.size() : index(token, path);
+                if ("remove".equals(op)) {
+                    parentArray.remove(requireElement(parentArray, index, path));
+                }
+                else if ("replace".equals(op)) {
+                    parentArray.set(requireElement(parentArray, index, path), requireValue(value, path));
+                }
+                else if ("add".equals(op)) {
+                    insert(parentArray, index, requireValue(value, path));
+                }
+                else {
+                    throw new IllegalArgumentException("unsupported operation: " + op);
+                }
+            }
+            else {
+                throw new IllegalArgumentException("no container at " + path);
+            }
+        }
+        return root;
+    }
+
+    private static JsonElement resolve(final JsonElement root, final String pointer) {
+        JsonElement current = root;
+        if (pointer.isEmpty()) {
+            return current;
+        }
+        for (final String escapedToken : pointer.substring(1).split("/", -1)) {
+            final String token = unescape(escapedToken);
+            if (current.isJsonObject()) {
+                current = current.getAsJsonObject().get(token);
+            }
+            else if (current.isJsonArray()) {
+                final JsonArray array = current.getAsJsonArray();
+                current = array.get(requireElement(array, index(token, pointer), pointer));
+            }
+            else {
+                current = null;
+            }
+            requirePresent(current, pointer);
+        }
+        return current;
+    }
+
+    private static void insert(final JsonArray array, final int index, final JsonElement value) {
+        if (index < 0 || index > array.size()) throw new IllegalArgumentException("index out of bounds: " + index);
+        array.add(value);
+        for (int i = array.size() - 1; i > index; i--) {
+            array.set(i, array.get(i - 1));
+        }
+        array.set(index, value);
+    }
+
+    private static int index(final String token, final String path) {
+        try {
+            return Integer.parseInt(token);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid array index in " + path, e);
+        }
+    }
+
+    private static int requireElement(final JsonArray array, final int index, final String path) {
+        if (index < 0 || index >= array.size()) throw new IllegalArgumentException("nothing at " + path);
+        return index;
+    }
+
+    private static String string(final JsonObject operation, final String name) {
+        final JsonElement member = operation.get(name);
+        if (member == null || !member.isJsonPrimitive() || !member.getAsJsonPrimitive().isString()) {
+            throw new IllegalArgumentException("operation has no " + name + ": " + operation);
+        }
+        return member.getAsString();
+    }
+
+    private static void requirePresent(final JsonElement element, final String path) {
+        if (element == null) throw new IllegalArgumentException("nothing at " + path);
+    }
+
+    private static JsonElement requireValue(final JsonElement value, final String path) {
+        if (value == null) throw new IllegalArgumentException("no value for " + path);
+        return value;
+    }
+
+    private static String escape(final String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String unescape(final String token) {
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+}
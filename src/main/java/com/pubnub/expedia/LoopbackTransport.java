@@ -0,0 +1,197 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNubException;
+import com.pubnub.api.builder.PubNubErrorBuilder;
+import com.pubnub.api.callbacks.SubscribeCallback;
+import com.pubnub.api.models.consumer.PNPublishResult;
+import com.pubnub.api.models.consumer.pubsub.BasePubSubResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link ChunkTransport}: every publish is delivered to every listener, on one thread like the PubNub SDK
+ * does, after the configured latency. Loss, duplication, reordering and publish failures can be injected to see how
+ * publishing and reassembly hold up without a network. Keeps the last {@link #historySize(int)} messages per channel
+ * so it can also serve as the {@link MessageHistory} for gap recovery.
+ */
+public class LoopbackTransport implements ChunkTransport, MessageHistory, AutoCloseable {
+    private final List<SubscribeCallback> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Deque<PNMessageResult>> history = new ConcurrentHashMap<>();
+    private final AtomicLong lastTimeToken = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "greedy-pubnub-loopback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Random random = new Random();
+    private Duration latency = Duration.ZERO;
+    private Duration reorderWindow = Duration.ZERO;
+    private double lossRate;
+    private double duplicationRate;
+    private double publishFailureRate;
+    private int historySize;
+
+    public LoopbackTransport latency(final Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Every delivery is delayed by a random extra amount up to {@code reorderWindow}, so chunks published within
+     * that window can arrive in any order.
+     */
+    public LoopbackTransport reorderWindow(final Duration reorderWindow) {
+        this.reorderWindow = reorderWindow;
+        return this;
+    }
+
+    /**
+     * @param lossRate probability that a listener never receives a published message
+     */
+    public LoopbackTransport lossRate(final double lossRate) {
+        this.lossRate = lossRate;
+        return this;
+    }
+
+    /**
+     * @param duplicationRate probability that a listener receives a published message twice
+     */
+    public LoopbackTransport duplicationRate(final double duplicationRate) {
+        this.duplicationRate = duplicationRate;
+        return this;
+    }
+
+    /**
+     * @param publishFailureRate probability that a publish fails and is neither delivered nor kept in history
+     */
+    public LoopbackTransport publishFailureRate(final double publishFailureRate) {
+        this.publishFailureRate = publishFailureRate;
+        return this;
+    }
+
+    public LoopbackTransport historySize(final int historySize) {
+        this.historySize = historySize;
+        return this;
+    }
+
+    public LoopbackTransport seed(final long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<PNPublishResult> publish(final String channel, final JsonObject message, final boolean usePOST) {
+        final CompletableFuture<PNPublishResult> published = new CompletableFuture<>();
+        final long timeToken = nextTimeToken();
+        final long latencyNanos = latency.toNanos();
+        if (chance(publishFailureRate)) {
+            scheduler.schedule(() -> published.completeExceptionally(PubNubException.builder()
+                    .pubnubError(PubNubErrorBuilder.PNERROBJ_HTTP_ERROR)
+                    .errormsg("injected publish failure")
+                    .build()), latencyNanos, TimeUnit.NANOSECONDS);
+            return published;
+        }
+
+        final PNMessageResult pnMessageResult = new PNMessageResult(
+                new BasePubSubResult(channel, channel, channel, null, timeToken, null, "loopback"), message);
+        remember(channel, pnMessageResult);
+        for (final SubscribeCallback listener : listeners) {
+            if (chance(lossRate)) {
+                continue;
+            }
+            final int copies = chance(duplicationRate) ? 2 : 1;
+            for (int copy = 0; copy < copies; copy++) {
+                scheduler.schedule(() -> listener.message(null, pnMessageResult), latencyNanos + reorderDelayNanos(),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+        scheduler.schedule(() -> published.complete(PNPublishResult.builder().timetoken(timeToken).build()),
+                latencyNanos, TimeUnit.NANOSECONDS);
+        return published;
+    }
+
+    @Override
+    public CompletableFuture<List<PNMessageResult>> fetch(final String channel, final long startTimeToken, final long endTimeToken) {
+        final List<PNMessageResult> fetched = new ArrayList<>();
+        final Deque<PNMessageResult> channelHistory = history.get(channel);
+        if (channelHistory != null) {
+            synchronized (channelHistory) {
+                for (final PNMessageResult pnMessageResult : channelHistory) {
+                    if (pnMessageResult.getTimetoken() >= startTimeToken && pnMessageResult.getTimetoken() <= endTimeToken) {
+                        fetched.add(pnMessageResult);
+                    }
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(fetched);
+    }
+
+    @Override
+    public void addListener(final SubscribeCallback listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(final SubscribeCallback listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        history.clear();
+    }
+
+    private void remember(final String channel, final PNMessageResult pnMessageResult) {
+        if (historySize == 0) {
+            return;
+        }
+        final Deque<PNMessageResult> channelHistory = history.computeIfAbsent(channel, key -> new ArrayDeque<>());
+        synchronized (channelHistory) {
+            channelHistory.addLast(pnMessageResult);
+            while (channelHistory.size() > historySize) {
+                channelHistory.removeFirst();
+            }
+        }
+    }
+
+    private long nextTimeToken() {
+        final long now = System.currentTimeMillis() * 10_000;
+        return lastTimeToken.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    private boolean chance(final double probability) {
+        if (probability <= 0.0) {
+            return false;
+        }
+        synchronized (this) {
+            return random.nextDouble() < probability;
+        }
+    }
+
+    private long reorderDelayNanos() {
+        final long window = reorderWindow.toNanos();
+        if (window <= 0) {
+            return 0L;
+        }
+        synchronized (this) {
+            return (long) (random.nextDouble() * window);
+        }
+    }
+}
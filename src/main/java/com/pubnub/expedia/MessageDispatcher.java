@@ -0,0 +1,45 @@
+package com.pubnub.expedia;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides on which thread assembled messages are handed to listeners. Deliveries for one channel must run in the order
+ * they were dispatched.
+ */
+public interface MessageDispatcher extends AutoCloseable {
+    enum BackpressurePolicy {
+        BLOCK, DROP
+    }
+
+    /**
+     * @return {@code false} if the delivery was rejected and will never run
+     */
+    boolean dispatch(String channel, Runnable delivery);
+
+    @Override
+    default void close() {}
+
+    static MessageDispatcher direct() {
+        return (channel, delivery) -> {
+            delivery.run();
+            return true;
+        };
+    }
+
+    static MessageDispatcher ordered(final Executor executor, final int maxQueuedDeliveries, final BackpressurePolicy backpressurePolicy) {
+        return new OrderedMessageDispatcher(executor, maxQueuedDeliveries, backpressurePolicy, null);
+    }
+
+    static MessageDispatcher striped(final int threads, final int maxQueuedDeliveries, final BackpressurePolicy backpressurePolicy) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "greedy-pubnub-dispatch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new OrderedMessageDispatcher(executorService, maxQueuedDeliveries, backpressurePolicy, executorService);
+    }
+}
@@ -0,0 +1,77 @@
+package com.pubnub.expedia;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Deadline queue of in-flight messages swept from the scheduler thread, so incoming chunks never scan the whole map.
+ * Deadlines move forward as parts arrive; an entry whose message got extended is simply re-queued when it comes up.
+ */
+class MessageExpiry implements AutoCloseable {
+    private static class Deadline implements Comparable<Deadline> {
+        private final String wholeMessageShaSum;
+        private final long deadlineNanos;
+
+        private Deadline(final String wholeMessageShaSum, final long deadlineNanos) {
+            this.wholeMessageShaSum = wholeMessageShaSum;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public int compareTo(final Deadline other) {
+            return Long.compare(deadlineNanos - other.deadlineNanos, 0);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Message> messages;
+    private final ReassemblyConfiguration configuration;
+    private final BiConsumer<String, Message> onExpired;
+    private final PriorityBlockingQueue<Deadline> deadlines = new PriorityBlockingQueue<>();
+    private final ScheduledFuture<?> sweeping;
+
+    MessageExpiry(final ConcurrentHashMap<String, Message> messages, final ReassemblyConfiguration configuration,
+                  final BiConsumer<String, Message> onExpired) {
+        this.messages = messages;
+        this.configuration = configuration;
+        this.onExpired = onExpired;
+        final long interval = configuration.getExpirySweepInterval().toNanos();
+        this.sweeping = configuration.getScheduler().scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    void track(final String wholeMessageShaSum, final Message message) {
+        deadlines.add(new Deadline(wholeMessageShaSum, message.deadlineNanos(configuration)));
+    }
+
+    void sweep() {
+        final long now = System.nanoTime();
+        Deadline deadline;
+        while ((deadline = deadlines.poll()) != null) {
+            if (deadline.deadlineNanos - now > 0) {
+                deadlines.add(deadline);
+                break;
+            }
+            final Message[] expired = {null};
+            messages.computeIfPresent(deadline.wholeMessageShaSum, (wholeMessageShaSum, current) -> {
+                final long messageDeadline = current.deadlineNanos(configuration);
+                if (messageDeadline - now <= 0) {
+                    expired[0] = current;
+                    return null;
+                }
+                deadlines.add(new Deadline(wholeMessageShaSum, messageDeadline));
+                return current;
+            });
+            if (expired[0] != null) {
+                onExpired.accept(deadline.wholeMessageShaSum, expired[0]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        sweeping.cancel(false);
+        deadlines.clear();
+    }
+}
@@ -0,0 +1,17 @@
+package com.pubnub.expedia;
+
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read access to messages already published to a channel, used to recover parts a subscriber missed.
+ */
+public interface MessageHistory {
+    /**
+     * @return messages published to {@code channel} with timetokens from {@code startTimeToken} to
+     * {@code endTimeToken}, both inclusive, in any order
+     */
+    CompletableFuture<List<PNMessageResult>> fetch(String channel, long startTimeToken, long endTimeToken);
+}
@@ -0,0 +1,231 @@
+package com.pubnub.expedia;
+
+import com.google.gson.stream.JsonReader;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static com.pubnub.expedia.PublishUtils.encode;
+import static com.pubnub.expedia.PublishUtils.newSha256Digest;
+
+/**
+ * A chunked message handed to a {@link GreedyPubNub.ChunksAwareSubscribeCallback#streamsMessages() streaming listener}
+ * while its parts are still arriving. Bytes come in manifest order; reads block until the next part is there and fail
+ * with an {@link IOException} if the message is dropped. Reading to the end, or closing, checks the whole message
+ * against its shasum.
+ */
+public class MessageStream implements Closeable {
+    private static final int DRAIN_BUFFER_SIZE = 8 * 1024;
+
+    private static class PartsInputStream extends InputStream {
+        private final Message message;
+        private int position;
+        private byte[] part = new byte[0];
+        private int offset;
+        private boolean ended;
+        private boolean released;
+
+        private PartsInputStream(final Message message) {
+            this.message = message;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextPart()) {
+                return -1;
+            }
+            return part[offset++] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int off, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextPart()) {
+                return -1;
+            }
+            final int toCopy = Math.min(length, part.length - offset);
+            System.arraycopy(part, offset, bytes, off, toCopy);
+            offset += toCopy;
+            return toCopy;
+        }
+
+        private boolean nextPart() throws IOException {
+            while (offset == part.length) {
+                if (ended || released) {
+                    return false;
+                }
+                final byte[] next = message.awaitPart(position);
+                if (next == null) {
+                    ended = true;
+                    return false;
+                }
+                position++;
+                part = next;
+                offset = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                message.streamClosed();
+            }
+        }
+    }
+
+    private static class VerifyingInputStream extends FilterInputStream {
+        private final Message message;
+        private final MessageDigest digest = newSha256Digest();
+        private boolean verified;
+
+        private VerifyingInputStream(final InputStream inputStream, final Message message) {
+            super(inputStream);
+            this.message = message;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b == -1) {
+                verify();
+            }
+            else {
+                digest.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            final int read = super.read(bytes, offset, length);
+            if (read == -1) {
+                verify();
+            }
+            else {
+                digest.update(bytes, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes still count towards the shasum
+            final byte[] skipped = new byte[(int) Math.min(n, DRAIN_BUFFER_SIZE)];
+            final int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void verify() throws IOException {
+            if (verified) {
+                return;
+            }
+            verified = true;
+            final String expected = message.awaitWholeMessageDigest();
+            if (!encode(digest.digest()).equals(expected)) {
+                throw new IOException("streamed message doesn't match its shasum " + expected);
+            }
+        }
+    }
+
+    private final String channel;
+    private final Long timeToken;
+    private final String publisher;
+    private final Compression compression;
+    private final PartsInputStream partsInputStream;
+
+    private InputStream inputStream;
+    private boolean closed;
+
+    MessageStream(final Message message, final PNMessageResult pnMessageResult) {
+        this.channel = message.getChannel();
+        this.timeToken = pnMessageResult.getTimetoken();
+        this.publisher = pnMessageResult.getPublisher();
+        this.compression = message.getStreamCompression();
+        this.partsInputStream = new PartsInputStream(message);
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return timetoken of the part the stream was started with
+     */
+    public Long getTimetoken() {
+        return timeToken;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * @return the message as published, {@code {"timestamp":...,"data":...}} in UTF-8, decompressed
+     */
+    public synchronized InputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            inputStream = new VerifyingInputStream(compression.decompressing(partsInputStream), partsInputStream.message);
+        }
+        return inputStream;
+    }
+
+    /**
+     * @return a reader over {@link #getInputStream()} positioned at the value of {@code data}
+     */
+    public JsonReader getJsonReader() throws IOException {
+        final JsonReader jsonReader = new JsonReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if ("data".equals(jsonReader.nextName())) {
+                return jsonReader;
+            }
+            jsonReader.skipValue();
+        }
+        throw new IOException("streamed message has no data");
+    }
+
+    /**
+     * Reads what's left of an opened stream, waiting for parts still missing, and checks it against the shasum.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (inputStream != null) {
+                final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+                while (inputStream.read(buffer, 0, buffer.length) != -1) {
+                    // drained for the shasum check at the end
+                }
+            }
+        }
+        finally {
+            partsInputStream.close();
+        }
+    }
+
+    /**
+     * Lets go of the parts without reading the rest.
+     */
+    synchronized void release() {
+        closed = true;
+        partsInputStream.close();
+    }
+}
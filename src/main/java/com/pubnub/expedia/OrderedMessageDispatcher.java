@@ -0,0 +1,110 @@
+package com.pubnub.expedia;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs deliveries on a shared executor, one channel at a time, in dispatch order. The number of queued deliveries
+ * across all channels is bounded; what happens when the bound is hit is up to the {@link BackpressurePolicy}.
+ * A channel's queue is let go of as soon as it runs dry, so channels seen once don't pile up.
+ */
+class OrderedMessageDispatcher implements MessageDispatcher {
+    private class ChannelQueue implements Runnable {
+        private final String channel;
+        private final Queue<Runnable> deliveries = new ArrayDeque<>();
+        private boolean running;
+
+        private ChannelQueue(final String channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return whether the queue has to be scheduled to run the delivery
+         */
+        synchronized boolean add(final Runnable delivery) {
+            deliveries.add(delivery);
+            final boolean schedule = !running;
+            running = true;
+            return schedule;
+        }
+
+        synchronized boolean isIdle() {
+            return !running && deliveries.isEmpty();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Runnable delivery;
+                synchronized (this) {
+                    delivery = deliveries.poll();
+                    if (delivery == null) {
+                        running = false;
+                    }
+                }
+                if (delivery == null) {
+                    // deliveries are only added under the map's lock, so none can slip in between the check and the removal
+                    channelQueues.computeIfPresent(channel, (key, queue) -> queue == this && isIdle() ? null : queue);
+                    return;
+                }
+                try {
+                    delivery.run();
+                }
+                catch (RuntimeException e) {
+                    Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+                }
+                finally {
+                    capacity.release();
+                }
+            }
+        }
+    }
+
+    private final Executor executor;
+    private final BackpressurePolicy backpressurePolicy;
+    private final Semaphore capacity;
+    private final ExecutorService ownedExecutorService;
+    private final ConcurrentHashMap<String, ChannelQueue> channelQueues = new ConcurrentHashMap<>();
+
+    OrderedMessageDispatcher(final Executor executor, final int maxQueuedDeliveries, final BackpressurePolicy backpressurePolicy,
+                             final ExecutorService ownedExecutorService) {
+        if (maxQueuedDeliveries < 1) throw new IllegalArgumentException("maxQueuedDeliveries must be positive: " + maxQueuedDeliveries);
+        this.executor = executor;
+        this.backpressurePolicy = backpressurePolicy;
+        this.capacity = new Semaphore(maxQueuedDeliveries);
+        this.ownedExecutorService = ownedExecutorService;
+    }
+
+    @Override
+    public boolean dispatch(final String channel, final Runnable delivery) {
+        if (backpressurePolicy == BackpressurePolicy.BLOCK) {
+            capacity.acquireUninterruptibly();
+        }
+        else if (!capacity.tryAcquire()) {
+            return false;
+        }
+        final ChannelQueue[] toSchedule = {null};
+        channelQueues.compute(channel != null ? channel : "", (key, queue) -> {
+            final ChannelQueue target = queue != null ? queue : new ChannelQueue(key);
+            if (target.add(delivery)) {
+                toSchedule[0] = target;
+            }
+            return target;
+        });
+        if (toSchedule[0] != null) {
+            executor.execute(toSchedule[0]);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutorService != null) {
+            ownedExecutorService.shutdown();
+        }
+    }
+}
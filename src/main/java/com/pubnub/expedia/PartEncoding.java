@@ -0,0 +1,103 @@
+package com.pubnub.expedia;
+
+import java.nio.ByteBuffer;
+
+/**
+ * How part data is carried inside the JSON of a part chunk. Declared on every part, so it can be decoded
+ * as it arrives, and in the final manifest for the whole message.
+ */
+public enum PartEncoding {
+    /**
+     * Raw bytes as Base64; works for any payload and transport.
+     */
+    BASE64(null) {
+        @Override
+        int decodedLength(final String data) {
+            return Base64Slots.decodedLength(data);
+        }
+
+        @Override
+        int decodeInto(final String data, final byte[] destination, final int offset) {
+            return Base64Slots.decodeInto(data, destination, offset);
+        }
+
+        @Override
+        int decodeInto(final String data, final ByteBuffer destination, final int offset) {
+            return Base64Slots.decodeInto(data, destination, offset);
+        }
+    },
+    /**
+     * Raw bytes as Base85: denser than Base64 over POST, but most of its alphabet needs URL-encoding over GET.
+     */
+    BASE85("base85") {
+        @Override
+        int decodedLength(final String data) {
+            return Base85Slots.decodedLength(data);
+        }
+
+        @Override
+        int decodeInto(final String data, final byte[] destination, final int offset) {
+            return Base85Slots.decodeInto(data, destination, offset);
+        }
+
+        @Override
+        int decodeInto(final String data, final ByteBuffer destination, final int offset) {
+            return Base85Slots.decodeInto(data, destination, offset);
+        }
+    },
+    /**
+     * The serialized message itself, cut on code point boundaries and carried as plain JSON strings. Only applies to
+     * uncompressed, non-streamed messages; anything else falls back to {@link #BASE85}.
+     */
+    TEXT("text") {
+        @Override
+        int decodedLength(final String data) {
+            return TextSlots.utf8Length(data);
+        }
+
+        @Override
+        int decodeInto(final String data, final byte[] destination, final int offset) {
+            return TextSlots.decodeInto(data, destination, offset);
+        }
+
+        @Override
+        int decodeInto(final String data, final ByteBuffer destination, final int offset) {
+            return TextSlots.decodeInto(data, destination, offset);
+        }
+    };
+
+    private final String wireName;
+
+    PartEncoding(final String wireName) {
+        this.wireName = wireName;
+    }
+
+    String getWireName() {
+        return wireName;
+    }
+
+    abstract int decodedLength(String data);
+
+    abstract int decodeInto(String data, byte[] destination, int offset);
+
+    abstract int decodeInto(String data, ByteBuffer destination, int offset);
+
+    /**
+     * @return the encoding for parts cut from bytes rather than from the serialized message, which text can't carry
+     */
+    BinaryPartEncoding forBinary() {
+        return this == BASE64 ? BinaryPartEncoding.BASE64 : BinaryPartEncoding.BASE85;
+    }
+
+    static PartEncoding fromWireNameOrNull(final String wireName) {
+        if (wireName == null) {
+            return BASE64;
+        }
+        for (final PartEncoding partEncoding : values()) {
+            if (wireName.equals(partEncoding.wireName)) {
+                return partEncoding;
+            }
+        }
+        return null;
+    }
+}
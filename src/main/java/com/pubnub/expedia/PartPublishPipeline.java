@@ -0,0 +1,257 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNubException;
+import com.pubnub.api.builder.PubNubErrorBuilder;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.GreedyPublish.PublishPartResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps up to {@code partsInFlight} part publishes outstanding and publishes the final chunk
+ * once every submitted part has been acknowledged. Failed publishes are retried as the {@link RetryPolicy} allows;
+ * if a part still can't be published the final chunk is withheld, so subscribers never wait for it. Every publish,
+ * retries included, waits its turn in the message's {@link PublishGovernor} flow if there is one.
+ */
+class PartPublishPipeline {
+    private static class QueuedPart {
+        private final int index;
+        private final String partChannel;
+        private final JsonObject partJsonObject;
+        private final boolean holdsBacklogPermit;
+        private final int attempt;
+
+        private QueuedPart(final int index, final String partChannel, final JsonObject partJsonObject,
+                           final boolean holdsBacklogPermit, final int attempt) {
+            this.index = index;
+            this.partChannel = partChannel;
+            this.partJsonObject = partJsonObject;
+            this.holdsBacklogPermit = holdsBacklogPermit;
+            this.attempt = attempt;
+        }
+
+        private QueuedPart nextAttempt() {
+            return new QueuedPart(index, partChannel, partJsonObject, holdsBacklogPermit, attempt + 1);
+        }
+    }
+
+    private final ChunkTransport transport;
+    private final String channel;
+    private final boolean usePOST;
+    private final Semaphore window;
+    private final Semaphore backlog;
+    private final RetryPolicy retryPolicy;
+    private final ChunkMetrics metrics;
+    private final PublishGovernor.Flow flow;
+    private final long startedNanos = System.nanoTime();
+
+    private final Queue<QueuedPart> queued = new ConcurrentLinkedQueue<>();
+    private final List<PublishPartResult> results = new ArrayList<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong partBytes = new AtomicLong();
+    private final AtomicInteger failedParts = new AtomicInteger();
+    private final AtomicBoolean finalSent = new AtomicBoolean();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final CompletableFuture<GreedyPublishResult> result = new CompletableFuture<>();
+
+    private volatile JsonObject finalChunkJsonObject;
+
+    /**
+     * @param flow what every publish waits its turn in, or {@code null} to publish right away
+     */
+    PartPublishPipeline(final ChunkTransport transport, final String channel, final boolean usePOST, final int partsInFlight,
+                        final RetryPolicy retryPolicy, final ChunkMetrics metrics, final PublishGovernor.Flow flow) {
+        if (partsInFlight < 1) throw new IllegalArgumentException("partsInFlight must be positive: " + partsInFlight);
+        this.transport = transport;
+        this.channel = channel;
+        this.usePOST = usePOST;
+        this.window = new Semaphore(partsInFlight);
+        this.backlog = new Semaphore(partsInFlight);
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+        this.flow = flow;
+    }
+
+    void submit(final JsonObject partJsonObject) {
+        submit(channel, partJsonObject);
+    }
+
+    /**
+     * @param partChannel where the part goes, the pipeline's channel unless it's striped
+     */
+    void submit(final String partChannel, final JsonObject partJsonObject) {
+        enqueue(partChannel, partJsonObject, false);
+    }
+
+    void submitBlocking(final String partChannel, final JsonObject partJsonObject) throws InterruptedException {
+        backlog.acquire();
+        enqueue(partChannel, partJsonObject, true);
+    }
+
+    private void enqueue(final String partChannel, final JsonObject partJsonObject, final boolean holdsBacklogPermit) {
+        if (finalChunkJsonObject != null) throw new IllegalStateException("already sealed");
+        final int index;
+        synchronized (results) {
+            index = results.size();
+            results.add(null);
+        }
+        outstanding.incrementAndGet();
+        queued.add(new QueuedPart(index, partChannel, partJsonObject, holdsBacklogPermit, 1));
+        drain();
+    }
+
+    CompletableFuture<GreedyPublishResult> seal(final JsonObject finalChunkJsonObject) {
+        this.finalChunkJsonObject = finalChunkJsonObject;
+        if (outstanding.get() == 0) {
+            sendFinal();
+        }
+        return result;
+    }
+
+    /**
+     * Only one thread drains at a time. A drain asked for meanwhile, such as by a publish acknowledged right away while
+     * it was being sent, is picked up by another round of the loop instead of recursing.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            while (!queued.isEmpty() && window.tryAcquire()) {
+                final QueuedPart queuedPart = queued.poll();
+                if (queuedPart == null) {
+                    window.release();
+                    continue;
+                }
+                send(queuedPart);
+            }
+            requests = drainRequests.addAndGet(-requests);
+        }
+        while (requests != 0);
+    }
+
+    private void send(final QueuedPart queuedPart) {
+        paced(() -> publish(queuedPart));
+    }
+
+    private void paced(final Runnable publish) {
+        if (flow != null) {
+            flow.submit(publish);
+        }
+        else {
+            publish.run();
+        }
+    }
+
+    private void publish(final QueuedPart queuedPart) {
+        final long startedAt = System.nanoTime();
+        transport.publish(queuedPart.partChannel, queuedPart.partJsonObject, usePOST).whenComplete((pnPublishResult, throwable) -> {
+            final Duration latency = Duration.ofNanos(System.nanoTime() - startedAt);
+            if (throwable != null) {
+                metrics.partFailed(channel, latency.toNanos());
+                final long backoffNanos = retryPolicy.backoffNanos(queuedPart.attempt);
+                if (retryPolicy.allowsRetry(queuedPart.attempt, startedNanos, backoffNanos)) {
+                    retry(queuedPart, backoffNanos);
+                }
+                else {
+                    failedParts.incrementAndGet();
+                    partDone(queuedPart, new PublishPartResult.Failed(toPubNubException(throwable), queuedPart.partJsonObject,
+                            latency, queuedPart.attempt));
+                }
+            }
+            else {
+                final int bytes = TextSlots.utf8Length(queuedPart.partJsonObject.get("data").getAsString());
+                partBytes.addAndGet(bytes);
+                metrics.partPublished(channel, bytes, latency.toNanos());
+                partDone(queuedPart, new PublishPartResult.Successful(pnPublishResult, queuedPart.partJsonObject,
+                        latency, queuedPart.attempt));
+            }
+        });
+    }
+
+    private void retry(final QueuedPart queuedPart, final long backoffNanos) {
+        window.release();
+        drain();
+        retryPolicy.getScheduler().schedule(() -> {
+            queued.add(queuedPart.nextAttempt());
+            drain();
+        }, backoffNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void partDone(final QueuedPart queuedPart, final PublishPartResult publishPartResult) {
+        synchronized (results) {
+            results.set(queuedPart.index, publishPartResult);
+        }
+        window.release();
+        if (queuedPart.holdsBacklogPermit) {
+            backlog.release();
+        }
+        drain();
+        if (outstanding.decrementAndGet() == 0 && finalChunkJsonObject != null) {
+            sendFinal();
+        }
+    }
+
+    private void sendFinal() {
+        if (!finalSent.compareAndSet(false, true)) {
+            return;
+        }
+        final List<PublishPartResult> partsPNPublishResults;
+        synchronized (results) {
+            partsPNPublishResults = new ArrayList<>(results);
+        }
+        if (failedParts.get() > 0) {
+            metrics.messageFailed(channel);
+            result.completeExceptionally(PubNubException.builder()
+                    .pubnubError(PubNubErrorBuilder.PNERROBJ_HTTP_ERROR)
+                    .errormsg(failedParts.get() + " of " + partsPNPublishResults.size() + " parts could not be published, final chunk withheld")
+                    .build());
+            return;
+        }
+        paced(() -> sendFinal(partsPNPublishResults, 1));
+    }
+
+    private void sendFinal(final List<PublishPartResult> partsPNPublishResults, final int attempt) {
+        transport.publish(channel, finalChunkJsonObject, usePOST).whenComplete((pnPublishResult, throwable) -> {
+            if (throwable != null) {
+                final long backoffNanos = retryPolicy.backoffNanos(attempt);
+                if (retryPolicy.allowsRetry(attempt, startedNanos, backoffNanos)) {
+                    retryPolicy.getScheduler().schedule(() -> paced(() -> sendFinal(partsPNPublishResults, attempt + 1)),
+                            backoffNanos, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                metrics.messageFailed(channel);
+                result.completeExceptionally(toPubNubException(throwable));
+            }
+            else {
+                final long bytes = partsPNPublishResults.isEmpty() ? TextSlots.utf8Length(finalChunkJsonObject.toString()) : partBytes.get();
+                metrics.messagePublished(channel, partsPNPublishResults.size(), bytes);
+                result.complete(new GreedyPublishResult(partsPNPublishResults, pnPublishResult));
+            }
+        });
+    }
+
+    private static PubNubException toPubNubException(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (cause instanceof PubNubException) {
+            return (PubNubException) cause;
+        }
+        return PubNubException.builder()
+                .pubnubError(PubNubErrorBuilder.PNERROBJ_HTTP_ERROR)
+                .errormsg(String.valueOf(cause))
+                .build();
+    }
+}
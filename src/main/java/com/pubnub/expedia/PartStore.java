@@ -0,0 +1,40 @@
+package com.pubnub.expedia;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.List;
+
+interface PartStore {
+    /**
+     * @return {@code false} if a part with the same shaSum was already stored
+     */
+    boolean add(Part part);
+
+    boolean contains(String shaSum);
+
+    boolean containsAll(Collection<String> shaSums);
+
+    int size();
+
+    long heapBytes();
+
+    InputStream open(List<String> orderedShaSums);
+
+    /**
+     * @return the decoded parts concatenated, in a single array of exactly their length
+     */
+    byte[] readAll(List<String> orderedShaSums);
+
+    /**
+     * @return the decoded bytes of a single part, a copy the store doesn't hold on to
+     */
+    byte[] read(String shaSum);
+
+    /**
+     * Reads {@link PartEncoding#TEXT} parts back as characters, without a round trip through their UTF-8 bytes where the store can.
+     */
+    Reader openText(List<String> orderedShaSums);
+
+    void release();
+}
@@ -5,29 +5,26 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 
 abstract class Chunk {
-    @Override
-    public String toString() {
-        return "Chunk{" +
-                "pnMessageResult=" + pnMessageResult +
-                '}';
-    }
-
-    public PNMessageResult getPnMessageResult() {
-        return pnMessageResult;
-    }
-
-    private final PNMessageResult pnMessageResult;
+    static final Chunk PASSTHROUGH = new Chunk() {
+        @Override
+        public String toString() {
+            return "Chunk.PASSTHROUGH";
+        }
+    };
 
-    protected Chunk(final PNMessageResult pnMessageResult) {
-        this.pnMessageResult = pnMessageResult;
-    }
+    static final Chunk MALFORMED = new Chunk() {
+        @Override
+        public String toString() {
+            return "Chunk.MALFORMED";
+        }
+    };
 }
 
 class Part extends Chunk {
@@ -36,12 +33,13 @@ class Part extends Chunk {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         final Part part = (Part) o;
-        return Objects.equals(shaSum, part.shaSum) && Objects.equals(partOf, part.partOf) && Objects.equals(data, part.data);
+        return Objects.equals(shaSum, part.shaSum) && Objects.equals(partOf, part.partOf) && Objects.equals(data, part.data)
+                && encoding == part.encoding && Objects.equals(index, part.index) && compression == part.compression;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(shaSum, partOf, data);
+        return Objects.hash(shaSum, partOf, data, encoding, index, compression);
     }
 
     @Override
@@ -50,12 +48,18 @@ class Part extends Chunk {
                 "shaSum='" + shaSum + '\'' +
                 ", partOf='" + partOf + '\'' +
                 ", data='" + data + '\'' +
+                ", encoding=" + encoding +
+                ", index=" + index +
+                ", compression=" + compression +
                 '}';
     }
 
     private final String shaSum;
     private final String partOf;
     private final String data;
+    private final PartEncoding encoding;
+    private final Integer index;
+    private final Compression compression;
 
     public String getShaSum() {
         return shaSum;
@@ -69,11 +73,56 @@ class Part extends Chunk {
         return data;
     }
 
-    Part(final PNMessageResult pnMessageResult, final String shaSum, final String partOf, final String data) {
-        super(pnMessageResult);
+    public PartEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return position of the part's first occurrence in its message, or {@code null} if the message can't be streamed
+     */
+    public Integer getIndex() {
+        return index;
+    }
+
+    /**
+     * @return how the message the part belongs to is compressed, or {@code null} if the part has no {@link #getIndex() index}
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    long retainedBytes() {
+        return data.length();
+    }
+
+    int decodedLength() {
+        return encoding.decodedLength(data);
+    }
+
+    int decodeInto(final byte[] destination, final int offset) {
+        return encoding.decodeInto(data, destination, offset);
+    }
+
+    int decodeInto(final ByteBuffer destination, final int offset) {
+        return encoding.decodeInto(data, destination, offset);
+    }
+
+    Part(final String shaSum, final String partOf, final String data) {
+        this(shaSum, partOf, data, PartEncoding.BASE64);
+    }
+
+    Part(final String shaSum, final String partOf, final String data, final PartEncoding encoding) {
+        this(shaSum, partOf, data, encoding, null, null);
+    }
+
+    Part(final String shaSum, final String partOf, final String data, final PartEncoding encoding,
+         final Integer index, final Compression compression) {
         this.shaSum = shaSum;
         this.partOf = partOf;
         this.data = data;
+        this.encoding = encoding;
+        this.index = index;
+        this.compression = compression;
     }
 }
 
@@ -83,21 +132,66 @@ class Final extends Chunk {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         final Final aFinal = (Final) o;
-        return Objects.equals(shaSum, aFinal.shaSum) && Objects.equals(parts, aFinal.parts);
+        return Objects.equals(shaSum, aFinal.shaSum) && Objects.equals(parts, aFinal.parts) && compression == aFinal.compression
+                && encoding == aFinal.encoding && Objects.equals(reusedSince, aFinal.reusedSince) && baseline == aFinal.baseline
+                && Objects.equals(digest, aFinal.digest) && integrity == aFinal.integrity && Objects.equals(shards, aFinal.shards)
+                && framed == aFinal.framed;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(shaSum, parts);
+        return Objects.hash(shaSum, parts, compression, encoding, reusedSince, baseline, digest, integrity, shards, framed);
     }
 
     private final String shaSum;
     private final List<String> parts;
+    private final Compression compression;
+    private final PartEncoding encoding;
+    private final Long reusedSince;
+    private final boolean baseline;
+    private final String digest;
+    private final Integrity integrity;
+    private final List<String> shards;
+    private final boolean framed;
+
+    Final(final String shaSum, final List<String> parts, final Compression compression) {
+        this(shaSum, parts, compression, PartEncoding.BASE64, null, false, null);
+    }
 
-    Final(final PNMessageResult pnMessageResult, final String shaSum, final List<String> parts) {
-        super(pnMessageResult);
+    Final(final String shaSum, final List<String> parts, final Compression compression, final PartEncoding encoding,
+          final Long reusedSince, final boolean baseline) {
+        this(shaSum, parts, compression, encoding, reusedSince, baseline, null);
+    }
+
+    Final(final String shaSum, final List<String> parts, final Compression compression, final PartEncoding encoding,
+          final Long reusedSince, final boolean baseline, final String digest) {
+        this(shaSum, parts, compression, encoding, reusedSince, baseline, digest, Integrity.SHA256);
+    }
+
+    Final(final String shaSum, final List<String> parts, final Compression compression, final PartEncoding encoding,
+          final Long reusedSince, final boolean baseline, final String digest, final Integrity integrity) {
+        this(shaSum, parts, compression, encoding, reusedSince, baseline, digest, integrity, Collections.emptyList());
+    }
+
+    Final(final String shaSum, final List<String> parts, final Compression compression, final PartEncoding encoding,
+          final Long reusedSince, final boolean baseline, final String digest, final Integrity integrity,
+          final List<String> shards) {
+        this(shaSum, parts, compression, encoding, reusedSince, baseline, digest, integrity, shards, false);
+    }
+
+    Final(final String shaSum, final List<String> parts, final Compression compression, final PartEncoding encoding,
+          final Long reusedSince, final boolean baseline, final String digest, final Integrity integrity,
+          final List<String> shards, final boolean framed) {
         this.shaSum = shaSum;
         this.parts = parts;
+        this.compression = compression;
+        this.encoding = encoding;
+        this.reusedSince = reusedSince;
+        this.baseline = baseline;
+        this.digest = digest;
+        this.integrity = integrity;
+        this.shards = shards;
+        this.framed = framed;
     }
 
     @Override
@@ -105,6 +199,14 @@ class Final extends Chunk {
         return "Final{" +
                 "shaSum='" + shaSum + '\'' +
                 ", parts=" + parts +
+                ", compression=" + compression +
+                ", encoding=" + encoding +
+                ", reusedSince=" + reusedSince +
+                ", baseline=" + baseline +
+                ", digest='" + digest + '\'' +
+                ", integrity=" + integrity +
+                ", shards=" + shards +
+                ", framed=" + framed +
                 '}';
     }
 
@@ -115,87 +217,335 @@ class Final extends Chunk {
     public List<String> getParts() {
         return parts;
     }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public PartEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return timetoken of the oldest part left out because it was published with an earlier message, or {@code null}
+     */
+    public Long getReusedSince() {
+        return reusedSince;
+    }
+
+    /**
+     * @return whether this message is a snapshot later delta messages on its channel are patches against
+     */
+    public boolean isBaseline() {
+        return baseline;
+    }
+
+    /**
+     * @return SHA-256 of the uncompressed message, for streamed publishes whose {@link #getShaSum() shaSum} is a message id
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return what the part ids in the manifest are checksums of
+     */
+    public Integrity getIntegrity() {
+        return integrity;
+    }
+
+    /**
+     * @return channels the parts went to round-robin, see {@link ChannelStriping}; empty if they went to the final chunk's
+     */
+    public List<String> getShards() {
+        return shards;
+    }
+
+    /**
+     * @return whether the message is a delta or a batch chunk to unpack once assembled, rather than data as published
+     */
+    public boolean isFramed() {
+        return framed;
+    }
+
+    /**
+     * @return what the uncompressed message is checked against
+     */
+    String wholeMessageDigest() {
+        return digest != null ? digest : shaSum;
+    }
 }
 
+class Delta extends Chunk {
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Delta delta = (Delta) o;
+        return Objects.equals(base, delta.base) && Objects.equals(baseTimeToken, delta.baseTimeToken) && Objects.equals(patch, delta.patch);
+    }
 
-final class PartUtils {
-    private PartUtils() {}
+    @Override
+    public int hashCode() {
+        return Objects.hash(base, baseTimeToken, patch);
+    }
 
-    static Optional<String> extractString(final PNMessageResult pnMessageResult, final String key) {
-        final JsonElement jsonElement = pnMessageResult.getMessage();
-        if (jsonElement != null) {
-            try {
-                final JsonObject jsonObject = jsonElement.getAsJsonObject();
-                final String type = jsonObject.get(key).getAsString();
-                return Optional.of(type);
-            } catch (IllegalStateException | ClassCastException ise) {
-                return Optional.empty();
-            }
-        } else {
-            return Optional.empty();
-        }
+    @Override
+    public String toString() {
+        return "Delta{" +
+                "base='" + base + '\'' +
+                ", baseTimeToken=" + baseTimeToken +
+                ", patch=" + patch +
+                '}';
     }
 
-    static Optional<String> extractData(final PNMessageResult pnMessageResult) {
-        return extractString(pnMessageResult, "data");
+    private final String base;
+    private final Long baseTimeToken;
+    private final JsonArray patch;
+
+    Delta(final String base, final Long baseTimeToken, final JsonArray patch) {
+        this.base = base;
+        this.baseTimeToken = baseTimeToken;
+        this.patch = patch;
     }
 
-    static Optional<String> extractPartOf(final PNMessageResult pnMessageResult) {
-        return extractString(pnMessageResult, "partof");
+    public String getBase() {
+        return base;
     }
 
-    static Optional<String> extractShaSum(final PNMessageResult pnMessageResult) {
-        return extractString(pnMessageResult, "shasum");
+    public Long getBaseTimeToken() {
+        return baseTimeToken;
     }
 
-    static Optional<String> extractType(final PNMessageResult pnMessageResult) {
-        return extractString(pnMessageResult, "type");
+    public JsonArray getPatch() {
+        return patch;
     }
+}
 
-    static boolean isPartChunk(final PNMessageResult pnMessageResult) {
-        return extractType(pnMessageResult)
-                .map(it -> it.equals("part"))
-                .orElse(false);
+class Whole extends Chunk {
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Whole whole = (Whole) o;
+        return Objects.equals(data, whole.data);
     }
 
-    static boolean isFinalChunk(final PNMessageResult pnMessageResult) {
-        return extractType(pnMessageResult)
-                .map(it -> it.equals("final"))
-                .orElse(false);
+    @Override
+    public int hashCode() {
+        return Objects.hash(data);
     }
 
-    static boolean isChunk(final PNMessageResult pnMessageResult) {
-        return isFinalChunk(pnMessageResult) || isPartChunk(pnMessageResult);
+    @Override
+    public String toString() {
+        return "Whole{" +
+                "data=" + data +
+                '}';
     }
 
-    static Optional<Final> extractFinalChunk(final PNMessageResult pnMessageResult) {
-        return extractShaSum(pnMessageResult)
-                .map(shaSum -> new Final(pnMessageResult, shaSum, extractParts(pnMessageResult)));
+    private final JsonElement data;
+
+    Whole(final JsonElement data) {
+        this.data = data;
+    }
+
+    /**
+     * @return the message as published, which would have passed for a chunk without the wrapping
+     */
+    public JsonElement getData() {
+        return data;
+    }
+}
+
+class Batch extends Chunk {
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Batch batch = (Batch) o;
+        return Objects.equals(messages, batch.messages);
     }
 
-    static List<String> extractParts(final PNMessageResult pnMessageResult) {
+    @Override
+    public int hashCode() {
+        return Objects.hash(messages);
+    }
+
+    @Override
+    public String toString() {
+        return "Batch{" +
+                "messages=" + messages +
+                '}';
+    }
+
+    private final List<JsonObject> messages;
+
+    Batch(final List<JsonObject> messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * @return the batched messages in publish order, each with its {@code timestamp} and {@code data}
+     */
+    public List<JsonObject> getMessages() {
+        return messages;
+    }
+}
+
+
+final class PartUtils {
+    private PartUtils() {}
+
+    static Chunk classify(final PNMessageResult pnMessageResult) {
         final JsonElement jsonElement = pnMessageResult.getMessage();
-        if (jsonElement != null) {
-            try {
-                final JsonObject jsonObject = jsonElement.getAsJsonObject();
-                final JsonArray partsJsonArray = jsonObject.get("parts").getAsJsonArray();
-                final List<String> parts = new ArrayList<>();
-                partsJsonArray.forEach(jsonElementFromArray -> {
-                    parts.add(jsonElementFromArray.getAsString());
-                });
-                return parts;
-            } catch (IllegalStateException | ClassCastException ise) {
-                return Collections.emptyList();
+        if (jsonElement == null || !jsonElement.isJsonObject()) {
+            return Chunk.PASSTHROUGH;
+        }
+        final JsonObject jsonObject = jsonElement.getAsJsonObject();
+        final String type = string(jsonObject, "type");
+        if ("part".equals(type)) {
+            return part(jsonObject);
+        }
+        else if ("final".equals(type)) {
+            return finalChunk(jsonObject);
+        }
+        else if ("delta".equals(type)) {
+            return delta(jsonObject);
+        }
+        else if ("batch".equals(type)) {
+            return batch(jsonObject);
+        }
+        else if ("whole".equals(type)) {
+            final JsonElement data = jsonObject.get("data");
+            return data != null ? new Whole(data) : Chunk.MALFORMED;
+        }
+        else {
+            return Chunk.PASSTHROUGH;
+        }
+    }
+
+    /**
+     * @return whether a message published as is would be taken for a chunk by {@link #classify}
+     */
+    static boolean looksLikeChunk(final JsonObject jsonObject) {
+        final String type = string(jsonObject, "type");
+        return "part".equals(type) || "final".equals(type) || "delta".equals(type) || "batch".equals(type) || "whole".equals(type);
+    }
+
+    private static Chunk part(final JsonObject jsonObject) {
+        final String shaSum = string(jsonObject, "shasum");
+        final String partOf = string(jsonObject, "partof");
+        final String data = string(jsonObject, "data");
+        final PartEncoding encoding = PartEncoding.fromWireNameOrNull(string(jsonObject, "encoding"));
+        if (shaSum == null || partOf == null || data == null || encoding == null) {
+            return Chunk.MALFORMED;
+        }
+        final JsonElement indexJsonElement = jsonObject.get("index");
+        if (indexJsonElement == null) {
+            return new Part(shaSum, partOf, data, encoding);
+        }
+        final Compression compression = Compression.fromWireNameOrNull(string(jsonObject, "compression"));
+        if (!isNumber(indexJsonElement) || indexJsonElement.getAsLong() < 0 || indexJsonElement.getAsLong() > Integer.MAX_VALUE
+                || compression == null) {
+            return Chunk.MALFORMED;
+        }
+        return new Part(shaSum, partOf, data, encoding, indexJsonElement.getAsInt(), compression);
+    }
+
+    private static Chunk finalChunk(final JsonObject jsonObject) {
+        final String shaSum = string(jsonObject, "shasum");
+        final JsonElement partsJsonElement = jsonObject.get("parts");
+        if (shaSum == null || partsJsonElement == null || !partsJsonElement.isJsonArray()) {
+            return Chunk.MALFORMED;
+        }
+        final JsonArray partsJsonArray = partsJsonElement.getAsJsonArray();
+        final List<String> parts = new ArrayList<>(partsJsonArray.size());
+        for (final JsonElement partJsonElement : partsJsonArray) {
+            final String partShaSum = string(partJsonElement);
+            if (partShaSum == null) {
+                return Chunk.MALFORMED;
             }
-        } else {
-            return Collections.emptyList();
+            parts.add(partShaSum);
+        }
+        final Compression compression = Compression.fromWireNameOrNull(string(jsonObject, "compression"));
+        final PartEncoding encoding = PartEncoding.fromWireNameOrNull(string(jsonObject, "encoding"));
+        final Integrity integrity = Integrity.fromWireNameOrNull(string(jsonObject, "integrity"));
+        final JsonElement reusedSinceJsonElement = jsonObject.get("reusedsince");
+        if (compression == null || encoding == null || integrity == null
+                || (reusedSinceJsonElement != null && !isNumber(reusedSinceJsonElement))) {
+            return Chunk.MALFORMED;
         }
+        final boolean baseline = flag(jsonObject, "baseline");
+        final List<String> shards = new ArrayList<>();
+        final JsonElement shardsJsonElement = jsonObject.get("shards");
+        if (shardsJsonElement != null) {
+            if (!shardsJsonElement.isJsonArray() || shardsJsonElement.getAsJsonArray().size() == 0) {
+                return Chunk.MALFORMED;
+            }
+            for (final JsonElement shardJsonElement : shardsJsonElement.getAsJsonArray()) {
+                final String shard = string(shardJsonElement);
+                if (shard == null) {
+                    return Chunk.MALFORMED;
+                }
+                shards.add(shard);
+            }
+        }
+        return new Final(shaSum, parts, compression, encoding,
+                reusedSinceJsonElement != null ? reusedSinceJsonElement.getAsLong() : null, baseline, string(jsonObject, "digest"),
+                integrity, shards, flag(jsonObject, "framed"));
+    }
+
+    private static Chunk delta(final JsonObject jsonObject) {
+        final String base = string(jsonObject, "base");
+        final JsonElement patchJsonElement = jsonObject.get("patch");
+        final JsonElement baseTimeTokenJsonElement = jsonObject.get("basetimetoken");
+        if (base == null || patchJsonElement == null || !patchJsonElement.isJsonArray()
+                || (baseTimeTokenJsonElement != null && !isNumber(baseTimeTokenJsonElement))) {
+            return Chunk.MALFORMED;
+        }
+        return new Delta(base, baseTimeTokenJsonElement != null ? baseTimeTokenJsonElement.getAsLong() : null,
+                patchJsonElement.getAsJsonArray());
+    }
+
+    private static Chunk batch(final JsonObject jsonObject) {
+        final JsonElement messagesJsonElement = jsonObject.get("messages");
+        if (messagesJsonElement == null || !messagesJsonElement.isJsonArray()) {
+            return Chunk.MALFORMED;
+        }
+        final JsonArray messagesJsonArray = messagesJsonElement.getAsJsonArray();
+        final List<JsonObject> messages = new ArrayList<>(messagesJsonArray.size());
+        for (final JsonElement messageJsonElement : messagesJsonArray) {
+            if (!messageJsonElement.isJsonObject()) {
+                return Chunk.MALFORMED;
+            }
+            final JsonObject message = messageJsonElement.getAsJsonObject();
+            final JsonElement timestamp = message.get("timestamp");
+            if (!message.has("data") || timestamp == null || !isNumber(timestamp)) {
+                return Chunk.MALFORMED;
+            }
+            messages.add(message);
+        }
+        return new Batch(messages);
+    }
+
+    private static boolean flag(final JsonObject jsonObject, final String key) {
+        final JsonElement jsonElement = jsonObject.get(key);
+        return jsonElement != null && jsonElement.isJsonPrimitive() && jsonElement.getAsJsonPrimitive().isBoolean()
+                && jsonElement.getAsBoolean();
     }
 
-    static Optional<Part> extractPartChunk(final PNMessageResult pnMessageResult) {
-        return extractShaSum(pnMessageResult).flatMap(shaSum ->
-                extractPartOf(pnMessageResult).flatMap(partOf ->
-                        extractData(pnMessageResult).map(data -> new Part(pnMessageResult, shaSum, partOf, data))));
+    private static String string(final JsonObject jsonObject, final String key) {
+        return string(jsonObject.get(key));
     }
 
+    private static boolean isNumber(final JsonElement jsonElement) {
+        return jsonElement.isJsonPrimitive() && jsonElement.getAsJsonPrimitive().isNumber();
+    }
+
+    private static String string(final JsonElement jsonElement) {
+        if (jsonElement != null && jsonElement.isJsonPrimitive() && jsonElement.getAsJsonPrimitive().isString()) {
+            return jsonElement.getAsString();
+        }
+        return null;
+    }
 }
@@ -0,0 +1,71 @@
+package com.pubnub.expedia;
+
+import com.pubnub.api.PubNub;
+import com.pubnub.api.callbacks.PNCallback;
+import com.pubnub.api.models.consumer.PNStatus;
+import com.pubnub.api.models.consumer.history.PNFetchMessageItem;
+import com.pubnub.api.models.consumer.history.PNFetchMessagesResult;
+import com.pubnub.api.models.consumer.pubsub.BasePubSubResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * {@link MessageHistory} backed by PubNub message persistence, paging through {@code fetchMessages}.
+ * Requires the Storage & Playback add-on on the keyset.
+ */
+public class PubNubMessageHistory implements MessageHistory {
+    private static final int MAXIMUM_PER_PAGE = 100;
+
+    private final PubNub pubNub;
+
+    public PubNubMessageHistory(final PubNub pubNub) {
+        this.pubNub = pubNub;
+    }
+
+    @Override
+    public CompletableFuture<List<PNMessageResult>> fetch(final String channel, final long startTimeToken, final long endTimeToken) {
+        final CompletableFuture<List<PNMessageResult>> fetched = new CompletableFuture<>();
+        fetchPage(channel, startTimeToken, endTimeToken + 1, new ArrayList<>(), fetched);
+        return fetched;
+    }
+
+    private void fetchPage(final String channel, final long oldestTimeToken, final long newerThanTimeToken,
+                           final List<PNMessageResult> messages, final CompletableFuture<List<PNMessageResult>> fetched) {
+        pubNub.fetchMessages()
+                .channels(singletonList(channel))
+                .start(newerThanTimeToken)
+                .end(oldestTimeToken)
+                .maximumPerChannel(MAXIMUM_PER_PAGE)
+                .includeMeta(true)
+                .async(new PNCallback<PNFetchMessagesResult>() {
+                    @Override
+                    public void onResponse(final PNFetchMessagesResult pnFetchMessagesResult, final PNStatus pnStatus) {
+                        if (pnStatus.isError()) {
+                            fetched.completeExceptionally(PubNubTransport.toPubNubException(pnStatus));
+                            return;
+                        }
+                        final List<PNFetchMessageItem> items = pnFetchMessagesResult.getChannels() != null
+                                ? pnFetchMessagesResult.getChannels().getOrDefault(channel, Collections.emptyList())
+                                : Collections.<PNFetchMessageItem>emptyList();
+                        long oldestFetched = newerThanTimeToken;
+                        for (final PNFetchMessageItem item : items) {
+                            messages.add(new PNMessageResult(new BasePubSubResult(channel, channel, channel, null,
+                                    item.getTimetoken(), item.getMeta(), null), item.getMessage()));
+                            oldestFetched = Math.min(oldestFetched, item.getTimetoken());
+                        }
+                        if (items.size() == MAXIMUM_PER_PAGE && oldestFetched > oldestTimeToken) {
+                            fetchPage(channel, oldestTimeToken, oldestFetched, messages, fetched);
+                        }
+                        else {
+                            fetched.complete(messages);
+                        }
+                    }
+                });
+    }
+}
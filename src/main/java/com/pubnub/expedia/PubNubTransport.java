@@ -0,0 +1,63 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNub;
+import com.pubnub.api.PubNubException;
+import com.pubnub.api.builder.PubNubErrorBuilder;
+import com.pubnub.api.callbacks.PNCallback;
+import com.pubnub.api.callbacks.SubscribeCallback;
+import com.pubnub.api.models.consumer.PNErrorData;
+import com.pubnub.api.models.consumer.PNPublishResult;
+import com.pubnub.api.models.consumer.PNStatus;
+
+import java.util.concurrent.CompletableFuture;
+
+public class PubNubTransport implements ChunkTransport {
+    private final PubNub pubNub;
+
+    public PubNubTransport(final PubNub pubNub) {
+        this.pubNub = pubNub;
+    }
+
+    @Override
+    public CompletableFuture<PNPublishResult> publish(final String channel, final JsonObject message, final boolean usePOST) {
+        final CompletableFuture<PNPublishResult> published = new CompletableFuture<>();
+        pubNub.publish()
+                .channel(channel)
+                .message(message)
+                .usePOST(usePOST)
+                .async(new PNCallback<PNPublishResult>() {
+                    @Override
+                    public void onResponse(final PNPublishResult pnPublishResult, final PNStatus pnStatus) {
+                        if (pnStatus.isError()) {
+                            published.completeExceptionally(toPubNubException(pnStatus));
+                        }
+                        else {
+                            published.complete(pnPublishResult);
+                        }
+                    }
+                });
+        return published;
+    }
+
+    @Override
+    public void addListener(final SubscribeCallback listener) {
+        pubNub.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(final SubscribeCallback listener) {
+        pubNub.removeListener(listener);
+    }
+
+    static PubNubException toPubNubException(final PNStatus pnStatus) {
+        final PNErrorData errorData = pnStatus.getErrorData();
+        if (errorData != null && errorData.getThrowable() instanceof PubNubException) {
+            return (PubNubException) errorData.getThrowable();
+        }
+        return PubNubException.builder()
+                .pubnubError(PubNubErrorBuilder.PNERROBJ_HTTP_ERROR)
+                .errormsg(errorData != null ? errorData.getInformation() : "publish failed")
+                .build();
+    }
+}
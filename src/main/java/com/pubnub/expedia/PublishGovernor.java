@@ -0,0 +1,175 @@
+package com.pubnub.expedia;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces every publish of the {@link GreedyPublish}es sharing it, parts and final chunks alike, to what the keyset
+ * allows: a token bucket refilled at {@code publishesPerSecond} that holds at most {@code burst} tokens. Messages waiting
+ * for tokens take turns one publish at a time, so a big upload doesn't hold up a small message started after it, and
+ * messages published with {@link GreedyPublish#priority(boolean) priority} go before all others. Unlimited by default.
+ */
+public class PublishGovernor {
+    private static final int DEFAULT_BURST = 10;
+
+    /**
+     * Publishes of one message, in the order they were submitted.
+     */
+    final class Flow {
+        private final boolean priority;
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+
+        private Flow(final boolean priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Runs {@code publish} once it's the message's turn and a token is available, on the submitting thread if
+         * that's right away.
+         */
+        void submit(final Runnable publish) {
+            PublishGovernor.this.submit(this, publish);
+        }
+    }
+
+    private final Deque<Flow> priorityFlows = new ArrayDeque<>();
+    private final Deque<Flow> flows = new ArrayDeque<>();
+
+    private double publishesPerSecond = Double.POSITIVE_INFINITY;
+    private int burst = DEFAULT_BURST;
+    private ScheduledExecutorService scheduler;
+    private Clock clock;
+
+    private double tokens = Double.NaN;
+    private long refilledNanos;
+    private boolean wakeUpScheduled;
+
+    public synchronized PublishGovernor publishesPerSecond(final double publishesPerSecond) {
+        if (!(publishesPerSecond > 0.0)) throw new IllegalArgumentException("publishesPerSecond must be positive: " + publishesPerSecond);
+        this.publishesPerSecond = publishesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param burst publishes that may go out at once after a quiet spell
+     */
+    public synchronized PublishGovernor burst(final int burst) {
+        if (burst < 1) throw new IllegalArgumentException("burst must be positive: " + burst);
+        this.burst = burst;
+        tokens = Math.min(tokens, burst);
+        return this;
+    }
+
+    public PublishGovernor scheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * @param clock what tokens are refilled by, {@code null} for {@link System#nanoTime()}
+     */
+    public synchronized PublishGovernor clock(final Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public synchronized double getPublishesPerSecond() {
+        return publishesPerSecond;
+    }
+
+    public synchronized int getBurst() {
+        return burst;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+    }
+
+    Flow newFlow(final boolean priority) {
+        return new Flow(priority);
+    }
+
+    private void submit(final Flow flow, final Runnable publish) {
+        final boolean queued;
+        synchronized (this) {
+            queued = publishesPerSecond != Double.POSITIVE_INFINITY || !priorityFlows.isEmpty() || !flows.isEmpty();
+            if (queued) {
+                if (flow.pending.isEmpty()) {
+                    lane(flow).add(flow);
+                }
+                flow.pending.add(publish);
+            }
+        }
+        if (queued) {
+            release();
+        }
+        else {
+            publish.run();
+        }
+    }
+
+    /**
+     * Runs as many waiting publishes as there are tokens for, taking one from each waiting message in turn, and
+     * comes back for the rest once the next token is due.
+     */
+    private void release() {
+        final List<Runnable> released = new ArrayList<>();
+        synchronized (this) {
+            refill();
+            while (tokens >= 1.0) {
+                final Flow flow = !priorityFlows.isEmpty() ? priorityFlows.poll() : flows.poll();
+                if (flow == null) {
+                    break;
+                }
+                released.add(flow.pending.poll());
+                tokens -= 1.0;
+                if (!flow.pending.isEmpty()) {
+                    lane(flow).add(flow);
+                }
+            }
+            if ((!priorityFlows.isEmpty() || !flows.isEmpty()) && !wakeUpScheduled) {
+                wakeUpScheduled = true;
+                final long waitNanos = (long) Math.ceil((1.0 - tokens) / publishesPerSecond * 1_000_000_000L);
+                getScheduler().schedule(this::wakeUp, waitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        released.forEach(Runnable::run);
+    }
+
+    private void wakeUp() {
+        synchronized (this) {
+            wakeUpScheduled = false;
+        }
+        release();
+    }
+
+    private void refill() {
+        final long nowNanos = nowNanos();
+        if (Double.isNaN(tokens) || publishesPerSecond == Double.POSITIVE_INFINITY) {
+            tokens = burst;
+        }
+        else {
+            tokens = Math.min(burst, tokens + (nowNanos - refilledNanos) * publishesPerSecond / 1_000_000_000L);
+        }
+        refilledNanos = nowNanos;
+    }
+
+    private long nowNanos() {
+        if (clock == null) {
+            return System.nanoTime();
+        }
+        final Instant now = clock.instant();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private Deque<Flow> lane(final Flow flow) {
+        return flow.priority ? priorityFlows : flows;
+    }
+}
@@ -11,6 +11,10 @@ import java.util.Base64;
 import java.util.List;
 
 public final class PublishUtils {
+    // digests are reused per thread, parts are hashed on whichever thread prepares them
+    private static final ThreadLocal<MessageDigest> SHA_256_DIGESTS = ThreadLocal.withInitial(PublishUtils::newSha256Digest);
+    private static final ThreadLocal<Crc32c> CRC32C_CHECKSUMS = ThreadLocal.withInitial(Crc32c::new);
+
     private PublishUtils() {}
 
     static List<byte[]> partition(final byte[] messageBytes, final int chunkSize) {
@@ -34,10 +38,19 @@ public final class PublishUtils {
     }
 
     static byte[] sha256(final byte[] bytes) {
+        return SHA_256_DIGESTS.get().digest(bytes);
+    }
+
+    static int crc32c(final byte[] bytes) {
+        final Crc32c crc32c = CRC32C_CHECKSUMS.get();
+        crc32c.reset();
+        crc32c.update(bytes, 0, bytes.length);
+        return (int) crc32c.getValue();
+    }
+
+    static MessageDigest newSha256Digest() {
         try {
-            final MessageDigest md = MessageDigest.getInstance("SHA-256");
-            final byte[] digestBytes = md.digest(bytes);
-            return digestBytes;
+            return MessageDigest.getInstance("SHA-256");
         }
         catch (NoSuchAlgorithmException e) {
             throw new IllegalStateException("that shall never happen", e);
@@ -55,6 +68,33 @@ public final class PublishUtils {
         return finalChunkJsonObject;
     }
 
+    static JsonObject finalChunk(final String messageId, final List<String> orderedListOfShaSums, final String shaSumOfWholeMessage) {
+        final JsonObject finalChunkJsonObject = finalChunk(messageId, orderedListOfShaSums);
+        finalChunkJsonObject.addProperty("digest", shaSumOfWholeMessage);
+        return finalChunkJsonObject;
+    }
+
+    /**
+     * @return {@code data} wrapped so subscribers don't take it for a chunk
+     */
+    static JsonObject wholeChunk(final JsonObject data) {
+        final JsonObject wholeJsonObject = new JsonObject();
+        wholeJsonObject.addProperty("type", "whole");
+        wholeJsonObject.add("data", data);
+        return wholeJsonObject;
+    }
+
+    static JsonObject deltaChunk(final String baseShaSum, final Long baseTimeToken, final JsonArray patch) {
+        final JsonObject deltaJsonObject = new JsonObject();
+        deltaJsonObject.addProperty("type", "delta");
+        deltaJsonObject.addProperty("base", baseShaSum);
+        if (baseTimeToken != null) {
+            deltaJsonObject.addProperty("basetimetoken", baseTimeToken);
+        }
+        deltaJsonObject.add("patch", patch);
+        return deltaJsonObject;
+    }
+
     static JsonObject partChunk(final String shaSumOfWholeMessage, final String partShaSum, final String encodedPartData) {
         final JsonObject partJsonObject = new JsonObject();
         partJsonObject.addProperty("type", "part");
@@ -64,5 +104,28 @@ public final class PublishUtils {
         return partJsonObject;
     }
 
+    static JsonObject partChunk(final String shaSumOfWholeMessage, final String partShaSum, final String encodedPartData,
+                                final PartEncoding partEncoding) {
+        final JsonObject partJsonObject = partChunk(shaSumOfWholeMessage, partShaSum, encodedPartData);
+        if (partEncoding.getWireName() != null) {
+            partJsonObject.addProperty("encoding", partEncoding.getWireName());
+        }
+        return partJsonObject;
+    }
 
+    /**
+     * @param index position of the part's first occurrence in the manifest, {@code null} for parts of messages that
+     *              can't be streamed to subscribers before their final chunk arrives
+     */
+    static JsonObject partChunk(final String shaSumOfWholeMessage, final String partShaSum, final String encodedPartData,
+                                final PartEncoding partEncoding, final Integer index, final Compression compression) {
+        final JsonObject partJsonObject = partChunk(shaSumOfWholeMessage, partShaSum, encodedPartData, partEncoding);
+        if (index != null) {
+            partJsonObject.addProperty("index", index);
+            if (compression.getWireName() != null) {
+                partJsonObject.addProperty("compression", compression.getWireName());
+            }
+        }
+        return partJsonObject;
+    }
 }
@@ -0,0 +1,81 @@
+package com.pubnub.expedia;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chunked message handed to a {@link GreedyPubNub.ChunksAwareSubscribeCallback#receivesRawMessages() raw listener}
+ * as the bytes it was published as. Nothing is parsed up front: {@link #getData()} finds the {@code data} member by
+ * scanning the bytes, and a tree is only built if {@link #getJsonData()} is called.
+ */
+public class RawMessage {
+    private final String channel;
+    private final Long timeToken;
+    private final String publisher;
+    private final byte[] message;
+    private final int length;
+
+    private int[] dataSpan;
+    private JsonElement jsonData;
+
+    RawMessage(final String channel, final Long timeToken, final String publisher, final byte[] message, final int length) {
+        this.channel = channel;
+        this.timeToken = timeToken;
+        this.publisher = publisher;
+        this.message = message;
+        this.length = length;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public Long getTimetoken() {
+        return timeToken;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * @return the whole message, {@code {"timestamp":...,"data":...}} in UTF-8
+     */
+    public ByteBuffer getMessage() {
+        return ByteBuffer.wrap(message, 0, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the UTF-8 JSON of {@code data}, as published
+     */
+    public ByteBuffer getData() {
+        final int[] span = dataSpan();
+        return ByteBuffer.wrap(message, span[0], span[1] - span[0]).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return {@code data} parsed into a tree on first call
+     */
+    public synchronized JsonElement getJsonData() {
+        if (jsonData == null) {
+            final int[] span = dataSpan();
+            jsonData = JsonParser.parseReader(new InputStreamReader(
+                    new ByteArrayInputStream(message, span[0], span[1] - span[0]), StandardCharsets.UTF_8));
+        }
+        return jsonData;
+    }
+
+    private synchronized int[] dataSpan() {
+        if (dataSpan == null) {
+            final int[] span = JsonMembers.locate(message, length, "data");
+            if (span == null) throw new IllegalStateException("message has no data: " + channel + "/" + timeToken);
+            dataSpan = span;
+        }
+        return dataSpan;
+    }
+}
@@ -0,0 +1,96 @@
+package com.pubnub.expedia;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte accounting of everything buffered for reassembly, globally and per channel, and the choice of which
+ * message to give up on once a limit is exceeded. Victims are only looked for while over a limit.
+ */
+class ReassemblyBudget {
+    private final ReassemblyConfiguration configuration;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> bufferedBytesPerChannel = new ConcurrentHashMap<>();
+
+    ReassemblyBudget(final ReassemblyConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    void added(final String channel, final long bytes) {
+        if (bytes != 0) {
+            bufferedBytes.addAndGet(bytes);
+            bufferedBytesPerChannel.computeIfAbsent(channel, key -> new AtomicLong()).addAndGet(bytes);
+        }
+    }
+
+    long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    long getBufferedBytes(final String channel) {
+        final AtomicLong channelBytes = bufferedBytesPerChannel.get(channel);
+        return channelBytes != null ? channelBytes.get() : 0L;
+    }
+
+    boolean isOverBudget() {
+        return bufferedBytes.get() > configuration.getMaxBufferedBytes();
+    }
+
+    boolean isOverChannelQuota(final String channel) {
+        return configuration.getEvictionPolicy() == EvictionPolicy.PER_CHANNEL_QUOTA
+                && getBufferedBytes(channel) > configuration.getMaxBufferedBytesPerChannel();
+    }
+
+    Map.Entry<String, Message> selectVictim(final Map<String, Message> messages) {
+        switch (configuration.getEvictionPolicy()) {
+            case LARGEST_FIRST:
+                return largest(messages);
+            case PER_CHANNEL_QUOTA:
+                return oldest(messages, largestChannel());
+            case OLDEST_FIRST:
+            default:
+                return oldest(messages, null);
+        }
+    }
+
+    Map.Entry<String, Message> selectVictim(final Map<String, Message> messages, final String channel) {
+        return oldest(messages, channel);
+    }
+
+    private String largestChannel() {
+        String largestChannel = null;
+        long largestBytes = 0L;
+        for (final Map.Entry<String, AtomicLong> entry : bufferedBytesPerChannel.entrySet()) {
+            final long channelBytes = entry.getValue().get();
+            if (channelBytes > largestBytes) {
+                largestBytes = channelBytes;
+                largestChannel = entry.getKey();
+            }
+        }
+        return largestChannel;
+    }
+
+    private static Map.Entry<String, Message> oldest(final Map<String, Message> messages, final String channel) {
+        Map.Entry<String, Message> oldest = null;
+        for (final Map.Entry<String, Message> entry : messages.entrySet()) {
+            if (channel != null && !channel.equals(entry.getValue().getChannel())) {
+                continue;
+            }
+            if (oldest == null || entry.getValue().getCreatedNanos() - oldest.getValue().getCreatedNanos() < 0) {
+                oldest = entry;
+            }
+        }
+        return oldest;
+    }
+
+    private static Map.Entry<String, Message> largest(final Map<String, Message> messages) {
+        Map.Entry<String, Message> largest = null;
+        for (final Map.Entry<String, Message> entry : messages.entrySet()) {
+            if (largest == null || entry.getValue().getBufferedBytes() > largest.getValue().getBufferedBytes()) {
+                largest = entry;
+            }
+        }
+        return largest;
+    }
+}
@@ -0,0 +1,267 @@
+package com.pubnub.expedia;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReassemblyConfiguration {
+    private static final Duration DEFAULT_MESSAGE_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_TIMEOUT_PER_PART = Duration.ofMillis(100);
+    private static final Duration DEFAULT_EXPIRY_SWEEP_INTERVAL = Duration.ofSeconds(1);
+    private static final long DEFAULT_MAX_BUFFERED_BYTES = 256L * 1024 * 1024;
+    private static final long DEFAULT_MAX_BUFFERED_BYTES_PER_CHANNEL = 64L * 1024 * 1024;
+    private static final Duration DEFAULT_GAP_RECOVERY_DELAY = Duration.ofMillis(500);
+    private static final Duration DEFAULT_GAP_RECOVERY_LOOKBACK = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_DUPLICATE_SUPPRESSION_WINDOW = DEFAULT_MESSAGE_TIMEOUT;
+    private static final int DEFAULT_MAX_QUEUED_DELIVERIES = 1024;
+
+    private static final class DefaultDispatchExecutor {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "greedy-pubnub-dispatch-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class DefaultStreamingExecutor {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "greedy-pubnub-streaming-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private Duration messageTimeout = DEFAULT_MESSAGE_TIMEOUT;
+    private Duration timeoutPerPart = DEFAULT_TIMEOUT_PER_PART;
+    private Duration expirySweepInterval = DEFAULT_EXPIRY_SWEEP_INTERVAL;
+    private ScheduledExecutorService scheduler;
+    private long maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+    private long maxBufferedBytesPerChannel = DEFAULT_MAX_BUFFERED_BYTES_PER_CHANNEL;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.OLDEST_FIRST;
+    private MessageDispatcher dispatcher = MessageDispatcher.ordered(DefaultDispatchExecutor.INSTANCE,
+            DEFAULT_MAX_QUEUED_DELIVERIES, MessageDispatcher.BackpressurePolicy.BLOCK);
+    private long spillThresholdBytes = Long.MAX_VALUE;
+    private Path spillDirectory;
+    private ChunkMetrics metrics = ChunkMetrics.NOOP;
+    private MessageHistory messageHistory;
+    private Duration gapRecoveryDelay = DEFAULT_GAP_RECOVERY_DELAY;
+    private Duration gapRecoveryLookback = DEFAULT_GAP_RECOVERY_LOOKBACK;
+    private Duration duplicateSuppressionWindow = DEFAULT_DUPLICATE_SUPPRESSION_WINDOW;
+    private int partCacheSize;
+    private Executor streamingExecutor;
+    private ChannelStriping channelStriping = new ChannelStriping();
+
+    public ReassemblyConfiguration messageTimeout(final Duration messageTimeout) {
+        this.messageTimeout = messageTimeout;
+        return this;
+    }
+
+    public ReassemblyConfiguration timeoutPerPart(final Duration timeoutPerPart) {
+        this.timeoutPerPart = timeoutPerPart;
+        return this;
+    }
+
+    public ReassemblyConfiguration expirySweepInterval(final Duration expirySweepInterval) {
+        this.expirySweepInterval = expirySweepInterval;
+        return this;
+    }
+
+    public ReassemblyConfiguration scheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public ReassemblyConfiguration maxBufferedBytes(final long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+        return this;
+    }
+
+    public ReassemblyConfiguration maxBufferedBytesPerChannel(final long maxBufferedBytesPerChannel) {
+        this.maxBufferedBytesPerChannel = maxBufferedBytesPerChannel;
+        return this;
+    }
+
+    public ReassemblyConfiguration evictionPolicy(final EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    /**
+     * Defaults to delivering each channel's messages in order on a shared daemon pool, so assembling a big message
+     * doesn't hold up the subscribe thread. Once 1024 deliveries are queued the subscribe thread waits for room.
+     * {@link MessageDispatcher#direct()} delivers on the subscribe thread instead.
+     */
+    public ReassemblyConfiguration dispatcher(final MessageDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        return this;
+    }
+
+    /**
+     * Messages buffering more than {@code spillThresholdBytes} on the heap are moved to a memory-mapped temp file
+     * in {@link #spillDirectory(Path)}. Spilling is off by default. Spilled parts no longer count towards
+     * {@link #maxBufferedBytes(long)}: disk use is not bounded, other than by how long messages may take to complete.
+     */
+    public ReassemblyConfiguration spillThresholdBytes(final long spillThresholdBytes) {
+        this.spillThresholdBytes = spillThresholdBytes;
+        return this;
+    }
+
+    public ReassemblyConfiguration spillDirectory(final Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * Also used for publishes made through {@link GreedyPubNub#publishBigChunk()}.
+     */
+    public ReassemblyConfiguration metrics(final ChunkMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Parts still missing {@link #gapRecoveryDelay(Duration)} after the final chunk arrived are looked up in
+     * {@code messageHistory}. Gap recovery is off unless a history is set.
+     */
+    public ReassemblyConfiguration messageHistory(final MessageHistory messageHistory) {
+        this.messageHistory = messageHistory;
+        return this;
+    }
+
+    public ReassemblyConfiguration gapRecoveryDelay(final Duration gapRecoveryDelay) {
+        this.gapRecoveryDelay = gapRecoveryDelay;
+        return this;
+    }
+
+    /**
+     * How far before the earliest chunk received for a message its missing parts are looked for.
+     */
+    public ReassemblyConfiguration gapRecoveryLookback(final Duration gapRecoveryLookback) {
+        this.gapRecoveryLookback = gapRecoveryLookback;
+        return this;
+    }
+
+    /**
+     * Chunks of a message delivered less than {@code duplicateSuppressionWindow} ago are ignored instead of starting
+     * its reassembly over, which would only time out. Defaults to the default message timeout; {@link Duration#ZERO}
+     * turns it off. Only chunks no newer than the delivered message count as duplicates, so a message published again
+     * is still delivered again.
+     */
+    public ReassemblyConfiguration duplicateSuppressionWindow(final Duration duplicateSuppressionWindow) {
+        this.duplicateSuppressionWindow = duplicateSuppressionWindow;
+        return this;
+    }
+
+    /**
+     * Keeps the last {@code partCacheSize} parts seen, across messages, so messages from a publisher using a
+     * {@link SentPartCache} can be assembled from parts that weren't published again. Parts the cache misses are
+     * fetched from the {@link #messageHistory(MessageHistory) history}. The cache is held outside the
+     * {@link #maxBufferedBytes(long) buffer budget}, at most 32 KiB per part. Off by default.
+     */
+    public ReassemblyConfiguration partCacheSize(final int partCacheSize) {
+        if (partCacheSize < 0) throw new IllegalArgumentException("partCacheSize must not be negative: " + partCacheSize);
+        this.partCacheSize = partCacheSize;
+        return this;
+    }
+
+    /**
+     * Runs {@link GreedyPubNub.ChunksAwareSubscribeCallback#messageStreamed} callbacks, one task per listener and message.
+     * Streams block while they wait for parts, so they never run on the subscribe thread or the {@link #dispatcher(MessageDispatcher) dispatcher}.
+     */
+    public ReassemblyConfiguration streamingExecutor(final Executor streamingExecutor) {
+        this.streamingExecutor = streamingExecutor;
+        return this;
+    }
+
+    /**
+     * Parts arriving on a shard are reassembled under the channel it's a shard of. Also used for publishes made through
+     * {@link GreedyPubNub#publishBigChunk()} and subscriptions made through {@link GreedyPubNub#subscribeStriped()}.
+     */
+    public ReassemblyConfiguration channelStriping(final ChannelStriping channelStriping) {
+        this.channelStriping = channelStriping;
+        return this;
+    }
+
+    public Duration getMessageTimeout() {
+        return messageTimeout;
+    }
+
+    public Duration getTimeoutPerPart() {
+        return timeoutPerPart;
+    }
+
+    public Duration getExpirySweepInterval() {
+        return expirySweepInterval;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+    }
+
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    public long getMaxBufferedBytesPerChannel() {
+        return maxBufferedBytesPerChannel;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public long getSpillThresholdBytes() {
+        return spillThresholdBytes;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory != null ? spillDirectory : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    public ChunkMetrics getMetrics() {
+        return metrics;
+    }
+
+    public MessageHistory getMessageHistory() {
+        return messageHistory;
+    }
+
+    public Duration getGapRecoveryDelay() {
+        return gapRecoveryDelay;
+    }
+
+    public Duration getGapRecoveryLookback() {
+        return gapRecoveryLookback;
+    }
+
+    public Duration getDuplicateSuppressionWindow() {
+        return duplicateSuppressionWindow;
+    }
+
+    public int getPartCacheSize() {
+        return partCacheSize;
+    }
+
+    public Executor getStreamingExecutor() {
+        return streamingExecutor != null ? streamingExecutor : DefaultStreamingExecutor.INSTANCE;
+    }
+
+    public ChannelStriping getChannelStriping() {
+        return channelStriping;
+    }
+
+    long timeoutNanos(final int expectedParts) {
+        return messageTimeout.toNanos() + timeoutPerPart.toNanos() * expectedParts;
+    }
+}
@@ -0,0 +1,236 @@
+package com.pubnub.expedia;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default {@link ChunkMetrics} keeping counters in {@link LongAdder}s and distributions in
+ * {@link LogLinearHistogram}s. Read it through the getters, or push everything into another system with
+ * {@link #report(Reporter)}.
+ */
+public class RecordingChunkMetrics implements ChunkMetrics {
+    public interface Reporter {
+        void counter(String name, long value);
+
+        void gauge(String name, long value);
+
+        void histogram(String name, LogLinearHistogram histogram);
+    }
+
+    private final LongAdder partsPublished = new LongAdder();
+    private final LongAdder partsFailed = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder messagesPublished = new LongAdder();
+    private final LongAdder messagesFailed = new LongAdder();
+    private final LongAdder reusedParts = new LongAdder();
+    private final LogLinearHistogram partsPerMessage = new LogLinearHistogram();
+    private final LogLinearHistogram partPublishLatency = new LogLinearHistogram();
+
+    private final List<ReassemblyGauges> reassemblyGauges = new CopyOnWriteArrayList<>();
+    private final LongAdder duplicateParts = new LongAdder();
+    private final LongAdder recoveredParts = new LongAdder();
+    private final LongAdder cachedParts = new LongAdder();
+    private final LongAdder messagesDelivered = new LongAdder();
+    private final LongAdder messagesTimedOut = new LongAdder();
+    private final LongAdder messagesDropped = new LongAdder();
+    private final LogLinearHistogram deliveryLatency = new LogLinearHistogram();
+    private final LogLinearHistogram assembleTime = new LogLinearHistogram();
+
+    @Override
+    public void partPublished(final String channel, final int bytes, final long latencyNanos) {
+        partsPublished.increment();
+        bytesSent.add(bytes);
+        partPublishLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void partFailed(final String channel, final long latencyNanos) {
+        partsFailed.increment();
+        partPublishLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void messagePublished(final String channel, final int parts, final long bytes) {
+        messagesPublished.increment();
+        partsPerMessage.record(parts);
+        if (parts == 0) {
+            bytesSent.add(bytes);
+        }
+    }
+
+    @Override
+    public void messageFailed(final String channel) {
+        messagesFailed.increment();
+    }
+
+    @Override
+    public void partsReused(final String channel, final int parts) {
+        reusedParts.add(parts);
+    }
+
+    @Override
+    public void reassemblyGauges(final ReassemblyGauges gauges) {
+        reassemblyGauges.add(gauges);
+    }
+
+    @Override
+    public void reassemblyGaugesRemoved(final ReassemblyGauges gauges) {
+        reassemblyGauges.remove(gauges);
+    }
+
+    @Override
+    public void duplicatePart(final String channel) {
+        duplicateParts.increment();
+    }
+
+    @Override
+    public void partsRecovered(final String channel, final int parts) {
+        recoveredParts.add(parts);
+    }
+
+    @Override
+    public void cachedPartsUsed(final String channel, final int parts) {
+        cachedParts.add(parts);
+    }
+
+    @Override
+    public void messageDelivered(final String channel, final int parts, final long firstPartToDeliveryNanos,
+                                 final long assembleNanos) {
+        messagesDelivered.increment();
+        deliveryLatency.record(firstPartToDeliveryNanos);
+        assembleTime.record(assembleNanos);
+    }
+
+    @Override
+    public void messageDropped(final DroppedMessage droppedMessage) {
+        messagesDropped.increment();
+        if (droppedMessage.getReason() == DroppedMessage.Reason.TIMED_OUT) {
+            messagesTimedOut.increment();
+        }
+    }
+
+    public long getPartsPublished() {
+        return partsPublished.sum();
+    }
+
+    public long getPartsFailed() {
+        return partsFailed.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getMessagesPublished() {
+        return messagesPublished.sum();
+    }
+
+    public long getMessagesFailed() {
+        return messagesFailed.sum();
+    }
+
+    public long getReusedParts() {
+        return reusedParts.sum();
+    }
+
+    public LogLinearHistogram getPartsPerMessage() {
+        return partsPerMessage;
+    }
+
+    public LogLinearHistogram getPartPublishLatency() {
+        return partPublishLatency;
+    }
+
+    public int getInFlightMessages() {
+        int inFlightMessages = 0;
+        for (final ReassemblyGauges gauges : reassemblyGauges) {
+            inFlightMessages += gauges.inFlightMessages();
+        }
+        return inFlightMessages;
+    }
+
+    public long getBufferedBytes() {
+        long bufferedBytes = 0L;
+        for (final ReassemblyGauges gauges : reassemblyGauges) {
+            bufferedBytes += gauges.bufferedBytes();
+        }
+        return bufferedBytes;
+    }
+
+    public long getDuplicateParts() {
+        return duplicateParts.sum();
+    }
+
+    public long getRecoveredParts() {
+        return recoveredParts.sum();
+    }
+
+    public long getCachedParts() {
+        return cachedParts.sum();
+    }
+
+    public long getMessagesDelivered() {
+        return messagesDelivered.sum();
+    }
+
+    public long getMessagesTimedOut() {
+        return messagesTimedOut.sum();
+    }
+
+    public long getMessagesDropped() {
+        return messagesDropped.sum();
+    }
+
+    public LogLinearHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    public LogLinearHistogram getAssembleTime() {
+        return assembleTime;
+    }
+
+    public void report(final Reporter reporter) {
+        reporter.counter("publish.parts", getPartsPublished());
+        reporter.counter("publish.parts.failed", getPartsFailed());
+        reporter.counter("publish.bytes", getBytesSent());
+        reporter.counter("publish.messages", getMessagesPublished());
+        reporter.counter("publish.messages.failed", getMessagesFailed());
+        reporter.counter("publish.parts.reused", getReusedParts());
+        reporter.histogram("publish.parts.per.message", partsPerMessage);
+        reporter.histogram("publish.part.latency.nanos", partPublishLatency);
+        reporter.gauge("reassembly.messages.in.flight", getInFlightMessages());
+        reporter.gauge("reassembly.buffered.bytes", getBufferedBytes());
+        reporter.counter("reassembly.parts.duplicate", getDuplicateParts());
+        reporter.counter("reassembly.parts.recovered", getRecoveredParts());
+        reporter.counter("reassembly.parts.cached", getCachedParts());
+        reporter.counter("reassembly.messages.delivered", getMessagesDelivered());
+        reporter.counter("reassembly.messages.timed.out", getMessagesTimedOut());
+        reporter.counter("reassembly.messages.dropped", getMessagesDropped());
+        reporter.histogram("reassembly.delivery.latency.nanos", deliveryLatency);
+        reporter.histogram("reassembly.assemble.nanos", assembleTime);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder stringBuilder = new StringBuilder("RecordingChunkMetrics{");
+        report(new Reporter() {
+            @Override
+            public void counter(final String name, final long value) {
+                stringBuilder.append(name).append('=').append(value).append(", ");
+            }
+
+            @Override
+            public void gauge(final String name, final long value) {
+                counter(name, value);
+            }
+
+            @Override
+            public void histogram(final String name, final LogLinearHistogram histogram) {
+                stringBuilder.append(name).append('=').append(histogram).append(", ");
+            }
+        });
+        stringBuilder.setLength(stringBuilder.length() - 2);
+        return stringBuilder.append('}').toString();
+    }
+}
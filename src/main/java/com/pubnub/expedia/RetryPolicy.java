@@ -0,0 +1,112 @@
+package com.pubnub.expedia;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and how patiently failed part and final chunk publishes are retried: exponential backoff with jitter,
+ * bounded by a number of attempts per chunk and by a deadline for the whole publish.
+ */
+public class RetryPolicy {
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(100);
+    private static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(5);
+    private static final double DEFAULT_MULTIPLIER = 2.0;
+    private static final double DEFAULT_JITTER = 0.5;
+    private static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(30);
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private Duration initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private Duration maxBackoff = DEFAULT_MAX_BACKOFF;
+    private double multiplier = DEFAULT_MULTIPLIER;
+    private double jitter = DEFAULT_JITTER;
+    private Duration deadline = DEFAULT_DEADLINE;
+    private ScheduledExecutorService scheduler;
+
+    public static RetryPolicy none() {
+        return new RetryPolicy().maxAttempts(1);
+    }
+
+    public RetryPolicy maxAttempts(final int maxAttempts) {
+        if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public RetryPolicy initialBackoff(final Duration initialBackoff) {
+        this.initialBackoff = initialBackoff;
+        return this;
+    }
+
+    public RetryPolicy maxBackoff(final Duration maxBackoff) {
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    public RetryPolicy multiplier(final double multiplier) {
+        if (multiplier < 1.0) throw new IllegalArgumentException("multiplier must be at least 1: " + multiplier);
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * @param jitter fraction of each backoff, between 0 and 1, that is randomly taken off
+     */
+    public RetryPolicy jitter(final double jitter) {
+        if (jitter < 0.0 || jitter > 1.0) throw new IllegalArgumentException("jitter must be between 0 and 1: " + jitter);
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * No retry is scheduled that would start later than {@code deadline} after the publish began.
+     */
+    public RetryPolicy deadline(final Duration deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    public RetryPolicy scheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+    }
+
+    long backoffNanos(final int attemptsMade) {
+        final double exponential = initialBackoff.toNanos() * Math.pow(multiplier, attemptsMade - 1);
+        final double capped = Math.min(exponential, maxBackoff.toNanos());
+        return (long) (capped * (1.0 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    boolean allowsRetry(final int attemptsMade, final long publishStartedNanos, final long backoffNanos) {
+        return attemptsMade < maxAttempts && System.nanoTime() + backoffNanos - publishStartedNanos <= deadline.toNanos();
+    }
+}
@@ -0,0 +1,88 @@
+package com.pubnub.expedia;
+
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.GreedyPublish.PublishPartResult;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which parts were recently published on each channel, so a {@link GreedyPublish} sharing it leaves them
+ * out of later messages and only publishes the manifest for them. Subscribers assemble such messages from the parts
+ * they keep, see {@link ReassemblyConfiguration#partCacheSize(int)}, and fetch the rest from history.
+ * <p>
+ * Parts are only reused while they are younger than {@code maxAge}; keep it well within the channel's history retention.
+ */
+public class SentPartCache {
+    private static final int DEFAULT_MAX_PARTS_PER_CHANNEL = 1024;
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(10);
+
+    private final Map<String, Map<String, Long>> channels = new ConcurrentHashMap<>();
+
+    private int maxPartsPerChannel = DEFAULT_MAX_PARTS_PER_CHANNEL;
+    private Duration maxAge = DEFAULT_MAX_AGE;
+
+    public SentPartCache maxPartsPerChannel(final int maxPartsPerChannel) {
+        if (maxPartsPerChannel < 1) throw new IllegalArgumentException("maxPartsPerChannel must be positive: " + maxPartsPerChannel);
+        this.maxPartsPerChannel = maxPartsPerChannel;
+        return this;
+    }
+
+    public SentPartCache maxAge(final Duration maxAge) {
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    public int getMaxPartsPerChannel() {
+        return maxPartsPerChannel;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public void clear(final String channel) {
+        channels.remove(channel);
+    }
+
+    /**
+     * @return timetoken the part was published with, or {@code null} if it wasn't published recently
+     */
+    Long publishedAt(final String channel, final String partShaSum) {
+        final Map<String, Long> parts = channels.get(channel);
+        if (parts == null) {
+            return null;
+        }
+        synchronized (parts) {
+            final Long timeToken = parts.get(partShaSum);
+            if (timeToken != null && currentTimeToken() - timeToken > maxAge.toNanos() / 100) {
+                parts.remove(partShaSum);
+                return null;
+            }
+            return timeToken;
+        }
+    }
+
+    void published(final String channel, final GreedyPublishResult greedyPublishResult) {
+        final Map<String, Long> parts = channels.computeIfAbsent(channel, key -> new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                return size() > maxPartsPerChannel;
+            }
+        });
+        synchronized (parts) {
+            for (final PublishPartResult partResult : greedyPublishResult.getPartsPNPublishResults()) {
+                if (partResult instanceof PublishPartResult.Successful) {
+                    final Long timeToken = ((PublishPartResult.Successful) partResult).getPnPublishResult().getTimetoken();
+                    parts.put(partResult.getJsonObject().get("shasum").getAsString(), timeToken != null ? timeToken : currentTimeToken());
+                }
+            }
+        }
+    }
+
+    private static long currentTimeToken() {
+        return System.currentTimeMillis() * 10_000L;
+    }
+}
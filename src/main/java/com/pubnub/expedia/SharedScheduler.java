@@ -0,0 +1,19 @@
+package com.pubnub.expedia;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The one daemon thread behind every timer that isn't given a scheduler of its own: message expiry, retry backoff,
+ * publish pacing and batch linger. What runs on it must be quick, or it holds up all the others.
+ */
+final class SharedScheduler {
+    static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "greedy-pubnub-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SharedScheduler() {
+    }
+}
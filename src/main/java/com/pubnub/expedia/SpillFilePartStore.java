@@ -0,0 +1,272 @@
+package com.pubnub.expedia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps decoded parts in a memory-mapped temp file instead of on the heap. The file is written in fixed-size mapped
+ * segments, read back in manifest order without copying the whole message, and unmapped and deleted on release.
+ * <p>
+ * Parts are appended in the order they arrive rather than written at their offset in the message: the manifest names
+ * parts but not their lengths, and usually arrives last. Each distinct part is stored once, however often the manifest
+ * lists it, and reading follows the manifest through the location of every part.
+ * <p>
+ * Not thread safe, except that {@link #write} may run without holding whatever guards the rest.
+ */
+class SpillFilePartStore implements PartStore {
+    private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    private static class Location {
+        private final MappedByteBuffer segment;
+        private final int offset;
+        private final int length;
+
+        private Location(final MappedByteBuffer segment, final int offset, final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Room set aside for a part that is yet to be decoded into it.
+     */
+    static class Reservation {
+        private final Part part;
+        private final Location location;
+
+        private Reservation(final Part part, final Location location) {
+            this.part = part;
+            this.location = location;
+        }
+    }
+
+    private final FileChannel fileChannel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Location> locations = new HashMap<>();
+    private final Map<String, Location> reservedLocations = new HashMap<>();
+    private long mappedBytes;
+    private int segmentPosition;
+
+    SpillFilePartStore(final Path directory) {
+        try {
+            final Path file = Files.createTempFile(directory, "greedy-pubnub-", ".spill");
+            this.fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("something went wrong while creating spill file", e);
+        }
+    }
+
+    @Override
+    public boolean add(final Part part) {
+        final Reservation reservation = reserve(part);
+        if (reservation == null) {
+            return false;
+        }
+        write(reservation);
+        commit(reservation);
+        return true;
+    }
+
+    /**
+     * Sets room aside for a part without decoding it. The part only counts as added once {@link #commit committed}.
+     *
+     * @return {@code null} if the part was added or set room aside for already
+     */
+    Reservation reserve(final Part part) {
+        if (locations.containsKey(part.getShaSum()) || reservedLocations.containsKey(part.getShaSum())) {
+            return null;
+        }
+        final int length = part.decodedLength();
+        final Location location = new Location(segmentWithRoomFor(length), segmentPosition, length);
+        reservedLocations.put(part.getShaSum(), location);
+        segmentPosition += length;
+        return new Reservation(part, location);
+    }
+
+    /**
+     * Decodes a part into the room set aside for it, which nothing else writes to or reads from until it is committed.
+     *
+     * @throws IllegalArgumentException if the part doesn't decode
+     */
+    void write(final Reservation reservation) {
+        reservation.part.decodeInto(reservation.location.segment, reservation.location.offset);
+    }
+
+    void commit(final Reservation reservation) {
+        final String shaSum = reservation.part.getShaSum();
+        if (reservedLocations.remove(shaSum) != null) {
+            locations.put(shaSum, reservation.location);
+        }
+    }
+
+    private MappedByteBuffer segmentWithRoomFor(final int length) {
+        if (!segments.isEmpty()) {
+            final MappedByteBuffer current = segments.get(segments.size() - 1);
+            if (current.capacity() - segmentPosition >= length) {
+                return current;
+            }
+        }
+        final int segmentSize = Math.max(SEGMENT_SIZE, length);
+        try {
+            final MappedByteBuffer segment = fileChannel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, segmentSize);
+            mappedBytes += segmentSize;
+            segments.add(segment);
+            segmentPosition = 0;
+            return segment;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("something went wrong while growing spill file", e);
+        }
+    }
+
+    @Override
+    public boolean contains(final String shaSum) {
+        return locations.containsKey(shaSum);
+    }
+
+    @Override
+    public boolean containsAll(final Collection<String> shaSums) {
+        return locations.keySet().containsAll(shaSums);
+    }
+
+    @Override
+    public int size() {
+        return locations.size();
+    }
+
+    @Override
+    public long heapBytes() {
+        return 0L;
+    }
+
+    @Override
+    public InputStream open(final List<String> orderedShaSums) {
+        final List<InputStream> slices = new ArrayList<>(orderedShaSums.size());
+        for (final String partShaSum : orderedShaSums) {
+            final Location location = locations.get(partShaSum);
+            final ByteBuffer slice = location.segment.duplicate();
+            slice.position(location.offset);
+            slice.limit(location.offset + location.length);
+            slices.add(new ByteBufferInputStream(slice));
+        }
+        return new SequenceInputStream(Collections.enumeration(slices));
+    }
+
+    @Override
+    public byte[] readAll(final List<String> orderedShaSums) {
+        int wholeMessageLength = 0;
+        for (final String partShaSum : orderedShaSums) {
+            wholeMessageLength += locations.get(partShaSum).length;
+        }
+        final byte[] wholeMessageBytes = new byte[wholeMessageLength];
+        int offset = 0;
+        for (final String partShaSum : orderedShaSums) {
+            final Location location = locations.get(partShaSum);
+            final ByteBuffer slice = location.segment.duplicate();
+            slice.position(location.offset);
+            slice.get(wholeMessageBytes, offset, location.length);
+            offset += location.length;
+        }
+        return wholeMessageBytes;
+    }
+
+    @Override
+    public byte[] read(final String shaSum) {
+        final Location location = locations.get(shaSum);
+        final ByteBuffer slice = location.segment.duplicate();
+        slice.position(location.offset);
+        final byte[] partBytes = new byte[location.length];
+        slice.get(partBytes);
+        return partBytes;
+    }
+
+    @Override
+    public Reader openText(final List<String> orderedShaSums) {
+        return new InputStreamReader(open(orderedShaSums), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void release() {
+        segments.forEach(SpillFilePartStore::unmap);
+        segments.clear();
+        locations.clear();
+        reservedLocations.clear();
+        try {
+            fileChannel.close();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("something went wrong while deleting spill file", e);
+        }
+    }
+
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        }
+        catch (NoSuchMethodException e) {
+            try {
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            catch (ReflectiveOperationException | RuntimeException ignored) {
+                // left to the garbage collector
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException ignored) {
+            // left to the garbage collector
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer byteBuffer;
+
+        private ByteBufferInputStream(final ByteBuffer byteBuffer) {
+            this.byteBuffer = byteBuffer;
+        }
+
+        @Override
+        public int read() {
+            return byteBuffer.hasRemaining() ? byteBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (!byteBuffer.hasRemaining()) {
+                return -1;
+            }
+            final int toRead = Math.min(length, byteBuffer.remaining());
+            byteBuffer.get(bytes, offset, toRead);
+            return toRead;
+        }
+
+        @Override
+        public int available() {
+            return byteBuffer.remaining();
+        }
+    }
+}
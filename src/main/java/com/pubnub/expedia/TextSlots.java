@@ -0,0 +1,86 @@
+package com.pubnub.expedia;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoding of text parts straight into a slot of a preallocated buffer. Text parts are cut on code point
+ * boundaries, so each one encodes on its own to exactly the bytes it was cut from.
+ */
+final class TextSlots {
+    private static final byte REPLACEMENT = '?';
+
+    private TextSlots() {}
+
+    static int utf8Length(final String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (isSurrogatePair(text, i)) {
+                length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c)) {
+                length++;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    static int decodeInto(final String text, final byte[] destination, final int offset) {
+        final int utf8Length = utf8Length(text);
+        if (offset + utf8Length > destination.length) throw new IllegalArgumentException("slot too small for part");
+        encodeInto(text, ByteBuffer.wrap(destination), offset);
+        return utf8Length;
+    }
+
+    static int decodeInto(final String text, final ByteBuffer destination, final int offset) {
+        final int utf8Length = utf8Length(text);
+        if (offset + utf8Length > destination.capacity()) throw new IllegalArgumentException("slot too small for part");
+        encodeInto(text, destination, offset);
+        return utf8Length;
+    }
+
+    private static void encodeInto(final String text, final ByteBuffer destination, final int offset) {
+        int position = offset;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                destination.put(position++, (byte) c);
+            }
+            else if (c < 0x800) {
+                destination.put(position++, (byte) (0xC0 | c >> 6));
+                destination.put(position++, (byte) (0x80 | c & 0x3F));
+            }
+            else if (isSurrogatePair(text, i)) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                destination.put(position++, (byte) (0xF0 | codePoint >> 18));
+                destination.put(position++, (byte) (0x80 | codePoint >> 12 & 0x3F));
+                destination.put(position++, (byte) (0x80 | codePoint >> 6 & 0x3F));
+                destination.put(position++, (byte) (0x80 | codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                // same replacement String.getBytes(UTF_8) uses for a lone surrogate, so shasums still match
+                destination.put(position++, REPLACEMENT);
+            }
+            else {
+                destination.put(position++, (byte) (0xE0 | c >> 12));
+                destination.put(position++, (byte) (0x80 | c >> 6 & 0x3F));
+                destination.put(position++, (byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static boolean isSurrogatePair(final String text, final int index) {
+        return Character.isHighSurrogate(text.charAt(index)) && index + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(index + 1));
+    }
+}
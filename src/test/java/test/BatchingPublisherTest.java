@@ -0,0 +1,112 @@
+package test;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.callbacks.SubscribeCallback;
+import com.pubnub.api.models.consumer.PNPublishResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import com.pubnub.expedia.BatchingPublisher;
+import com.pubnub.expedia.ChunkJoiningSubscribeCallback;
+import com.pubnub.expedia.ChunkTransport;
+import com.pubnub.expedia.GreedyPublish;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.LoopbackTransport;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingPublisherTest {
+    private static final String CHANNEL = "channel";
+
+    @Test
+    public void unpacksBatchesIntoSingleMessagesInPublishOrder() throws Exception {
+        final int messages = 2000;
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            transport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+
+            final long startedAt = System.currentTimeMillis();
+            final List<CompletableFuture<GreedyPublishResult>> results = new ArrayList<>();
+            // the second half goes out in batches too big for a single publish, so they are chunked
+            try (final BatchingPublisher small = new BatchingPublisher(() -> new GreedyPublish(transport).usePOST(true));
+                 final BatchingPublisher large = new BatchingPublisher(() -> new GreedyPublish(transport).usePOST(true))
+                         .maxBatchBytes(100 * 1024).linger(Duration.ofSeconds(10))) {
+                for (int i = 0; i < messages; i++) {
+                    final JsonObject message = new JsonObject();
+                    message.addProperty("sequence", i);
+                    message.addProperty("payload", "some text to pad the message " + i);
+                    if (i < messages / 2) {
+                        results.add(small.publish(CHANNEL, message));
+                    }
+                    else {
+                        if (i == messages / 2) {
+                            small.close();
+                        }
+                        results.add(large.publish(CHANNEL, message));
+                    }
+                }
+            }
+
+            final List<PNMessageResult> received = listener.awaitMessages(messages);
+            assertTrue(results.stream().map(CompletableFuture::join).distinct().count() < messages / 10);
+            long previousTimestamp = startedAt;
+            for (int i = 0; i < messages; i++) {
+                final PNMessageResult pnMessageResult = received.get(i);
+                assertEquals(i, pnMessageResult.getMessage().getAsJsonObject().get("sequence").getAsInt());
+                final long timestamp = pnMessageResult.getUserMetadata().getAsJsonObject().get("timestamp").getAsLong();
+                assertTrue(timestamp >= previousTimestamp);
+                previousTimestamp = timestamp;
+            }
+        }
+    }
+
+    @Test
+    public void publishesLingeringBatchesOnTheExecutorRatherThanTheScheduler() throws Exception {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "scheduler"));
+        final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "executor"));
+        final List<String> publishingThreads = new CopyOnWriteArrayList<>();
+        try (final LoopbackTransport loopbackTransport = new LoopbackTransport()) {
+            final ChunkTransport transport = new ChunkTransport() {
+                @Override
+                public CompletableFuture<PNPublishResult> publish(final String channel, final JsonObject message, final boolean usePOST) {
+                    publishingThreads.add(Thread.currentThread().getName());
+                    return loopbackTransport.publish(channel, message, usePOST);
+                }
+
+                @Override
+                public void addListener(final SubscribeCallback listener) {
+                    loopbackTransport.addListener(listener);
+                }
+
+                @Override
+                public void removeListener(final SubscribeCallback listener) {
+                    loopbackTransport.removeListener(listener);
+                }
+            };
+            final BatchingPublisher publisher = new BatchingPublisher(() -> new GreedyPublish(transport).usePOST(true))
+                    .linger(Duration.ofMillis(10))
+                    .scheduler(scheduler)
+                    .executor(executor);
+            final JsonObject message = new JsonObject();
+            message.addProperty("payload", "lingering");
+
+            publisher.publish(CHANNEL, message).get(5, TimeUnit.SECONDS);
+            assertEquals(Collections.singletonList("executor"), publishingThreads);
+        }
+        finally {
+            scheduler.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNub;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import com.pubnub.expedia.ChannelStriping;
+import com.pubnub.expedia.ChunkJoiningSubscribeCallback;
+import com.pubnub.expedia.ChunksAwareSubscribeCallbackAdapter;
+import com.pubnub.expedia.GreedyPublish;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.LoopbackTransport;
+import com.pubnub.expedia.ReassemblyConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChannelStripingTest {
+    private static final String CHANNEL = "channel";
+
+    @Test
+    public void refusesShardsOfAnotherChannel() {
+        final ChannelStriping channelStriping = new ChannelStriping().stripe(CHANNEL, Arrays.asList("a", "b"));
+
+        assertThrows(IllegalArgumentException.class, () -> channelStriping.stripe("other", Arrays.asList("b", "c")));
+        assertEquals(Arrays.asList("a", "b"), channelStriping.getShards(CHANNEL));
+        assertTrue(channelStriping.getShards("other").isEmpty());
+
+        channelStriping.unstripe(CHANNEL);
+        channelStriping.stripe("other", Arrays.asList("b", "c"));
+        assertEquals(Arrays.asList("b", "c"), channelStriping.getShards("other"));
+    }
+
+    @Test
+    public void stripesPartsOverShardsAndRecoversThemFromEveryShardsHistory() throws Exception {
+        final Random random = new Random(11);
+        final JsonArray values = new JsonArray();
+        for (int i = 0; i < 10_000; i++) {
+            values.add(random.nextLong());
+        }
+        final JsonObject data = new JsonObject();
+        data.add("values", values);
+
+        final ChannelStriping channelStriping = new ChannelStriping().stripe(CHANNEL, 3);
+        final RecordingListener liveListener = new RecordingListener();
+        final RecordingListener lateListener = new RecordingListener();
+        final Set<String> partChannels = Collections.synchronizedSet(new HashSet<>());
+        final List<JsonObject> finalChunks = Collections.synchronizedList(new ArrayList<>());
+        try (final LoopbackTransport transport = new LoopbackTransport().historySize(1000)) {
+            final ChunkJoiningSubscribeCallback liveCallback = new ChunkJoiningSubscribeCallback(null, liveListener,
+                    new ReassemblyConfiguration().channelStriping(channelStriping));
+            // only gets the final chunk, as if it had missed every part
+            final ChunkJoiningSubscribeCallback lateCallback = new ChunkJoiningSubscribeCallback(null, lateListener,
+                    new ReassemblyConfiguration().channelStriping(channelStriping).messageHistory(transport)
+                            .gapRecoveryDelay(Duration.ofMillis(10)));
+            transport.addListener(liveCallback);
+            transport.addListener(new ChunksAwareSubscribeCallbackAdapter() {
+                @Override
+                public void message(final PubNub pubnub, final PNMessageResult pnMessageResult) {
+                    final JsonObject chunk = pnMessageResult.getMessage().getAsJsonObject();
+                    if (chunk.get("type").getAsString().equals("part")) {
+                        partChannels.add(pnMessageResult.getChannel());
+                    }
+                    else {
+                        finalChunks.add(chunk);
+                        lateCallback.message(pubnub, pnMessageResult);
+                    }
+                }
+            });
+
+            final GreedyPublishResult result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .channelStriping(channelStriping)
+                    .message(data)
+                    .sync();
+
+            final List<PNMessageResult> live = liveListener.awaitMessages(1);
+            final List<PNMessageResult> late = lateListener.awaitMessages(1);
+            assertTrue(result.getPartsPNPublishResults().size() > 3);
+            assertEquals(new HashSet<>(channelStriping.getShards(CHANNEL)), partChannels);
+            assertEquals(1, finalChunks.size());
+            assertEquals(3, finalChunks.get(0).getAsJsonArray("shards").size());
+            assertEquals(CHANNEL, live.get(0).getChannel());
+            assertEquals(data, live.get(0).getMessage());
+            assertEquals(CHANNEL, late.get(0).getChannel());
+            assertEquals(data, late.get(0).getMessage());
+            liveCallback.close();
+            lateCallback.close();
+        }
+    }
+}
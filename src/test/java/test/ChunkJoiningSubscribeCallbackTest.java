@@ -0,0 +1,851 @@
+package test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.pubnub.api.PubNub;
+import com.pubnub.api.models.consumer.pubsub.BasePubSubResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import com.pubnub.expedia.ChunkJoiningSubscribeCallback;
+import com.pubnub.expedia.ChunkMetrics;
+import com.pubnub.expedia.ChunksAwareSubscribeCallbackAdapter;
+import com.pubnub.expedia.Compression;
+import com.pubnub.expedia.DeltaBaselines;
+import com.pubnub.expedia.DroppedMessage;
+import com.pubnub.expedia.GreedyPublish;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.Integrity;
+import com.pubnub.expedia.LoopbackTransport;
+import com.pubnub.expedia.MessageDispatcher;
+import com.pubnub.expedia.MessageStream;
+import com.pubnub.expedia.PartEncoding;
+import com.pubnub.expedia.RawMessage;
+import com.pubnub.expedia.ReassemblyConfiguration;
+import com.pubnub.expedia.RecordingChunkMetrics;
+import com.pubnub.expedia.SentPartCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkJoiningSubscribeCallbackTest {
+    private static final String CHANNEL = "channel";
+
+    @Test
+    public void deliversMessageOnceAllPartsAndFinalArrived() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener);
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, chunked world");
+        final List<JsonObject> chunks = chunks(data, 7);
+        Collections.reverse(chunks);
+
+        chunks.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 1L)));
+
+        assertEquals(data, listener.awaitMessages(1).get(0).getMessage());
+        assertEquals(1, listener.getMessages().size());
+        callback.close();
+    }
+
+    @Test
+    public void spillsLargeMessagesToDiskAndDeletesTheSpillFileAfterDelivery() throws IOException {
+        final Path spillDirectory = Files.createTempDirectory("spill");
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().spillThresholdBytes(16).spillDirectory(spillDirectory)
+                        .dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, spilled world");
+        final List<JsonObject> chunks = chunks(data, 7);
+        Collections.shuffle(chunks, new Random(42));
+
+        chunks.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 1L)));
+
+        assertEquals(Collections.singletonList(data), listener.getData());
+        try (final Stream<Path> spillFiles = Files.list(spillDirectory)) {
+            assertEquals(0, spillFiles.count());
+        }
+        callback.close();
+        Files.delete(spillDirectory);
+    }
+
+    @Test
+    public void dropsSpilledMessagesWithPartsThatDontDecode() throws IOException {
+        final Path spillDirectory = Files.createTempDirectory("spill");
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().spillThresholdBytes(16).spillDirectory(spillDirectory)
+                        .dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, malformed world");
+        // once on the heap when the message is spilled, once arriving after it was
+        final List<JsonObject> malformedBeforeSpill = chunks(data, 7);
+        malformedBeforeSpill.get(1).addProperty("data", "not*base64!");
+        Collections.swap(malformedBeforeSpill, 0, 1);
+        final List<JsonObject> malformedAfterSpill = chunks(data, 7);
+        malformedAfterSpill.get(1).addProperty("data", "not*base64!");
+        // sized when it arrives, but only found not to decode once written to the file
+        final List<JsonObject> undecodableAfterSpill = chunks(data, 7);
+        undecodableAfterSpill.get(1).addProperty("data", "not*base64!!");
+
+        malformedBeforeSpill.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 1L)));
+        malformedAfterSpill.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 2L)));
+        undecodableAfterSpill.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 3L)));
+        callback.close();
+
+        assertTrue(listener.getMessages().isEmpty());
+        assertEquals(3, listener.getDropped().size());
+        listener.getDropped().forEach(dropped -> assertEquals(DroppedMessage.Reason.CORRUPTED, dropped.getReason()));
+        try (final Stream<Path> spillFiles = Files.list(spillDirectory)) {
+            assertEquals(0, spillFiles.count());
+        }
+        Files.delete(spillDirectory);
+    }
+
+    @Test
+    public void recordsReassemblyMetrics() {
+        final RecordingChunkMetrics metrics = new RecordingChunkMetrics();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, new RecordingListener(),
+                new ReassemblyConfiguration().metrics(metrics).dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, measured world");
+        final List<JsonObject> chunks = chunks(data, 7);
+
+        callback.message(null, pnMessageResult(chunks.get(0), 1L));
+        callback.message(null, pnMessageResult(chunks.get(0), 1L));
+        assertEquals(1, metrics.getInFlightMessages());
+        assertTrue(metrics.getBufferedBytes() > 0);
+
+        chunks.subList(1, chunks.size()).forEach(chunk -> callback.message(null, pnMessageResult(chunk, 2L)));
+
+        assertEquals(1, metrics.getDuplicateParts());
+        assertEquals(1, metrics.getMessagesDelivered());
+        assertEquals(1, metrics.getAssembleTime().getCount());
+        assertEquals(0, metrics.getInFlightMessages());
+        assertEquals(0, metrics.getBufferedBytes());
+        callback.close();
+    }
+
+    @Test
+    public void stopsReportingGaugesOfClosedCallbacks() {
+        final List<ChunkMetrics.ReassemblyGauges> registered = new ArrayList<>();
+        final ChunkMetrics metrics = new ChunkMetrics() {
+            @Override
+            public void reassemblyGauges(final ReassemblyGauges gauges) {
+                registered.add(gauges);
+            }
+
+            @Override
+            public void reassemblyGaugesRemoved(final ReassemblyGauges gauges) {
+                registered.remove(gauges);
+            }
+        };
+        final ChunkJoiningSubscribeCallback first = new ChunkJoiningSubscribeCallback(null, new ReassemblyConfiguration().metrics(metrics));
+        final ChunkJoiningSubscribeCallback second = new ChunkJoiningSubscribeCallback(null, new ReassemblyConfiguration().metrics(metrics));
+        assertEquals(2, registered.size());
+
+        first.close();
+        assertEquals(1, registered.size());
+        second.close();
+        assertTrue(registered.isEmpty());
+    }
+
+    @Test
+    public void assemblesOnceForAllListeners() throws InterruptedException {
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, new ReassemblyConfiguration());
+        callback.addListener(first);
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, every listener");
+        final List<JsonObject> chunks = chunks(data, 7);
+
+        callback.message(null, pnMessageResult(chunks.get(0), 1L));
+        callback.addListener(second);
+        chunks.subList(1, chunks.size()).forEach(chunk -> callback.message(null, pnMessageResult(chunk, 2L)));
+
+        assertSame(first.awaitMessages(1).get(0), second.awaitMessages(1).get(0));
+
+        callback.removeListener(second);
+        chunks.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 3L)));
+        assertEquals(2, first.awaitMessages(2).size());
+        assertEquals(1, second.getMessages().size());
+        callback.close();
+    }
+
+    @Test
+    public void deliversOffTheCallingThreadAndReportsRejectedDeliveries() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> deliveryThreads = Collections.synchronizedList(new ArrayList<>());
+        final MessageDispatcher dispatcher = MessageDispatcher.striped(1, 1, MessageDispatcher.BackpressurePolicy.DROP);
+        final RecordingListener listener = new RecordingListener() {
+            @Override
+            public void message(final PubNub pubnub, final PNMessageResult pnMessageResult) {
+                deliveryThreads.add(Thread.currentThread().getName());
+                delivered.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().dispatcher(dispatcher));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello from another thread");
+        chunks(data, 7).forEach(chunk -> callback.message(null, pnMessageResult(chunk, 1L)));
+        callback.message(null, pnMessageResult(new JsonObject(), 2L));
+
+        final List<DroppedMessage> dropped = listener.getDropped();
+        assertEquals(1, dropped.size());
+        assertEquals(DroppedMessage.Reason.DISPATCH_QUEUE_FULL, dropped.get(0).getReason());
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, deliveryThreads.size());
+        assertTrue(deliveryThreads.get(0).startsWith("greedy-pubnub-dispatch-"));
+        release.countDown();
+        callback.close();
+    }
+
+    @Test
+    public void dropsOldestMessageWhenBufferBudgetIsExceeded() {
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().maxBufferedBytes(80));
+
+        final JsonObject first = new JsonObject();
+        first.addProperty("payload", "first message that will never be finished");
+        final JsonObject second = new JsonObject();
+        second.addProperty("payload", "second message that will never be finished");
+
+        final List<JsonObject> firstChunks = chunks(first, 16);
+        final List<JsonObject> secondChunks = chunks(second, 16);
+        callback.message(null, pnMessageResult(firstChunks.get(0), 1L));
+        callback.message(null, pnMessageResult(firstChunks.get(1), 2L));
+        callback.message(null, pnMessageResult(secondChunks.get(0), 3L));
+        callback.message(null, pnMessageResult(secondChunks.get(1), 4L));
+
+        final List<DroppedMessage> dropped = listener.getDropped();
+        assertEquals(1, dropped.size());
+        assertEquals(DroppedMessage.Reason.BUFFER_BUDGET_EXCEEDED, dropped.get(0).getReason());
+        assertEquals(firstChunks.get(0).get("partof").getAsString(), dropped.get(0).getWholeMessageShaSum());
+        callback.close();
+    }
+
+    @Test
+    public void reportsTimedOutMessages() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener, new ReassemblyConfiguration()
+                .messageTimeout(Duration.ofMillis(50))
+                .timeoutPerPart(Duration.ZERO)
+                .expirySweepInterval(Duration.ofMillis(10)));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("payload", "never finished");
+        callback.message(null, pnMessageResult(chunks(data, 8).get(0), 1L));
+
+        final List<DroppedMessage> dropped = listener.awaitDropped(1);
+        assertEquals(1, dropped.size());
+        assertEquals(DroppedMessage.Reason.TIMED_OUT, dropped.get(0).getReason());
+        assertTrue(dropped.get(0).getExpectedParts() == null);
+        callback.close();
+    }
+
+    @Test
+    public void keepsMessagesAliveWhilePartsArriveAndExpiresThemOnceIdle() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener, new ReassemblyConfiguration()
+                .messageTimeout(Duration.ofMillis(400))
+                .timeoutPerPart(Duration.ZERO)
+                .expirySweepInterval(Duration.ofMillis(10))
+                .dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("payload", "slowly but surely");
+        final List<JsonObject> chunks = chunks(data, 8);
+        assertTrue(chunks.size() > 6);
+        final long startedNanos = System.nanoTime();
+        for (final JsonObject chunk : chunks) {
+            Thread.sleep(100);
+            callback.message(null, pnMessageResult(chunk, 1L));
+        }
+        // took well over the timeout, but never went that long without a part
+        assertTrue(System.nanoTime() - startedNanos > TimeUnit.MILLISECONDS.toNanos(600));
+        assertEquals(Collections.singletonList(data), listener.getData());
+
+        final JsonObject idle = new JsonObject();
+        idle.addProperty("payload", "stalled");
+        final List<JsonObject> idleChunks = chunks(idle, 8);
+        callback.message(null, pnMessageResult(idleChunks.get(0), 2L));
+        callback.message(null, pnMessageResult(idleChunks.get(1), 2L));
+
+        final List<DroppedMessage> dropped = listener.awaitDropped(1);
+        assertEquals(1, dropped.size());
+        assertEquals(DroppedMessage.Reason.TIMED_OUT, dropped.get(0).getReason());
+        assertEquals(2, dropped.get(0).getReceivedParts());
+        callback.close();
+    }
+
+    @Test
+    public void ignoresLateDuplicatesOfADeliveredMessageButDeliversItWhenPublishedAgain() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener, new ReassemblyConfiguration()
+                .messageTimeout(Duration.ofMillis(50))
+                .timeoutPerPart(Duration.ZERO)
+                .expirySweepInterval(Duration.ofMillis(10))
+                .dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("payload", "delivered once per publish");
+        final List<JsonObject> chunks = chunks(data, 8);
+        chunks.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 1L)));
+        // a copy of the first part, held up in transit
+        callback.message(null, pnMessageResult(chunks.get(0), 1L));
+        Thread.sleep(200);
+        assertEquals(Collections.emptyList(), listener.getDropped());
+
+        chunks.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 2L)));
+        assertEquals(Arrays.asList(data, data), listener.getData());
+        callback.close();
+    }
+
+    @Test
+    public void recoversMissedPartsFromHistory() throws InterruptedException {
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, recovered world");
+        final List<PNMessageResult> published = new ArrayList<>();
+        final List<JsonObject> chunks = chunks(data, 7);
+        for (int i = 0; i < chunks.size(); i++) {
+            published.add(pnMessageResult(chunks.get(i), 100L + i));
+        }
+
+        final RecordingChunkMetrics metrics = new RecordingChunkMetrics();
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener, new ReassemblyConfiguration()
+                .metrics(metrics)
+                .gapRecoveryDelay(Duration.ofMillis(10))
+                .messageHistory((channel, start, end) -> CompletableFuture.completedFuture(published.stream()
+                        .filter(message -> message.getTimetoken() >= start && message.getTimetoken() <= end)
+                        .collect(Collectors.toList()))));
+
+        published.stream()
+                .filter(message -> message.getTimetoken() != 101L && message.getTimetoken() != 103L)
+                .forEach(message -> callback.message(null, message));
+
+        assertEquals(data, listener.awaitMessages(1).get(0).getMessage());
+        assertEquals(2, metrics.getRecoveredParts());
+        callback.close();
+    }
+
+    @Test
+    public void reassemblesTextAndBase85EncodedParts() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 100_000; i++) {
+            text.append("line ").append(i).append(": \"quoted\" <tag> caf\u00e9 \u4e16\u754c \ud83d\ude00\n");
+        }
+        final JsonObject data = new JsonObject();
+        data.addProperty("text", text.toString());
+
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener);
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            transport.addListener(callback);
+            final GreedyPublishResult textResult = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .partEncoding(PartEncoding.TEXT)
+                    .message(data)
+                    .sync();
+            final GreedyPublishResult base85Result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .partEncoding(PartEncoding.TEXT)
+                    .compression(Compression.DEFLATE)
+                    .message(data)
+                    .sync();
+
+            final List<PNMessageResult> received = listener.awaitMessages(2);
+            assertEquals("text", textResult.getPartsPNPublishResults().get(0).getJsonObject().get("encoding").getAsString());
+            assertEquals("base85", base85Result.getPartsPNPublishResults().get(0).getJsonObject().get("encoding").getAsString());
+            assertEquals(data, received.get(0).getMessage());
+            assertEquals(data, received.get(1).getMessage());
+        }
+        callback.close();
+    }
+
+    @Test
+    public void reusesRecentlyPublishedPartsAndRecoversCacheMissesFromHistory() throws Exception {
+        final JsonObject original = new JsonObject();
+        final JsonObject edited = new JsonObject();
+        for (int i = 0; i < 3000; i++) {
+            original.addProperty("key" + i, "value " + i + " of a slowly changing document");
+            edited.addProperty("key" + i, (i == 1500 ? "edited " : "") + "value " + i + " of a slowly changing document");
+        }
+
+        final RecordingChunkMetrics publisherMetrics = new RecordingChunkMetrics();
+        final RecordingChunkMetrics cachingMetrics = new RecordingChunkMetrics();
+        final RecordingChunkMetrics lateMetrics = new RecordingChunkMetrics();
+        final RecordingListener cachingListener = new RecordingListener();
+        final RecordingListener lateListener = new RecordingListener();
+        final SentPartCache sentPartCache = new SentPartCache();
+        try (final LoopbackTransport transport = new LoopbackTransport().historySize(1000)) {
+            final ChunkJoiningSubscribeCallback caching = new ChunkJoiningSubscribeCallback(null, cachingListener,
+                    new ReassemblyConfiguration().partCacheSize(1024).metrics(cachingMetrics));
+            final ChunkJoiningSubscribeCallback late = new ChunkJoiningSubscribeCallback(null, lateListener,
+                    new ReassemblyConfiguration().messageHistory(transport).gapRecoveryDelay(Duration.ofMillis(10)).metrics(lateMetrics));
+            transport.addListener(caching);
+
+            final GreedyPublishResult originalResult = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .sentPartCache(sentPartCache).metrics(publisherMetrics)
+                    .message(original)
+                    .sync();
+            transport.addListener(late);
+            final GreedyPublishResult editedResult = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .sentPartCache(sentPartCache).metrics(publisherMetrics)
+                    .message(edited)
+                    .sync();
+
+            final List<PNMessageResult> cachingReceived = cachingListener.awaitMessages(2);
+            final List<PNMessageResult> lateReceived = lateListener.awaitMessages(1);
+            assertTrue(editedResult.getPartsPNPublishResults().size() * 2 < originalResult.getPartsPNPublishResults().size());
+            assertEquals(publisherMetrics.getReusedParts(), cachingMetrics.getCachedParts());
+            assertEquals(publisherMetrics.getReusedParts(), lateMetrics.getRecoveredParts());
+            assertEquals(original, cachingReceived.get(0).getMessage());
+            assertEquals(edited, cachingReceived.get(1).getMessage());
+            assertEquals(edited, lateReceived.get(0).getMessage());
+            caching.close();
+            late.close();
+        }
+    }
+
+    @Test
+    public void streamsMessagesToOptedInListenersBeforeTheFinalChunkArrives() throws Exception {
+        final JsonObject data = new JsonObject();
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < 20000; i++) {
+            items.add("item " + i);
+        }
+        data.add("items", items);
+
+        assertStreamsBeforeTheFinalChunk(data, transport -> new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                .message(data));
+        assertStreamsBeforeTheFinalChunk(data, transport -> new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                .compression(Compression.GZIP)
+                .stream(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Publishes with {@code publish}, holding the final chunk back until the streaming listener has read from its stream.
+     */
+    private static void assertStreamsBeforeTheFinalChunk(final JsonObject data, final Function<LoopbackTransport, GreedyPublish> publish)
+            throws Exception {
+        final CountDownLatch firstBytesRead = new CountDownLatch(1);
+        final CompletableFuture<byte[]> streamed = new CompletableFuture<>();
+        final RecordingListener streamingListener = new RecordingListener() {
+            @Override
+            public boolean streamsMessages() {
+                return true;
+            }
+
+            @Override
+            public void messageStreamed(final PubNub pubnub, final MessageStream messageStream) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (final MessageStream closing = messageStream) {
+                    final InputStream inputStream = closing.getInputStream();
+                    final byte[] buffer = new byte[1024];
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, read);
+                        firstBytesRead.countDown();
+                    }
+                }
+                catch (IOException e) {
+                    streamed.completeExceptionally(e);
+                    return;
+                }
+                streamed.complete(bytes.toByteArray());
+            }
+        };
+        final RecordingListener wholeListener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, streamingListener);
+        callback.addListener(wholeListener);
+        final CompletableFuture<PNMessageResult> finalChunk = new CompletableFuture<>();
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            transport.addListener(new ChunksAwareSubscribeCallbackAdapter() {
+                @Override
+                public void message(final PubNub pubnub, final PNMessageResult pnMessageResult) {
+                    if ("final".equals(pnMessageResult.getMessage().getAsJsonObject().get("type").getAsString())) {
+                        finalChunk.complete(pnMessageResult);
+                    }
+                    else {
+                        callback.message(pubnub, pnMessageResult);
+                    }
+                }
+            });
+            publish.apply(transport).sync();
+
+            final PNMessageResult withheldFinalChunk = finalChunk.get(5, TimeUnit.SECONDS);
+            assertTrue(firstBytesRead.await(5, TimeUnit.SECONDS));
+            assertTrue(!streamed.isDone());
+            assertTrue(wholeListener.getMessages().isEmpty());
+            callback.message(null, withheldFinalChunk);
+
+            final String streamedMessage = new String(streamed.get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8);
+            assertEquals(data, JsonParser.parseString(streamedMessage).getAsJsonObject().get("data"));
+            assertEquals(data, wholeListener.awaitMessages(1).get(0).getMessage());
+            assertTrue(streamingListener.getMessages().isEmpty());
+        }
+        callback.close();
+    }
+
+    @Test
+    public void handsRawListenersTheUnparsedBytesOfChunkedMessages() throws Exception {
+        final JsonObject data = new JsonObject();
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < 20000; i++) {
+            items.add("item \"" + i + "\"");
+        }
+        data.add("items", items);
+        final JsonObject small = new JsonObject();
+        small.addProperty("small", true);
+
+        final CountDownLatch rawDelivered = new CountDownLatch(2);
+        final List<RawMessage> rawMessages = Collections.synchronizedList(new ArrayList<>());
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            final RecordingListener rawListener = new RecordingListener() {
+                @Override
+                public boolean receivesRawMessages() {
+                    return true;
+                }
+
+                @Override
+                public void rawMessage(final PubNub pubnub, final RawMessage rawMessage) {
+                    rawMessages.add(rawMessage);
+                    rawDelivered.countDown();
+                }
+            };
+            final RecordingListener wholeListener = new RecordingListener();
+            final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, rawListener);
+            callback.addListener(wholeListener);
+            transport.addListener(callback);
+
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true).message(data).sync();
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true).compression(Compression.DEFLATE).message(data).sync();
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true).message(small).sync();
+
+            assertTrue(rawDelivered.await(5, TimeUnit.SECONDS));
+            rawListener.awaitMessages(1);
+            wholeListener.awaitMessages(3);
+            assertEquals(2, rawMessages.size());
+            for (final RawMessage rawMessage : rawMessages) {
+                final ByteBuffer dataBytes = rawMessage.getData();
+                assertTrue(dataBytes.isReadOnly());
+                final byte[] bytes = new byte[dataBytes.remaining()];
+                dataBytes.get(bytes);
+                assertEquals(data.toString(), new String(bytes, StandardCharsets.UTF_8));
+                assertEquals(data, rawMessage.getJsonData());
+            }
+            assertEquals(Collections.singletonList(small), rawListener.getData());
+            assertEquals(Arrays.asList(data, data, small), wholeListener.getData());
+        }
+    }
+
+    @Test
+    public void handsRawListenersMessagesWhosePartsAllCameFromTheCache() {
+        final List<RawMessage> rawMessages = new ArrayList<>();
+        final RecordingListener rawListener = new RecordingListener() {
+            @Override
+            public boolean receivesRawMessages() {
+                return true;
+            }
+
+            @Override
+            public void rawMessage(final PubNub pubnub, final RawMessage rawMessage) {
+                rawMessages.add(rawMessage);
+            }
+        };
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, rawListener,
+                new ReassemblyConfiguration().partCacheSize(1024).dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, cached world");
+        final List<JsonObject> chunks = chunks(data, 7);
+        // the same parts, published with another message
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            final JsonObject part = chunks.get(i).deepCopy();
+            part.addProperty("partof", "another message");
+            part.addProperty("index", i);
+            callback.message(null, pnMessageResult(part, 1L));
+        }
+        // every part left out as recently sent
+        callback.message(null, pnMessageResult(chunks.get(chunks.size() - 1), 2L));
+        callback.close();
+
+        assertEquals(1, rawMessages.size());
+        rawMessages.forEach(rawMessage -> assertEquals(data, rawMessage.getJsonData()));
+        assertTrue(rawListener.getMessages().isEmpty());
+    }
+
+    @Test
+    public void appliesDeltasToTheKeptSnapshotAndRecoversMissingSnapshotsFromHistory() throws Exception {
+        final JsonObject snapshot = new JsonObject();
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < 3000; i++) {
+            final JsonObject item = new JsonObject();
+            item.addProperty("id", i);
+            item.addProperty("name", "item " + i);
+            items.add(item);
+        }
+        snapshot.add("items", items);
+        snapshot.addProperty("version", 1);
+        final JsonObject edited = snapshot.deepCopy();
+        edited.addProperty("version", 2);
+        edited.getAsJsonArray("items").get(1500).getAsJsonObject().addProperty("name", "renamed");
+
+        final RecordingListener fromStart = new RecordingListener();
+        final RecordingListener lateWithHistory = new RecordingListener();
+        final RecordingListener lateWithoutHistory = new RecordingListener();
+        final DeltaBaselines deltaBaselines = new DeltaBaselines();
+        try (final LoopbackTransport transport = new LoopbackTransport().historySize(1000)) {
+            final ChunkJoiningSubscribeCallback first = new ChunkJoiningSubscribeCallback(null, fromStart);
+            // a single delivery at a time, so recovering the snapshot mustn't wait for room to dispatch the patched message
+            final ChunkJoiningSubscribeCallback second = new ChunkJoiningSubscribeCallback(null, lateWithHistory,
+                    new ReassemblyConfiguration().messageHistory(transport)
+                            .dispatcher(MessageDispatcher.striped(1, 1, MessageDispatcher.BackpressurePolicy.BLOCK)));
+            final ChunkJoiningSubscribeCallback third = new ChunkJoiningSubscribeCallback(null, lateWithoutHistory);
+            transport.addListener(first);
+
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .deltaBaselines(deltaBaselines).delta(true)
+                    .message(snapshot)
+                    .sync();
+            transport.addListener(second);
+            transport.addListener(third);
+            final GreedyPublishResult deltaResult = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .deltaBaselines(deltaBaselines).delta(true)
+                    .message(edited)
+                    .sync();
+
+            assertTrue(deltaResult.getPartsPNPublishResults().isEmpty());
+            assertEquals(Arrays.asList(snapshot, edited), fromStart.awaitMessages(2).stream()
+                    .map(PNMessageResult::getMessage)
+                    .collect(Collectors.toList()));
+            assertEquals(edited, lateWithHistory.awaitMessages(1).get(0).getMessage());
+            assertEquals(DroppedMessage.Reason.MISSING_DELTA_BASE, lateWithoutHistory.awaitDropped(1).get(0).getReason());
+            first.close();
+            second.close();
+            third.close();
+        }
+    }
+
+    @Test
+    public void dropsDeltasWhosePatchDoesntApply() throws Exception {
+        final JsonObject snapshot = new JsonObject();
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < 3000; i++) {
+            items.add("item " + i);
+        }
+        snapshot.add("items", items);
+        final JsonObject edited = snapshot.deepCopy();
+        edited.getAsJsonArray("items").set(1500, new JsonPrimitive("renamed"));
+
+        final RecordingListener publishedListener = new RecordingListener();
+        final DeltaBaselines deltaBaselines = new DeltaBaselines();
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            transport.addListener(publishedListener);
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .deltaBaselines(deltaBaselines).delta(true)
+                    .message(snapshot)
+                    .sync();
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .deltaBaselines(deltaBaselines).delta(true)
+                    .message(edited)
+                    .sync();
+        }
+        final List<PNMessageResult> published = publishedListener.getMessages();
+        final PNMessageResult delta = published.get(published.size() - 1);
+        assertEquals("delta", delta.getMessage().getAsJsonObject().get("type").getAsString());
+
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().dispatcher(MessageDispatcher.direct()));
+        published.forEach(chunk -> callback.message(null, chunk));
+        long timetoken = delta.getTimetoken();
+        for (final String badPatch : Arrays.asList("[{\"op\":\"remove\",\"path\":\"/items/3000\"}]",
+                "[{\"op\":\"replace\",\"path\":\"/items/-1/name\",\"value\":0}]",
+                "[{\"path\":\"/items\"}]",
+                "[{\"op\":\"remove\",\"path\":\"items\"}]",
+                "[\"remove\"]")) {
+            final JsonObject tampered = delta.getMessage().getAsJsonObject().deepCopy();
+            tampered.add("patch", JsonParser.parseString(badPatch));
+            callback.message(null, pnMessageResult(tampered, ++timetoken));
+        }
+        callback.close();
+
+        assertEquals(Arrays.asList(snapshot, edited), listener.getData());
+        assertEquals(5, listener.getDropped().size());
+        listener.getDropped().forEach(dropped -> assertEquals(DroppedMessage.Reason.BAD_DELTA, dropped.getReason()));
+    }
+
+    @Test
+    public void verifiesCrc32cPartsAndDropsCorruptedMessages() throws Exception {
+        final Random random = new Random(7);
+        final JsonArray values = new JsonArray();
+        for (int i = 0; i < 40_000; i++) {
+            values.add(random.nextLong());
+        }
+        final JsonObject data = new JsonObject();
+        data.add("values", values);
+
+        final RecordingListener publishedListener = new RecordingListener();
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().dispatcher(MessageDispatcher.direct()));
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            transport.addListener(publishedListener);
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .integrity(Integrity.CRC32C)
+                    .message(data)
+                    .sync();
+        }
+        final List<PNMessageResult> published = publishedListener.getMessages();
+        final JsonObject finalChunk = published.get(published.size() - 1).getMessage().getAsJsonObject();
+        assertEquals("crc32c", finalChunk.get("integrity").getAsString());
+
+        published.forEach(chunk -> callback.message(null, chunk));
+        long timetoken = published.get(published.size() - 1).getTimetoken();
+        for (final PNMessageResult chunk : published) {
+            final JsonObject message = chunk.getMessage().getAsJsonObject().deepCopy();
+            if (message.get("type").getAsString().equals("part") && message.get("index").getAsInt() == 1) {
+                final byte[] partBytes = Base64.getDecoder().decode(message.get("data").getAsString());
+                partBytes[partBytes.length / 2] ^= 1;
+                message.addProperty("data", Base64.getEncoder().encodeToString(partBytes));
+            }
+            callback.message(null, pnMessageResult(message, ++timetoken));
+        }
+        callback.close();
+
+        assertEquals(Collections.singletonList(data), listener.getData());
+        assertEquals(1, listener.getDropped().size());
+        assertEquals(DroppedMessage.Reason.CORRUPTED, listener.getDropped().get(0).getReason());
+    }
+
+    @Test
+    public void unpacksOnlyChunkedMessagesMarkedAsFramed() {
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject batched = new JsonObject();
+        batched.addProperty("timestamp", 0L);
+        batched.addProperty("data", "batched");
+        final JsonArray messages = new JsonArray();
+        messages.add(batched);
+        final JsonObject batch = new JsonObject();
+        batch.addProperty("type", "batch");
+        batch.add("messages", messages);
+
+        chunks(batch, 7).forEach(chunk -> callback.message(null, pnMessageResult(chunk, 1L)));
+        final List<JsonObject> framed = chunks(batch, 11);
+        framed.get(framed.size() - 1).addProperty("framed", true);
+        framed.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 2L)));
+        callback.close();
+
+        assertEquals(Arrays.asList(batch, new JsonPrimitive("batched")), listener.getData());
+    }
+
+    @Test
+    public void dropsMessagesThatDontMatchTheirDigest() {
+        final RecordingListener listener = new RecordingListener();
+        final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener,
+                new ReassemblyConfiguration().dispatcher(MessageDispatcher.direct()));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("greeting", "hello, tampered world");
+        final List<JsonObject> flipped = chunks(data, 7);
+        final byte[] partBytes = Base64.getDecoder().decode(flipped.get(1).get("data").getAsString());
+        partBytes[0] ^= 1;
+        flipped.get(1).addProperty("data", Base64.getEncoder().encodeToString(partBytes));
+        final List<JsonObject> malformed = chunks(data, 7);
+        malformed.get(1).addProperty("data", "not*base64!");
+
+        flipped.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 1L)));
+        malformed.forEach(chunk -> callback.message(null, pnMessageResult(chunk, 2L)));
+        callback.close();
+
+        assertTrue(listener.getMessages().isEmpty());
+        assertEquals(2, listener.getDropped().size());
+        listener.getDropped().forEach(dropped -> assertEquals(DroppedMessage.Reason.CORRUPTED, dropped.getReason()));
+    }
+
+    static List<JsonObject> chunks(final JsonObject data, final int chunkSize) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("timestamp", 0L);
+        message.add("data", data);
+        final byte[] messageBytes = message.toString().getBytes(StandardCharsets.UTF_8);
+        final String shaSumOfWholeMessage = encodedSha256(messageBytes);
+
+        final List<JsonObject> chunks = new ArrayList<>();
+        final JsonArray partShaSums = new JsonArray();
+        for (int i = 0; i < messageBytes.length; i += chunkSize) {
+            final byte[] partBytes = Arrays.copyOfRange(messageBytes, i, Math.min(i + chunkSize, messageBytes.length));
+            final JsonObject part = new JsonObject();
+            part.addProperty("type", "part");
+            part.addProperty("partof", shaSumOfWholeMessage);
+            part.addProperty("shasum", encodedSha256(partBytes));
+            part.addProperty("data", Base64.getEncoder().encodeToString(partBytes));
+            partShaSums.add(part.get("shasum"));
+            chunks.add(part);
+        }
+
+        final JsonObject finalChunk = new JsonObject();
+        finalChunk.addProperty("type", "final");
+        finalChunk.addProperty("shasum", shaSumOfWholeMessage);
+        finalChunk.add("parts", partShaSums);
+        chunks.add(finalChunk);
+        return chunks;
+    }
+
+    static PNMessageResult pnMessageResult(final JsonObject message, final long timetoken) {
+        return new PNMessageResult(new BasePubSubResult(CHANNEL, CHANNEL, CHANNEL, CHANNEL, timetoken, null, "publisher"), message);
+    }
+
+    private static String encodedSha256(final byte[] bytes) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
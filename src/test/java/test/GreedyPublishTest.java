@@ -0,0 +1,339 @@
+package test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.pubnub.api.callbacks.SubscribeCallback;
+import com.pubnub.api.models.consumer.PNPublishResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import com.pubnub.expedia.ChunkJoiningSubscribeCallback;
+import com.pubnub.expedia.ChunkTransport;
+import com.pubnub.expedia.Compression;
+import com.pubnub.expedia.DeltaBaselines;
+import com.pubnub.expedia.GreedyPublish;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.GreedyPublish.PublishPartResult;
+import com.pubnub.expedia.LoopbackTransport;
+import com.pubnub.expedia.RetryPolicy;
+import com.pubnub.expedia.SentPartCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GreedyPublishTest {
+    private static final String CHANNEL = "channel";
+
+    @Test
+    public void keepsPartsInFlightAndPublishesTheFinalChunkOnceTheyAreAcknowledged() throws Exception {
+        final JsonObject data = randomValues(45_000);
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport loopbackTransport = new LoopbackTransport().latency(Duration.ofMillis(20))) {
+            loopbackTransport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+            final TrackingTransport transport = new TrackingTransport(loopbackTransport);
+            final CompletableFuture<GreedyPublishResult> result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .partsInFlight(4)
+                    .message(data)
+                    .async();
+
+            final List<PublishPartResult> partResults = result.get(10, TimeUnit.SECONDS).getPartsPNPublishResults();
+            assertTrue(partResults.size() > 20);
+            for (final PublishPartResult partResult : partResults) {
+                assertTrue(partResult instanceof PublishPartResult.Successful);
+                assertTrue(partResult.getLatency().compareTo(Duration.ofMillis(20)) >= 0);
+            }
+            assertEquals(4, transport.getMaxInFlight());
+            assertEquals(Collections.singletonList(0), transport.getInFlightAtFinal());
+            assertEquals(partResults.size() + 1, transport.getPublished().size());
+            assertEquals(data, listener.awaitMessages(1).get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void streamsPartsOutWhileTheSourceIsStillBeingRead() throws Exception {
+        final JsonObject data = randomValues(45_000);
+        final byte[] dataBytes = data.toString().getBytes(StandardCharsets.UTF_8);
+        final Path dataFile = Files.createTempFile("stream", ".json");
+        Files.write(dataFile, dataBytes);
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport loopbackTransport = new LoopbackTransport()) {
+            loopbackTransport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+            final TrackingTransport transport = new TrackingTransport(loopbackTransport);
+            final int[] publishedBeforeLastByte = {-1};
+            final InputStream source = new ByteArrayInputStream(dataBytes) {
+                @Override
+                public synchronized int read(final byte[] bytes, final int offset, final int length) {
+                    if (available() <= length && publishedBeforeLastByte[0] < 0) {
+                        publishedBeforeLastByte[0] = transport.getPublished().size();
+                    }
+                    return super.read(bytes, offset, length);
+                }
+            };
+
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true).stream(source).sync();
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true).stream(dataFile).sync();
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true).stream(ByteBuffer.wrap(dataBytes)).sync();
+
+            assertTrue(publishedBeforeLastByte[0] > 20);
+            assertEquals(Arrays.asList(data, data, data), listener.awaitMessages(3).stream()
+                    .map(PNMessageResult::getMessage)
+                    .collect(Collectors.toList()));
+        }
+        finally {
+            Files.delete(dataFile);
+        }
+    }
+
+    @Test
+    public void returnsFromAsyncWhileTheSourceIsStillBeingRead() throws Exception {
+        final JsonObject data = randomValues(45_000);
+        final byte[] dataBytes = data.toString().getBytes(StandardCharsets.UTF_8);
+        final CountDownLatch readable = new CountDownLatch(1);
+        final InputStream source = new ByteArrayInputStream(dataBytes) {
+            @Override
+            public synchronized int read(final byte[] bytes, final int offset, final int length) {
+                try {
+                    readable.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.read(bytes, offset, length);
+            }
+        };
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            transport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+            final CompletableFuture<GreedyPublishResult> result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .stream(source)
+                    .async();
+
+            assertTrue(!result.isDone());
+            readable.countDown();
+            assertTrue(result.get(10, TimeUnit.SECONDS).getPartsPNPublishResults().size() > 20);
+            assertEquals(data, listener.awaitMessages(1).get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void deliversStreamedDataThatIsntAnObject() throws Exception {
+        final JsonArray data = randomValues(5_000).getAsJsonArray("values");
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            transport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .stream(ByteBuffer.wrap(data.toString().getBytes(StandardCharsets.UTF_8)))
+                    .sync();
+
+            assertEquals(data, listener.awaitMessages(1).get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void refusesToStreamAContentAddressedMessage() throws Exception {
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            final GreedyPublish greedyPublish = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .sentPartCache(new SentPartCache())
+                    .stream(ByteBuffer.wrap(randomValues(5_000).toString().getBytes(StandardCharsets.UTF_8)));
+
+            assertThrows(IllegalStateException.class, greedyPublish::async);
+        }
+    }
+
+    @Test
+    public void compressesMessagesAboveTheThresholdAndDeclaresItInTheFinalChunk() throws Exception {
+        final JsonObject data = new JsonObject();
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < 20_000; i++) {
+            items.add("item " + i);
+        }
+        data.add("items", items);
+
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport loopbackTransport = new LoopbackTransport()) {
+            loopbackTransport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+            final TrackingTransport transport = new TrackingTransport(loopbackTransport);
+            final List<Integer> parts = new ArrayList<>();
+            final List<JsonElement> declared = new ArrayList<>();
+            for (final GreedyPublish greedyPublish : Arrays.asList(
+                    new GreedyPublish(transport),
+                    new GreedyPublish(transport).compression(Compression.DEFLATE),
+                    new GreedyPublish(transport).compression(Compression.GZIP).compressionLevel(Deflater.BEST_COMPRESSION),
+                    new GreedyPublish(transport).compression(Compression.GZIP).compressionThreshold(Integer.MAX_VALUE))) {
+                parts.add(greedyPublish.channel(CHANNEL).usePOST(true).message(data).sync().getPartsPNPublishResults().size());
+                final List<JsonObject> published = transport.getPublished();
+                declared.add(published.get(published.size() - 1).get("compression"));
+            }
+
+            assertEquals(Arrays.asList(null, new JsonPrimitive("deflate"), new JsonPrimitive("gzip"), null), declared);
+            assertTrue(parts.get(1) * 5 < parts.get(0));
+            assertTrue(parts.get(2) <= parts.get(1));
+            assertEquals(parts.get(0), parts.get(3));
+            assertEquals(Arrays.asList(data, data, data, data), listener.awaitMessages(4).stream()
+                    .map(PNMessageResult::getMessage)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void deliversMessagesThatLookLikeChunksUnchanged() throws Exception {
+        final JsonObject finalLookalike = new JsonObject();
+        finalLookalike.addProperty("type", "final");
+        final JsonObject batchLookalike = new JsonObject();
+        batchLookalike.addProperty("type", "batch");
+        batchLookalike.add("messages", new JsonArray());
+        // big enough to be chunked
+        final JsonObject bigLookalike = new JsonObject();
+        bigLookalike.addProperty("type", "batch");
+        final JsonObject batched = new JsonObject();
+        batched.addProperty("timestamp", 0L);
+        batched.add("data", new JsonObject());
+        final JsonArray messages = new JsonArray();
+        messages.add(batched);
+        bigLookalike.add("messages", messages);
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < 5000; i++) {
+            items.add("item " + i);
+        }
+        bigLookalike.add("items", items);
+
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport transport = new LoopbackTransport()) {
+            final ChunkJoiningSubscribeCallback callback = new ChunkJoiningSubscribeCallback(null, listener);
+            transport.addListener(callback);
+            final List<JsonObject> published = Arrays.asList(finalLookalike, batchLookalike, bigLookalike);
+            for (int i = 0; i < published.size(); i++) {
+                new GreedyPublish(transport).channel(CHANNEL).usePOST(true).message(published.get(i)).sync();
+                listener.awaitMessages(i + 1);
+            }
+            callback.close();
+        }
+
+        final List<JsonElement> received = listener.getData();
+        assertEquals(Arrays.asList(finalLookalike, batchLookalike, bigLookalike), received);
+    }
+
+    @Test
+    public void countsOnlyPublishedDeltasTowardsTheNextSnapshot() throws Exception {
+        final JsonObject snapshot = new JsonObject();
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < 3000; i++) {
+            items.add("item " + i);
+        }
+        snapshot.add("items", items);
+        final JsonObject edited = snapshot.deepCopy();
+        edited.getAsJsonArray("items").set(1500, new JsonPrimitive("renamed"));
+        final DeltaBaselines deltaBaselines = new DeltaBaselines().snapshotEvery(1);
+
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport transport = new LoopbackTransport();
+             final LoopbackTransport failingTransport = new LoopbackTransport().publishFailureRate(1.0)) {
+            transport.addListener(listener);
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .deltaBaselines(deltaBaselines).delta(true)
+                    .message(snapshot)
+                    .sync();
+            final CompletableFuture<GreedyPublishResult> failed = new GreedyPublish(failingTransport).channel(CHANNEL).usePOST(true)
+                    .deltaBaselines(deltaBaselines).delta(true)
+                    .retryPolicy(new RetryPolicy().maxAttempts(1))
+                    .message(edited)
+                    .async();
+            assertThrows(ExecutionException.class, failed::get);
+            final int published = listener.getMessages().size();
+
+            new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .deltaBaselines(deltaBaselines).delta(true)
+                    .message(edited)
+                    .sync();
+            final List<PNMessageResult> received = listener.awaitMessages(published + 1);
+            assertEquals(published + 1, received.size());
+            assertEquals("delta", received.get(published).getMessage().getAsJsonObject().get("type").getAsString());
+        }
+    }
+
+    private static JsonObject randomValues(final int count) {
+        final Random random = new Random(count);
+        final JsonArray values = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            values.add(random.nextLong());
+        }
+        final JsonObject data = new JsonObject();
+        data.add("values", values);
+        return data;
+    }
+
+    /**
+     * Passes publishes on, keeping every chunk published, the most publishes awaiting acknowledgement at once and how
+     * many were when each final chunk went out.
+     */
+    private static class TrackingTransport implements ChunkTransport {
+        private final ChunkTransport delegate;
+        private final List<JsonObject> published = new ArrayList<>();
+        private final List<Integer> inFlightAtFinal = new ArrayList<>();
+        private int inFlight;
+        private int maxInFlight;
+
+        private TrackingTransport(final ChunkTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<PNPublishResult> publish(final String channel, final JsonObject message, final boolean usePOST) {
+            synchronized (this) {
+                published.add(message);
+                if ("final".equals(message.get("type").getAsString())) {
+                    inFlightAtFinal.add(inFlight);
+                }
+                maxInFlight = Math.max(maxInFlight, ++inFlight);
+            }
+            return delegate.publish(channel, message, usePOST).whenComplete((pnPublishResult, throwable) -> {
+                synchronized (this) {
+                    inFlight--;
+                }
+            });
+        }
+
+        @Override
+        public void addListener(final SubscribeCallback listener) {
+            delegate.addListener(listener);
+        }
+
+        @Override
+        public void removeListener(final SubscribeCallback listener) {
+            delegate.removeListener(listener);
+        }
+
+        synchronized List<JsonObject> getPublished() {
+            return new ArrayList<>(published);
+        }
+
+        synchronized List<Integer> getInFlightAtFinal() {
+            return new ArrayList<>(inFlightAtFinal);
+        }
+
+        synchronized int getMaxInFlight() {
+            return maxInFlight;
+        }
+    }
+}
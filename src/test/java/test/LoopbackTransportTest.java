@@ -0,0 +1,151 @@
+package test;
+
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNubException;
+import com.pubnub.api.models.consumer.PNPublishResult;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import com.pubnub.expedia.LoopbackTransport;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoopbackTransportTest {
+    private static final String CHANNEL = "channel";
+    private static final int MESSAGES = 200;
+
+    @Test
+    public void losesMessagesPerListenerButKeepsThemInHistory() throws Exception {
+        try (final LoopbackTransport transport = new LoopbackTransport().lossRate(0.3).historySize(MESSAGES).seed(7)) {
+            final RecordingListener first = new RecordingListener();
+            final RecordingListener second = new RecordingListener();
+            transport.addListener(first);
+            transport.addListener(second);
+            awaitAll(publish(transport, MESSAGES));
+
+            final List<Integer> firstReceived = indices(first.getMessages());
+            final List<Integer> secondReceived = indices(second.getMessages());
+            assertTrue(firstReceived.size() > MESSAGES / 2 && firstReceived.size() < MESSAGES);
+            assertTrue(secondReceived.size() > MESSAGES / 2 && secondReceived.size() < MESSAGES);
+            assertNotEquals(firstReceived, secondReceived);
+            assertEquals(sorted(firstReceived), firstReceived);
+            assertEquals(range(MESSAGES), indices(transport.fetch(CHANNEL, 0L, Long.MAX_VALUE).get()));
+        }
+    }
+
+    @Test
+    public void losesTheSameMessagesForTheSameSeed() throws Exception {
+        assertEquals(receivedWithLoss(11), receivedWithLoss(11));
+        assertNotEquals(receivedWithLoss(11), receivedWithLoss(12));
+    }
+
+    @Test
+    public void duplicatesSomeMessages() throws Exception {
+        try (final LoopbackTransport transport = new LoopbackTransport().duplicationRate(0.5).seed(7)) {
+            final RecordingListener listener = new RecordingListener();
+            transport.addListener(listener);
+            awaitAll(publish(transport, MESSAGES));
+
+            final Map<Integer, Long> copies = indices(listener.getMessages()).stream()
+                    .collect(Collectors.groupingBy(index -> index, TreeMap::new, Collectors.counting()));
+            assertEquals(range(MESSAGES), new ArrayList<>(copies.keySet()));
+            final long duplicated = copies.values().stream().filter(count -> count == 2L).count();
+            assertTrue(duplicated > 0 && duplicated < MESSAGES);
+            copies.values().forEach(count -> assertTrue(count <= 2L));
+        }
+    }
+
+    @Test
+    public void reordersMessagesWithinTheWindow() throws Exception {
+        try (final LoopbackTransport transport = new LoopbackTransport().reorderWindow(Duration.ofMillis(20)).seed(7)) {
+            final RecordingListener listener = new RecordingListener();
+            transport.addListener(listener);
+            awaitAll(publish(transport, MESSAGES));
+
+            final List<Integer> received = indices(listener.awaitMessages(MESSAGES));
+            assertEquals(MESSAGES, received.size());
+            assertNotEquals(range(MESSAGES), received);
+            assertEquals(range(MESSAGES), sorted(received));
+        }
+    }
+
+    @Test
+    public void failsPublishesWithoutDeliveringOrKeepingThem() throws Exception {
+        try (final LoopbackTransport transport = new LoopbackTransport().publishFailureRate(0.4).historySize(MESSAGES).seed(7)) {
+            final RecordingListener listener = new RecordingListener();
+            transport.addListener(listener);
+            final List<CompletableFuture<PNPublishResult>> published = publish(transport, MESSAGES);
+
+            final List<Integer> succeeded = new ArrayList<>();
+            for (int i = 0; i < published.size(); i++) {
+                try {
+                    published.get(i).get(5, TimeUnit.SECONDS);
+                    succeeded.add(i);
+                }
+                catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof PubNubException);
+                }
+            }
+            assertTrue(succeeded.size() > MESSAGES / 2 && succeeded.size() < MESSAGES);
+            assertEquals(succeeded, indices(listener.getMessages()));
+            assertEquals(succeeded, indices(transport.fetch(CHANNEL, 0L, Long.MAX_VALUE).get()));
+        }
+    }
+
+    private static List<Integer> receivedWithLoss(final long seed) throws Exception {
+        try (final LoopbackTransport transport = new LoopbackTransport().lossRate(0.3).seed(seed)) {
+            final RecordingListener listener = new RecordingListener();
+            transport.addListener(listener);
+            awaitAll(publish(transport, MESSAGES));
+            return indices(listener.getMessages());
+        }
+    }
+
+    private static List<CompletableFuture<PNPublishResult>> publish(final LoopbackTransport transport, final int count) {
+        final List<CompletableFuture<PNPublishResult>> published = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final JsonObject message = new JsonObject();
+            message.addProperty("index", i);
+            published.add(transport.publish(CHANNEL, message, true));
+        }
+        return published;
+    }
+
+    /**
+     * Without a reorder window, deliveries run on the transport's one thread ahead of the acknowledgement of their publish.
+     */
+    private static void awaitAll(final List<CompletableFuture<PNPublishResult>> published) throws Exception {
+        for (final CompletableFuture<PNPublishResult> future : published) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static List<Integer> indices(final List<PNMessageResult> received) {
+        return received.stream()
+                .map(pnMessageResult -> pnMessageResult.getMessage().getAsJsonObject().get("index").getAsInt())
+                .collect(Collectors.toList());
+    }
+
+    private static List<Integer> range(final int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Integer> sorted(final List<Integer> indices) {
+        final List<Integer> sorted = new ArrayList<>(indices);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
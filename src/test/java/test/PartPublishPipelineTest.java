@@ -0,0 +1,190 @@
+package test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pubnub.api.PubNubException;
+import com.pubnub.api.builder.PubNubErrorBuilder;
+import com.pubnub.api.callbacks.SubscribeCallback;
+import com.pubnub.api.models.consumer.PNPublishResult;
+import com.pubnub.expedia.ChunkJoiningSubscribeCallback;
+import com.pubnub.expedia.ChunkTransport;
+import com.pubnub.expedia.GreedyPublish;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.GreedyPublish.PublishPartResult;
+import com.pubnub.expedia.LoopbackTransport;
+import com.pubnub.expedia.RetryPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PartPublishPipelineTest {
+    private static final String CHANNEL = "channel";
+
+    @Test
+    public void retriesFailedPartsUntilTheyArePublished() throws Exception {
+        final JsonObject data = randomValues(45_000);
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport transport = new LoopbackTransport().publishFailureRate(0.3).seed(3)) {
+            transport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+            final GreedyPublishResult result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .retryPolicy(new RetryPolicy().maxAttempts(20).initialBackoff(Duration.ofMillis(1)).jitter(0))
+                    .message(data)
+                    .sync();
+
+            assertTrue(result.getRetriedParts() > 0);
+            for (final PublishPartResult partResult : result.getPartsPNPublishResults()) {
+                assertTrue(partResult instanceof PublishPartResult.Successful);
+            }
+            assertEquals(data, listener.awaitMessages(1).get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void withholdsTheFinalChunkWhenAPartKeepsFailing() throws Exception {
+        try (final LoopbackTransport loopbackTransport = new LoopbackTransport().publishFailureRate(1.0).seed(5)) {
+            final RecordingTransport transport = new RecordingTransport(loopbackTransport, 0);
+            final CompletableFuture<GreedyPublishResult> result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .retryPolicy(new RetryPolicy().maxAttempts(3).initialBackoff(Duration.ofMillis(1)).jitter(0))
+                    .message(randomValues(45_000))
+                    .async();
+
+            final ExecutionException exception = assertThrows(ExecutionException.class, result::get);
+            assertTrue(exception.getCause() instanceof PubNubException);
+            assertTrue(transport.getTypes().contains("part"));
+            assertEquals(0, Collections.frequency(transport.getTypes(), "final"));
+        }
+    }
+
+    @Test
+    public void retriesAFailedFinalChunk() throws Exception {
+        final JsonObject data = randomValues(45_000);
+        final RecordingListener listener = new RecordingListener();
+        try (final LoopbackTransport loopbackTransport = new LoopbackTransport()) {
+            loopbackTransport.addListener(new ChunkJoiningSubscribeCallback(null, listener));
+            final RecordingTransport transport = new RecordingTransport(loopbackTransport, 1);
+            final GreedyPublishResult result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                    .retryPolicy(new RetryPolicy().maxAttempts(3).initialBackoff(Duration.ofMillis(1)).jitter(0))
+                    .message(data)
+                    .sync();
+
+            assertTrue(result.getFinalPNPublishResult() != null);
+            assertEquals(2, Collections.frequency(transport.getTypes(), "final"));
+            assertEquals(data, listener.awaitMessages(1).get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void publishesQueuedPartsAcknowledgedRightAwayWithoutRecursing() throws Exception {
+        final HoldingTransport transport = new HoldingTransport();
+        final CompletableFuture<GreedyPublishResult> result = new GreedyPublish(transport).channel(CHANNEL).usePOST(true)
+                .partsInFlight(1)
+                .preparationExecutor(Runnable::run)
+                .message(randomValues(200_000))
+                .async();
+
+        // every other part queues up behind the first, then goes out on a stack far too small for a frame per part
+        final Thread releasing = new Thread(null, transport::release, "releasing", 128 * 1024);
+        releasing.start();
+        releasing.join();
+
+        assertTrue(result.get(5, TimeUnit.SECONDS).getPartsPNPublishResults().size() > 150);
+    }
+
+    private static JsonObject randomValues(final int count) {
+        final Random random = new Random(count);
+        final JsonArray values = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            values.add(random.nextLong());
+        }
+        final JsonObject data = new JsonObject();
+        data.add("values", values);
+        return data;
+    }
+
+    /**
+     * Holds back the acknowledgement of the first publish until {@link #release()}, and acknowledges every other one
+     * right away on the publishing thread.
+     */
+    private static class HoldingTransport implements ChunkTransport {
+        private final CompletableFuture<PNPublishResult> first = new CompletableFuture<>();
+        private boolean published;
+
+        @Override
+        public synchronized CompletableFuture<PNPublishResult> publish(final String channel, final JsonObject message, final boolean usePOST) {
+            if (!published) {
+                published = true;
+                return first;
+            }
+            return CompletableFuture.completedFuture(PNPublishResult.builder().timetoken(1L).build());
+        }
+
+        @Override
+        public void addListener(final SubscribeCallback listener) {
+        }
+
+        @Override
+        public void removeListener(final SubscribeCallback listener) {
+        }
+
+        void release() {
+            first.complete(PNPublishResult.builder().timetoken(1L).build());
+        }
+    }
+
+    /**
+     * Records the type of every chunk published and fails the first {@code finalFailures} final chunks.
+     */
+    private static class RecordingTransport implements ChunkTransport {
+        private final ChunkTransport delegate;
+        private final List<String> types = new ArrayList<>();
+        private int finalFailures;
+
+        private RecordingTransport(final ChunkTransport delegate, final int finalFailures) {
+            this.delegate = delegate;
+            this.finalFailures = finalFailures;
+        }
+
+        @Override
+        public CompletableFuture<PNPublishResult> publish(final String channel, final JsonObject message, final boolean usePOST) {
+            final String type = message.get("type").getAsString();
+            synchronized (this) {
+                types.add(type);
+                if ("final".equals(type) && finalFailures > 0) {
+                    finalFailures--;
+                    final CompletableFuture<PNPublishResult> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(PubNubException.builder()
+                            .pubnubError(PubNubErrorBuilder.PNERROBJ_HTTP_ERROR)
+                            .errormsg("injected final chunk failure")
+                            .build());
+                    return failed;
+                }
+            }
+            return delegate.publish(channel, message, usePOST);
+        }
+
+        @Override
+        public void addListener(final SubscribeCallback listener) {
+            delegate.addListener(listener);
+        }
+
+        @Override
+        public void removeListener(final SubscribeCallback listener) {
+            delegate.removeListener(listener);
+        }
+
+        synchronized List<String> getTypes() {
+            return new ArrayList<>(types);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pubnub.api.callbacks.SubscribeCallback;
+import com.pubnub.api.models.consumer.PNPublishResult;
+import com.pubnub.expedia.ChunkTransport;
+import com.pubnub.expedia.GreedyPublish;
+import com.pubnub.expedia.GreedyPublish.GreedyPublishResult;
+import com.pubnub.expedia.PublishGovernor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PublishGovernorTest {
+    @Test
+    public void pacesPublishesAndLetsSmallAndPriorityMessagesOvertakeABigOne() throws Exception {
+        final ManualClock clock = new ManualClock();
+        final ManualScheduler scheduler = new ManualScheduler(clock);
+        final PublishGovernor publishGovernor = new PublishGovernor().publishesPerSecond(100).burst(1)
+                .clock(clock).scheduler(scheduler);
+        final RecordingTransport transport = new RecordingTransport();
+        final JsonObject urgent = new JsonObject();
+        urgent.addProperty("alert", "now");
+
+        final CompletableFuture<GreedyPublishResult> big = publish(transport, publishGovernor, "big", randomValues(45_000), false);
+        final CompletableFuture<GreedyPublishResult> small = publish(transport, publishGovernor, "small", randomValues(2_000), false);
+        final CompletableFuture<GreedyPublishResult> priority = publish(transport, publishGovernor, "urgent", urgent, true);
+        assertEquals(Collections.singletonList("big"), transport.getChannels());
+
+        for (int tick = 0; !big.isDone(); tick++) {
+            assertTrue(tick < 1000, "big message never finished publishing");
+            final int published = transport.getChannels().size();
+            scheduler.advance(Duration.ofMillis(10));
+            assertEquals(published + 1, transport.getChannels().size());
+        }
+
+        final List<String> channels = transport.getChannels();
+        assertTrue(big.get().getPartsPNPublishResults().size() > 20);
+        assertTrue(small.isDone() && priority.isDone());
+        assertEquals("urgent", channels.get(1));
+        final int smallDone = channels.lastIndexOf("small");
+        assertTrue(smallDone < channels.size() / 2);
+        // the big and the small message take turns until the small one is through
+        for (int i = 3; i <= smallDone; i++) {
+            assertNotEquals(channels.get(i - 1), channels.get(i));
+        }
+        assertEquals(channels.size() - 1, channels.lastIndexOf("big"));
+    }
+
+    private static CompletableFuture<GreedyPublishResult> publish(final ChunkTransport transport, final PublishGovernor publishGovernor,
+                                                                  final String channel, final JsonObject data, final boolean priority) {
+        return new GreedyPublish(transport).channel(channel).usePOST(true)
+                .publishGovernor(publishGovernor).priority(priority)
+                .preparationExecutor(Runnable::run)
+                .message(data)
+                .async();
+    }
+
+    private static JsonObject randomValues(final int count) {
+        final Random random = new Random(count);
+        final JsonArray values = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            values.add(random.nextLong());
+        }
+        final JsonObject data = new JsonObject();
+        data.add("values", values);
+        return data;
+    }
+
+    /**
+     * Acknowledges every publish right away, on the publishing thread.
+     */
+    private static class RecordingTransport implements ChunkTransport {
+        private final List<String> channels = new ArrayList<>();
+
+        @Override
+        public synchronized CompletableFuture<PNPublishResult> publish(final String channel, final JsonObject message, final boolean usePOST) {
+            channels.add(channel);
+            return CompletableFuture.completedFuture(PNPublishResult.builder().timetoken((long) channels.size()).build());
+        }
+
+        @Override
+        public void addListener(final SubscribeCallback listener) {
+        }
+
+        @Override
+        public void removeListener(final SubscribeCallback listener) {
+        }
+
+        synchronized List<String> getChannels() {
+            return new ArrayList<>(channels);
+        }
+    }
+
+    private static class ManualClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(final Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Runs delayed tasks on the test thread as {@link #advance(Duration)} moves its clock past them.
+     */
+    private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+        private final ManualClock clock;
+        private final List<ScheduledTask> tasks = new ArrayList<>();
+
+        private static class ScheduledTask {
+            private final Instant due;
+            private final Runnable command;
+
+            private ScheduledTask(final Instant due, final Runnable command) {
+                this.due = due;
+                this.command = command;
+            }
+        }
+
+        ManualScheduler(final ManualClock clock) {
+            super(0);
+            this.clock = clock;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+            tasks.add(new ScheduledTask(clock.instant().plusNanos(unit.toNanos(delay)), command));
+            return null;
+        }
+
+        void advance(final Duration duration) {
+            clock.advance(duration);
+            final List<ScheduledTask> due = new ArrayList<>();
+            for (final ScheduledTask task : tasks) {
+                if (!task.due.isAfter(clock.instant())) {
+                    due.add(task);
+                }
+            }
+            tasks.removeAll(due);
+            due.sort(Comparator.comparing(task -> task.due));
+            due.forEach(task -> task.command.run());
+        }
+    }
+}
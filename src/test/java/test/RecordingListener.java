@@ -0,0 +1,75 @@
+package test;
+
+import com.google.gson.JsonElement;
+import com.pubnub.api.PubNub;
+import com.pubnub.api.models.consumer.pubsub.PNMessageResult;
+import com.pubnub.expedia.ChunksAwareSubscribeCallbackAdapter;
+import com.pubnub.expedia.DroppedMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Records the messages and drops handed to it, for tests to wait on.
+ */
+class RecordingListener extends ChunksAwareSubscribeCallbackAdapter {
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final List<PNMessageResult> messages = new ArrayList<>();
+    private final List<DroppedMessage> dropped = new ArrayList<>();
+
+    @Override
+    public synchronized void message(final PubNub pubnub, final PNMessageResult pnMessageResult) {
+        messages.add(pnMessageResult);
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void messageDropped(final PubNub pubnub, final DroppedMessage droppedMessage) {
+        dropped.add(droppedMessage);
+        notifyAll();
+    }
+
+    synchronized List<PNMessageResult> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    synchronized List<JsonElement> getData() {
+        return messages.stream().map(PNMessageResult::getMessage).collect(Collectors.toList());
+    }
+
+    synchronized List<DroppedMessage> getDropped() {
+        return new ArrayList<>(dropped);
+    }
+
+    /**
+     * @return the messages received so far, once there are at least {@code count}
+     */
+    List<PNMessageResult> awaitMessages(final int count) throws InterruptedException {
+        await(messages, count, "messages");
+        return getMessages();
+    }
+
+    /**
+     * @return the drops reported so far, once there are at least {@code count}
+     */
+    List<DroppedMessage> awaitDropped(final int count) throws InterruptedException {
+        await(dropped, count, "dropped messages");
+        return getDropped();
+    }
+
+    private synchronized void await(final List<?> recorded, final int count, final String what) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (recorded.size() < count) {
+            final long waitMillis = deadline - System.currentTimeMillis();
+            if (waitMillis <= 0) {
+                fail("expected " + count + " " + what + " but got " + recorded.size());
+            }
+            wait(waitMillis);
+        }
+    }
+}